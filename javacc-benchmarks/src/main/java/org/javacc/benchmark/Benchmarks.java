@@ -0,0 +1,85 @@
+package org.javacc.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Runs the benchmarks of every grammar with the variants it can be
+ * generated with only, see {@link Grammar#variants()}.  JMH runs all
+ * combinations of the <code>grammar</code> and <code>variant</code>
+ * parameters, so the benchmarks are run once per grammar.
+ *
+ * <p>The command line options are those of JMH.  The
+ * <code>grammar</code> and <code>variant</code> parameters given with
+ * <code>-p</code> restrict the grammars and variants that are run.  A
+ * result file is written per grammar, with the name of the grammar
+ * appended to its name.</p>
+ */
+public final class Benchmarks {
+  private Benchmarks() {}
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    CommandLineOptions cmdOptions;
+    try {
+      cmdOptions = new CommandLineOptions(args);
+    }
+    catch (CommandLineOptionException ex) {
+      System.err.println("Error parsing command line:");
+      System.err.println(" " + ex.getMessage());
+      System.exit(1);
+      return;
+    }
+    if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListWithParams()
+        || cmdOptions.shouldListProfilers() || cmdOptions.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+
+    Collection<String> grammars = cmdOptions.getParameter("grammar").orElse(null);
+    Collection<String> variants = cmdOptions.getParameter("variant").orElse(null);
+    for (Grammar grammar : Grammar.values()) {
+      if (grammars != null && !grammars.contains(grammar.name())) {
+        continue;
+      }
+      List<String> selected = new ArrayList<String>();
+      for (Variant variant : grammar.variants()) {
+        if (variants == null || variants.contains(variant.name())) {
+          selected.add(variant.name());
+        }
+      }
+      if (selected.isEmpty()) {
+        continue;
+      }
+      ChainedOptionsBuilder options = new OptionsBuilder()
+          .parent(cmdOptions)
+          .param("grammar", grammar.name())
+          .param("variant", selected.toArray(new String[selected.size()]));
+      if (cmdOptions.getResultFormat().hasValue()) {
+        ResultFormatType format = cmdOptions.getResultFormat().get();
+        String result = cmdOptions.getResult().orElse("jmh-result." + format.toString().toLowerCase());
+        options.result(resultFile(result, grammar));
+      }
+      new Runner(options.build()).run();
+    }
+  }
+
+  /** @return The name of the result file for the grammar. */
+  private static String resultFile(String result, Grammar grammar) {
+    String suffix = "-" + grammar.name().toLowerCase();
+    int dot = result.lastIndexOf('.');
+    if (dot <= result.lastIndexOf('/') || dot <= result.lastIndexOf('\\')) {
+      return result + suffix;
+    }
+    return result.substring(0, dot) + suffix + result.substring(dot);
+  }
+}
@@ -0,0 +1,17 @@
+package org.javacc.benchmark;
+
+/** The {@code CharStream} implementations a generated scanner can read from. */
+public enum CharStreamKind {
+  /** {@code CharStream.ForCharSequence} over the input string. */
+  FOR_CHAR_SEQUENCE,
+  /** {@code CharStream.ForReader} over a {@link java.io.StringReader}. */
+  FOR_READER,
+  /** {@code CharStream.ForReadable} over a {@link java.nio.CharBuffer}. */
+  FOR_READABLE,
+  /** {@code CharStream.Escaping} on top of {@code CharStream.ForCharSequence}. */
+  ESCAPING,
+  /** {@code CharStream.ForReader} over a UTF-8 file with the input. */
+  FILE_READER,
+  /** {@code CharStream.ForMappedFile} over a UTF-8 file with the input. */
+  MAPPED_FILE
+}
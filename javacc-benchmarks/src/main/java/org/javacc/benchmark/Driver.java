@@ -0,0 +1,47 @@
+package org.javacc.benchmark;
+
+import java.io.IOException;
+
+/**
+ * Drives a generated scanner and parser. An implementation is generated
+ * into the package of every benchmarked grammar, so that the hot loops
+ * call the generated code directly instead of through reflection.
+ */
+public interface Driver {
+  /**
+   * Create new scanner that reads the specified input.
+   *
+   * @param kind  The char stream implementation to read the input with.
+   * @param input The input to scan.
+   * @throws IOException If the char stream cannot be created.
+   */
+  void open(CharStreamKind kind, CharSequence input) throws IOException;
+
+  /**
+   * Scan the next token from the scanner created by the last
+   * call to {@link #open(CharStreamKind, CharSequence)}.
+   *
+   * @return Kind of the scanned token, 0 on EOF.
+   * @throws IOException If the char stream throws exception.
+   */
+  int next() throws IOException;
+
+  /**
+   * Scan the specified input into a token buffer.
+   *
+   * @param kind  The char stream implementation to read the input with.
+   * @param input The input to scan.
+   * @return Number of scanned tokens, including the &lt;EOF&gt; token.
+   * @throws IOException If the char stream throws exception.
+   */
+  int tokenize(CharStreamKind kind, CharSequence input) throws IOException;
+
+  /**
+   * Parse the specified input starting from the grammar start production.
+   *
+   * @param kind  The char stream implementation to read the input with.
+   * @param input The input to parse.
+   * @throws Exception If the input cannot be parsed.
+   */
+  void parse(CharStreamKind kind, CharSequence input) throws Exception;
+}
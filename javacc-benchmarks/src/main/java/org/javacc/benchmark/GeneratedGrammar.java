@@ -0,0 +1,217 @@
+package org.javacc.benchmark;
+
+import org.javacc.jjtree.JJTree;
+import org.javacc.parser.Main;
+import org.javacc.utils.JavaFileGenerator;
+import org.javacc.utils.io.IndentingPrintWriter;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates scanner and parser from an example grammar, compiles them
+ * together with the hand written classes of the example and loads
+ * the result in a separate class loader.
+ *
+ * <p>Every combination of grammar and options gets its own class loader,
+ * thus the same grammar can be loaded several times with different options.</p>
+ */
+public final class GeneratedGrammar {
+  private GeneratedGrammar() {}
+
+  /**
+   * Generate, compile and load the specified grammar.
+   *
+   * @param grammar The grammar to generate.
+   * @param variant Options to generate the grammar with.
+   * @return Driver for the generated scanner and parser.
+   * @throws Exception If generation or compilation fails.
+   */
+  public static Driver load(Grammar grammar, Variant variant) throws Exception {
+    if (!grammar.supports(variant)) {
+      throw new IllegalArgumentException("Grammar " + grammar
+          + " cannot be generated with variant " + variant);
+    }
+
+    File dir = createTempDir(grammar.name().toLowerCase() + "-" + variant.name().toLowerCase());
+    File sources = new File(dir, "src");
+    File classes = new File(dir, "classes");
+    mkdirs(sources);
+    mkdirs(classes);
+
+    // Generators are chatty, only show their output when something goes wrong.
+    PrintStream stdout = System.out;
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(log, true));
+    try {
+      generate(grammar, variant, sources);
+    }
+    catch (Exception ex) {
+      stdout.print(log.toString());
+      throw ex;
+    }
+    finally {
+      System.setOut(stdout);
+    }
+    copySupportSources(grammar.supportSources(), sources);
+    generateDriver(grammar, variant, sources);
+    compile(sources, classes);
+
+    ClassLoader loader = new URLClassLoader(
+        new URL[]{classes.toURI().toURL()},
+        Driver.class.getClassLoader());
+    Class<?> driverClass = loader.loadClass(grammar.packageName + ".BenchmarkDriver");
+    return (Driver) driverClass.newInstance();
+  }
+
+  private static void generate(Grammar grammar, Variant variant, File sources)
+      throws Exception {
+    File grammarFile = grammar.grammarFile();
+    String outputDirectory = "-OUTPUT_DIRECTORY=" + sources.getAbsolutePath();
+
+    if (grammarFile.getName().endsWith(".jjt")) {
+      if (new JJTree().main(new String[]{outputDirectory, grammarFile.getAbsolutePath()}) != 0) {
+        throw new IllegalStateException("JJTree failed on " + grammarFile);
+      }
+      String name = grammarFile.getName();
+      grammarFile = new File(sources, name.substring(0, name.length() - 1));
+    }
+
+    List<String> args = new ArrayList<String>();
+    args.add(outputDirectory);
+    args.addAll(Arrays.asList(variant.options()));
+    args.add(grammarFile.getAbsolutePath());
+    if (Main.mainProgram(args.toArray(new String[args.size()])) != 0) {
+      throw new IllegalStateException("JavaCC failed on " + grammarFile);
+    }
+  }
+
+  /**
+   * Copy hand written classes over the generated ones, just like
+   * the build of the examples does.
+   */
+  private static void copySupportSources(File from, File to) throws IOException {
+    File[] files = from.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        copySupportSources(file, to);
+      }
+      else if (file.getName().endsWith(".java")) {
+        copy(file, new File(to, file.getName()));
+      }
+    }
+  }
+
+  private static void generateDriver(Grammar grammar, Variant variant, File sources)
+      throws IOException {
+    Map<String, Object> options = new HashMap<String, Object>();
+    options.put("PACKAGE", grammar.packageName);
+    options.put("SCANNER", grammar.scannerName);
+    options.put("PARSER", grammar.parserName);
+    options.put("START", grammar.startProduction);
+    options.put("TOKEN_POOL", variant.tokenPool());
+    IndentingPrintWriter out = new IndentingPrintWriter(new OutputStreamWriter(
+        new FileOutputStream(new File(sources, "BenchmarkDriver.java")), "UTF-8"));
+    try {
+      new JavaFileGenerator("/org/javacc/benchmark/Driver.template", options).generate(out);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static void compile(File sources, File classes) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new IllegalStateException("Benchmarks must be run on a JDK, not a JRE");
+    }
+    File[] files = sources.listFiles();
+    if (files == null) {
+      throw new IOException("Cannot list " + sources);
+    }
+    List<File> javaFiles = new ArrayList<File>();
+    for (File file : files) {
+      if (file.getName().endsWith(".java")) {
+        javaFiles.add(file);
+      }
+    }
+    String classpath;
+    try {
+      classpath = new File(Driver.class.getProtectionDomain()
+          .getCodeSource().getLocation().toURI()).getAbsolutePath();
+    }
+    catch (URISyntaxException ex) {
+      throw new IOException(ex);
+    }
+    StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+    try {
+      boolean success = compiler.getTask(null, fileManager, null,
+          Arrays.asList("-nowarn", "-encoding", "UTF-8",
+              "-classpath", classpath,
+              "-d", classes.getAbsolutePath()),
+          null, fileManager.getJavaFileObjectsFromFiles(javaFiles)).call();
+      if (!success) {
+        throw new IllegalStateException("Cannot compile sources in " + sources);
+      }
+    }
+    finally {
+      fileManager.close();
+    }
+  }
+
+  private static File createTempDir(String prefix) throws IOException {
+    File dir = File.createTempFile("javacc-" + prefix + "-", "");
+    if (!dir.delete()) {
+      throw new IOException("Cannot delete " + dir);
+    }
+    mkdirs(dir);
+    return dir;
+  }
+
+  private static void mkdirs(File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create directory " + dir);
+    }
+  }
+
+  private static void copy(File from, File to) throws IOException {
+    InputStream in = new FileInputStream(from);
+    try {
+      OutputStream out = new FileOutputStream(to);
+      try {
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+          out.write(buffer, 0, n);
+        }
+      }
+      finally {
+        out.close();
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package org.javacc.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/** The example grammars to benchmark. */
+public enum Grammar {
+  JAVA("javacc-examples/javacc-example-java",
+      "src/main/javacc/Java1.5.jj",
+      "net.java.dev.javacc.grammar.java", "JavaParser", "JavaScanner", "CompilationUnit",
+      "javacc/src/main/java/org/javacc/parser/RCharacterList.java",
+      true),
+  IDL("javacc-examples/javacc-example-corba-idl",
+      "src/main/javacc/IDL.jj",
+      "org.javacc.examples.idl", "IDLParser", "IDLScanner", "specification",
+      "javacc-examples/javacc-example-corba-idl/src/test/resources/Hello.idl",
+      false),
+  SPL("javacc-examples/javacc-example-interpreter",
+      "src/main/jjtree/SPL.jjt",
+      "org.javacc.examples.spl", "SPLParser", "SPLScanner", "CompilationUnit",
+      "javacc-examples/javacc-example-interpreter/src/test/resources/sqrt.spl",
+      true),
+  LOOKAHEAD("javacc-examples/javacc-example-lookahead",
+      "src/main/javacc/Example9.jj",
+      "org.javacc.examples.lookahead", "Example9", "Example9Scanner", "funny_list",
+      "javacc-benchmarks/src/main/resources/funny_list.txt",
+      false);
+
+  private final String module;
+  private final String grammarFile;
+  final String packageName;
+  final String parserName;
+  final String scannerName;
+  final String startProduction;
+  private final String inputFile;
+  /** Whether actions in the grammar or its support classes use token images. */
+  private final boolean requiresImage;
+
+  Grammar(String module, String grammarFile,
+          String packageName, String parserName, String scannerName, String startProduction,
+          String inputFile, boolean requiresImage) {
+    this.module = module;
+    this.grammarFile = grammarFile;
+    this.packageName = packageName;
+    this.parserName = parserName;
+    this.scannerName = scannerName;
+    this.startProduction = startProduction;
+    this.inputFile = inputFile;
+    this.requiresImage = requiresImage;
+  }
+
+  /** @return Whether the grammar can be generated with the options of the variant. */
+  boolean supports(Variant variant) {
+    return !requiresImage || variant.keepImage();
+  }
+
+  /** @return The variants the grammar can be generated with. */
+  List<Variant> variants() {
+    List<Variant> variants = new ArrayList<Variant>();
+    for (Variant variant : Variant.values()) {
+      if (supports(variant)) {
+        variants.add(variant);
+      }
+    }
+    return variants;
+  }
+
+  /** @return The grammar file, either <code>.jj</code> or <code>.jjt</code>. */
+  File grammarFile() throws IOException {
+    return new File(new File(basedir(), module), grammarFile);
+  }
+
+  /** @return Directory with hand written classes the generated parser depends on. */
+  File supportSources() throws IOException {
+    return new File(new File(basedir(), module), "src/main/java");
+  }
+
+  /** @return Sample input the parser accepts. */
+  String input() throws IOException {
+    return read(new File(basedir(), inputFile));
+  }
+
+  /**
+   * Repeat the sample input until it is at least the specified length.
+   * The result may not be parseable, but it is good for scanning.
+   *
+   * @param length Minimal length of the returned input.
+   * @return Repeated sample input.
+   */
+  String input(int length) throws IOException {
+    String input = input();
+    StringBuilder s = new StringBuilder(length + input.length());
+    while (s.length() < length) {
+      s.append(input).append('\n');
+    }
+    return s.toString();
+  }
+
+  private static File basedir() throws IOException {
+    InputStream in = Grammar.class.getResourceAsStream("benchmark.properties");
+    if (in == null) {
+      throw new IOException("Missing benchmark.properties");
+    }
+    Properties properties = new Properties();
+    try {
+      properties.load(in);
+    }
+    finally {
+      in.close();
+    }
+    return new File(properties.getProperty("basedir"));
+  }
+
+  private static String read(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        out.write(buffer, 0, n);
+      }
+      return out.toString("UTF-8");
+    }
+    finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package org.javacc.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/** Temporary UTF-8 files with benchmark inputs, for the file based char streams. */
+public final class InputFiles {
+  private static final Map<CharSequence, File> files = new IdentityHashMap<CharSequence, File>();
+
+  private InputFiles() {}
+
+  /**
+   * Find the file with the specified input, writing it on the first call.
+   *
+   * @param input The benchmark input.
+   * @return The file containing the input encoded in UTF-8.
+   * @throws IOException If the file cannot be written.
+   */
+  public static synchronized File get(CharSequence input) throws IOException {
+    File file = files.get(input);
+    if (file == null) {
+      file = File.createTempFile("javacc-benchmark", ".txt");
+      file.deleteOnExit();
+      Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try {
+        writer.append(input);
+      }
+      finally {
+        writer.close();
+      }
+      files.put(input, file);
+    }
+    return file;
+  }
+}
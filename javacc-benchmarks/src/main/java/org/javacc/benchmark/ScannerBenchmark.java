@@ -0,0 +1,62 @@
+package org.javacc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scanner throughput. Every benchmark operation scans exactly one
+ * token, so the reported score is tokens per second, and the
+ * <code>gc.alloc.rate.norm</code> metric of the <code>-prof gc</code>
+ * profiler is the number of bytes allocated per token.
+ *
+ * <p>The input is the sample input of the grammar repeated several times,
+ * so that the cost of creating a new scanner at the end of input is
+ * amortized over many tokens.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+  @Param
+  public Grammar grammar;
+  @Param
+  public Variant variant;
+  @Param
+  public CharStreamKind charStream;
+  @Param("65536")
+  public int inputLength;
+
+  private Driver driver;
+  private String input;
+
+  @Setup
+  public void setup() throws Exception {
+    driver = GeneratedGrammar.load(grammar, variant);
+    input = grammar.input(inputLength);
+    driver.open(charStream, input);
+  }
+
+  @Benchmark
+  public int nextToken() throws IOException {
+    int kind = driver.next();
+    if (kind == 0) {
+      driver.open(charStream, input);
+    }
+    return kind;
+  }
+}
@@ -0,0 +1,51 @@
+package org.javacc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the tokenize method of the scanner, which scans the whole input
+ * into a token buffer without creating token objects. Every benchmark
+ * operation tokenizes the sample input of the grammar once, so the reported
+ * score is inputs per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizeBenchmark {
+  @Param
+  public Grammar grammar;
+  @Param
+  public Variant variant;
+  @Param
+  public CharStreamKind charStream;
+
+  private Driver driver;
+  private String input;
+
+  @Setup
+  public void setup() throws Exception {
+    driver = GeneratedGrammar.load(grammar, variant);
+    input = grammar.input();
+  }
+
+  @Benchmark
+  public int tokenize() throws IOException {
+    return driver.tokenize(charStream, input);
+  }
+}
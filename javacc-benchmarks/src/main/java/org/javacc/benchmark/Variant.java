@@ -0,0 +1,101 @@
+package org.javacc.benchmark;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Combinations of the token related options and of the scanner backend
+ * a grammar is generated with.  Every variant lists only the options it
+ * sets differently from {@link #DEFAULTS}.
+ */
+public enum Variant {
+  KEEP_IMAGE_AND_LINE_COLUMN(
+      "KEEP_IMAGE", "true",
+      "KEEP_LINE_COLUMN", "true"),
+  KEEP_IMAGE_AND_LINE_TABLE(
+      "KEEP_IMAGE", "true",
+      "KEEP_LINE_COLUMN", "true",
+      "LINE_TABLE", "true"),
+  KEEP_IMAGE(
+      "KEEP_IMAGE", "true"),
+  KEEP_LINE_COLUMN(
+      "KEEP_LINE_COLUMN", "true"),
+  KEEP_NONE(),
+  DFA_KEEP_IMAGE_AND_LINE_COLUMN(
+      "KEEP_IMAGE", "true",
+      "KEEP_LINE_COLUMN", "true",
+      "SCANNER_BACKEND", "DFA"),
+  TOKEN_POOL_KEEP_LINE_COLUMN(
+      "KEEP_LINE_COLUMN", "true",
+      "TOKEN_POOL", "true"),
+  RETURN_CODE_LOOKAHEAD_KEEP_IMAGE_AND_LINE_COLUMN(
+      "KEEP_IMAGE", "true",
+      "KEEP_LINE_COLUMN", "true",
+      "RETURN_CODE_LOOKAHEAD", "true"),
+  LOOKAHEAD_TABLES_KEEP_IMAGE_AND_LINE_COLUMN(
+      "KEEP_IMAGE", "true",
+      "KEEP_LINE_COLUMN", "true",
+      "LOOKAHEAD_TABLES", "true"),
+  LAZY_ERROR_REPORTING_KEEP_IMAGE_AND_LINE_COLUMN(
+      "KEEP_IMAGE", "true",
+      "KEEP_LINE_COLUMN", "true",
+      "LAZY_ERROR_REPORTING", "true");
+
+  /** Values of the options a variant does not set. */
+  private static final Map<String, String> DEFAULTS = map(
+      "KEEP_IMAGE", "false",
+      "KEEP_LINE_COLUMN", "false",
+      "LINE_TABLE", "false",
+      "SCANNER_BACKEND", "NFA",
+      "TOKEN_POOL", "false",
+      "RETURN_CODE_LOOKAHEAD", "false",
+      "LOOKAHEAD_TABLES", "false",
+      "LAZY_ERROR_REPORTING", "false");
+
+  private final Map<String, String> options;
+
+  /** @param options Names and values of the options, alternately. */
+  Variant(String... options) {
+    this.options = map(options);
+  }
+
+  private static Map<String, String> map(String... namesAndValues) {
+    Map<String, String> options = new LinkedHashMap<String, String>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      options.put(namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return Collections.unmodifiableMap(options);
+  }
+
+  /** @return The value of the option, set by the variant or the default. */
+  String option(String name) {
+    if (!DEFAULTS.containsKey(name)) {
+      throw new IllegalArgumentException("Unknown option " + name);
+    }
+    String value = options.get(name);
+    return value != null ? value : DEFAULTS.get(name);
+  }
+
+  boolean keepImage() {
+    return Boolean.parseBoolean(option("KEEP_IMAGE"));
+  }
+
+  boolean tokenPool() {
+    return Boolean.parseBoolean(option("TOKEN_POOL"));
+  }
+
+  /** @return Command line options to pass to JavaCC. */
+  String[] options() {
+    // Reject options of the variant that have no default.
+    for (String name : options.keySet()) {
+      option(name);
+    }
+    String[] args = new String[DEFAULTS.size()];
+    int i = 0;
+    for (String name : DEFAULTS.keySet()) {
+      args[i++] = "-" + name + "=" + option(name);
+    }
+    return args;
+  }
+}
@@ -42,6 +42,8 @@ public interface Node {
 
   void jjtSetChild(Node n, int i);
 
+  void jjtSetChildren(Node[] nodes, int from, int count);
+
   Node jjtGetChild(int i);
 
   int jjtGetChildCount();
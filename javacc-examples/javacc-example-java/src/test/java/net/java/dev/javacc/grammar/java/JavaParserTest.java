@@ -7,7 +7,12 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -54,6 +59,124 @@ public class JavaParserTest {
         sources.size(), chars, (now - started) / 1000.0));
   }
 
+  @Test
+  public void scanFromSnapshots() throws IOException {
+    String source = Files.toString(
+        new File("src/test/java/net/java/dev/javacc/grammar/java/JavaParserTest.java"), Charsets.UTF_8);
+
+    // Save the scanner state about every 1000 characters.
+    JavaScanner scanner = scanner(source);
+    ArrayList<String> tokens = new ArrayList<String>();
+    ArrayList<ScannerSnapshot> snapshots = new ArrayList<ScannerSnapshot>();
+    ArrayList<Integer> indices = new ArrayList<Integer>();
+    for (Token t = scanner.getNextToken(); t.getKind() != 0; t = scanner.getNextToken()) {
+      tokens.add(describe(t));
+      if (t.getEnd() / 1000 > snapshots.size()) {
+        snapshots.add(scanner.saveState());
+        indices.add(tokens.size());
+      }
+    }
+    assertTrue(snapshots.size() > 2);
+
+    // Restore them in reverse order on the same scanner.
+    for (int i = snapshots.size() - 1; i >= 0; i--) {
+      scanner.restoreState(snapshots.get(i));
+      for (int j = indices.get(i); j < tokens.size(); j++) {
+        assertEquals(tokens.get(j), describe(scanner.getNextToken()));
+      }
+      assertEquals(0, scanner.getNextToken().getKind());
+    }
+  }
+
+  @Test
+  public void parallelTokenize() throws IOException, ParseException {
+    ArrayList<Source> sources = new ArrayList<Source>();
+    list(sources, new FileFilter() {
+      @Override public boolean accept(File f) {
+        return f.getName().endsWith(".java");
+      }
+    }, new File("src"));
+    StringBuilder builder = new StringBuilder();
+    for (Source source : sources) {
+      builder.append(source.content);
+    }
+    final String content = builder.toString();
+
+    TokenBuffer expected = new TokenBuffer();
+    scanner(content).tokenize(expected);
+
+    // Small chunks start inside comments and strings as well.
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      TokenBuffer tokens = new ParallelTokenizer(executor, 256).tokenize(
+          new ParallelTokenizer.Input() {
+            @Override public CharStream open() {
+              return new CharStream.Escaping(new CharStream.ForCharSequence(content));
+            }
+          }, content.length());
+      assertEquals(expected.size(), tokens.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(describe(expected, i), describe(tokens, i));
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void parseFedStreams() throws Exception {
+    final String source = Files.toString(
+        new File("src/test/java/net/java/dev/javacc/grammar/java/JavaParserTest.java"), Charsets.UTF_8);
+    int count = 1000;
+
+    // One task per stream, waiting for the characters fed below.  On Java 21
+    // and later, Executors.newVirtualThreadPerTaskExecutor() runs each of
+    // them on its own virtual thread.
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      ArrayList<CharStream.ForFeed> streams = new ArrayList<CharStream.ForFeed>();
+      ArrayList<Future<?>> parses = new ArrayList<Future<?>>();
+      for (int i = 0; i < count; i++) {
+        final CharStream.ForFeed stream = new CharStream.ForFeed();
+        streams.add(stream);
+        parses.add(executor.submit(new Callable<Void>() {
+          @Override public Void call() throws Exception {
+            new JavaParser(new JavaScanner(new CharStream.Escaping(stream))).CompilationUnit();
+            return null;
+          }
+        }));
+      }
+
+      // Feed the streams in turns, as the pieces of network input arrive.
+      for (int begin = 0; begin < source.length(); begin += 512) {
+        CharBuffer piece = CharBuffer.wrap(source, begin, Math.min(begin + 512, source.length()));
+        for (CharStream.ForFeed stream : streams) {
+          stream.feed(piece.duplicate());
+        }
+      }
+      for (CharStream.ForFeed stream : streams) {
+        stream.endOfInput();
+      }
+      for (Future<?> parse : parses) {
+        parse.get();
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private static String describe(TokenBuffer tokens, int i) {
+    return tokens.getKind(i) + "@" + tokens.getBegin(i) + "-" + tokens.getEnd(i)
+        + ":" + tokens.getLine(i) + "." + tokens.getColumn(i);
+  }
+
+  private static String describe(Token t) {
+    return t.getKind() + "@" + t.getBegin() + "-" + t.getEnd()
+        + ":" + t.getLine() + "." + t.getColumn() + " " + t.getImage();
+  }
+
   @Test
   public void lexicalErrorReporting() throws IOException {
     JavaScanner scanner = scanner("/* comment");
@@ -86,6 +209,24 @@ public class JavaParserTest {
         exception.getMessage());
   }
 
+  @Test
+  public void expectedTokenSequencesAreDistinct()
+      throws IOException, ParseException {
+    JavaScanner scanner = scanner("class A { B<C x; }");
+    ParseException exception = null;
+    JavaParser parser = new JavaParser(scanner);
+    try {
+      parser.CompilationUnit();
+    }
+    catch (ParseException ex) {
+      exception = ex;
+    }
+    assertNotNull(exception);
+    assertEquals("Encountered: <IDENTIFIER> at line 1, column 15.\nWas expecting one of:\n" +
+        "   \",\"...\n   \">\"...\n   \"<\"...\n   \".\"...\n   \"[\"...",
+        exception.getMessage());
+  }
+
   private JavaScanner scanner(String source) {
     return new JavaScanner(
         new CharStream.Escaping(
@@ -4,6 +4,8 @@ import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.junit.Assert.*;
+
 public class Eg1Test {
   @Test
   public void test() throws IOException, ParseException {
@@ -14,4 +16,24 @@ public class Eg1Test {
     SimpleNode n = parser.Start();
     n.dump(">");
   }
+
+  @Test
+  public void wideNode() throws IOException, ParseException {
+    StringBuilder b = new StringBuilder("a");
+    for (int i = 1; i < 1000; i++) {
+      b.append(i % 2 == 0 ? " + a" : " - 1");
+    }
+    Eg1 parser = new Eg1(
+        new Eg1Scanner(
+            new CharStream.ForCharSequence(
+                b.append(";"))));
+    Node additive = parser.Start().jjtGetChild(0).jjtGetChild(0);
+    assertEquals(1000, additive.jjtGetChildCount());
+    for (int i = 0; i < 1000; i++) {
+      Node child = additive.jjtGetChild(i);
+      assertSame(additive, child.jjtGetParent());
+      assertEquals(i % 2 == 0 ? "Identifier" : "Integer",
+          child.jjtGetChild(0).jjtGetChild(0).toString());
+    }
+  }
 }
@@ -0,0 +1,106 @@
+package org.javacc.examples.jjtree.eg5;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class Eg5Test {
+  private static final String INPUT =
+      "a = 1;\n" +
+      "{ b = a * (c + 2); /* a comment */ d; }\n" +
+      "{ { e = f; } g + h; }\n";
+
+  @Test
+  public void reusesNodesBeforeAndAfterEdit() throws IOException, ParseException {
+    Eg5 parser = parser(INPUT);
+    SimpleNode start = parser.Start();
+    SimpleNode first = child(start, 0);
+    SimpleNode last = child(start, 2);
+
+    // Replace "c" with "cc" in the second statement.
+    int offset = INPUT.indexOf('c');
+    String edited = INPUT.substring(0, offset) + "cc" + INPUT.substring(offset + 1);
+    Eg5 reparser = parser.reparse(scanner(edited), offset, 1, 2);
+    SimpleNode reparsed = reparser.Start();
+
+    assertEquals(dump(parser(edited).Start()), dump(reparsed));
+    assertSame(first, child(reparsed, 0));
+    assertNotSame(child(start, 1), child(reparsed, 1));
+    assertSame(last, child(reparsed, 2));
+    assertEquals(edited.indexOf('{', edited.indexOf('{') + 1), last.jjtGetFirstToken().getBegin());
+  }
+
+  @Test
+  public void reparsesLikeFreshParse() throws IOException, ParseException {
+    String[] insertions = {"", "x", " ", "\n", ";", "{", "}", "/*", "*/", "=", "1", "#"};
+    for (int offset = 0; offset <= INPUT.length(); offset++) {
+      for (int removed = 0; removed <= 2 && offset + removed <= INPUT.length(); removed++) {
+        for (String inserted : insertions) {
+          String edited = INPUT.substring(0, offset) + inserted + INPUT.substring(offset + removed);
+          String expected = parse(parser(edited));
+          Eg5 parser = parser(INPUT);
+          parser.Start();
+          // Errors in the edit are thrown by the parse, not by reparse.
+          Eg5 reparser = parser.reparse(scanner(edited), offset, removed, inserted.length());
+          String actual = parse(reparser);
+          if (expected.startsWith("Encountered")) {
+            // Productions reused from the previous parse add no expected tokens.
+            expected = expected.substring(0, expected.indexOf('\n'));
+            actual = actual.substring(0, Math.max(actual.indexOf('\n'), 0));
+          }
+          assertEquals(edited, expected, actual);
+        }
+      }
+    }
+  }
+
+  /** @return The dump of the tree, or the message of the error. */
+  private static String parse(Eg5 parser) throws IOException {
+    try {
+      return dump(parser.Start());
+    }
+    catch (ParseException ex) {
+      return ex.getMessage();
+    }
+    catch (ScannerException ex) {
+      return ex.getMessage();
+    }
+  }
+
+  private static Eg5Scanner scanner(String input) {
+    return new Eg5Scanner(new CharStream.ForCharSequence(input));
+  }
+
+  private static Eg5 parser(String input) throws IOException, ParseException {
+    return new Eg5(scanner(input));
+  }
+
+  private static SimpleNode child(SimpleNode node, int i) {
+    return (SimpleNode) node.jjtGetChild(i);
+  }
+
+  /** @return The tree with the tokens of every node and their special tokens. */
+  private static String dump(SimpleNode node) {
+    StringBuilder s = new StringBuilder();
+    dump(node, "", s);
+    return s.toString();
+  }
+
+  private static void dump(SimpleNode node, String prefix, StringBuilder s) {
+    s.append(prefix).append(node);
+    Token last = node.jjtGetLastToken();
+    for (Token t = node.jjtGetFirstToken(); t != null; t = t == last ? null : t.next) {
+      for (Token special = t.specialToken; special != null; special = special.specialToken) {
+        s.append(" /").append(special.getBegin()).append('-').append(special.getEnd());
+      }
+      s.append(' ').append(t.getKind()).append('@').append(t.getBegin()).append('-').append(t.getEnd())
+          .append(':').append(t.getLine()).append('.').append(t.getColumn());
+    }
+    s.append('\n');
+    for (int i = 0; i < node.jjtGetChildCount(); i++) {
+      dump(child(node, i), prefix + " ", s);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package org.javacc.examples.jjtree.eg6;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class Eg6Test {
+  private static final String INPUT = "(a + b) * 12 + d;";
+
+  @Test
+  public void visit() throws IOException, ParseException {
+    Eg6 parser = parser(INPUT);
+    int root = parser.Start();
+    NodeArena arena = parser.jjTree.arena();
+
+    final StringBuilder s = new StringBuilder();
+    arena.accept(root, new NodeArena.Visitor() {
+      private String indent = "";
+
+      @Override public boolean enter(NodeArena tree, int node) {
+        s.append(indent).append(tree.getName(node)).append(' ')
+            .append(INPUT, tree.getBegin(node), tree.getEnd(node)).append('\n');
+        indent += " ";
+        return true;
+      }
+
+      @Override public void leave(NodeArena tree, int node) {
+        indent = indent.substring(1);
+      }
+    });
+    assertEquals(
+        "Start (a + b) * 12 + d;\n" +
+        " Add (a + b) * 12 + d\n" +
+        "  Mult (a + b) * 12\n" +
+        "   Add a + b\n" +
+        "    Identifier a\n" +
+        "    Identifier b\n" +
+        "   Integer 12\n" +
+        "  Identifier d\n",
+        s.toString());
+
+    // The conditional nodes that were not created take no place.
+    assertEquals(8, arena.size());
+  }
+
+  @Test
+  public void cursor() throws IOException, ParseException {
+    Eg6 parser = parser(INPUT);
+    NodeArena arena = parser.jjTree.arena();
+    NodeArena.Cursor cursor = arena.cursor(parser.Start());
+    assertFalse(cursor.toParent());
+    assertTrue(cursor.toFirstChild());
+    assertEquals(Eg6TreeConstants.JJTADD, cursor.getKind());
+    assertEquals(2, arena.getChildCount(cursor.getNode()));
+    assertTrue(cursor.toFirstChild());
+    assertTrue(cursor.toNextSibling());
+    assertEquals("Identifier", cursor.getName());
+    assertEquals(INPUT.indexOf('d'), cursor.getBegin());
+    assertFalse(cursor.toNextSibling());
+    assertFalse(cursor.toFirstChild());
+    assertTrue(cursor.toParent());
+    assertTrue(cursor.toParent());
+    assertEquals(Eg6TreeConstants.JJTSTART, cursor.getKind());
+  }
+
+  @Test
+  public void wideNode() throws IOException, ParseException {
+    StringBuilder b = new StringBuilder("a");
+    for (int i = 1; i < 10000; i++) {
+      b.append(" + a");
+    }
+    Eg6 parser = parser(b.append(";").toString());
+    NodeArena arena = parser.jjTree.arena();
+    int add = arena.getFirstChild(parser.Start());
+    assertEquals(10000, arena.getChildCount(add));
+    for (int child = arena.getFirstChild(add); child != -1; child = arena.getNextSibling(child)) {
+      assertEquals(add, arena.getParent(child));
+    }
+  }
+
+  private static Eg6 parser(String input) throws IOException, ParseException {
+    return new Eg6(new Eg6Scanner(new CharStream.ForCharSequence(input)));
+  }
+}
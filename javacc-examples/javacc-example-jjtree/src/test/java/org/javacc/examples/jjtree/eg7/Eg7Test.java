@@ -0,0 +1,69 @@
+package org.javacc.examples.jjtree.eg7;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class Eg7Test {
+  /** Evaluates the expression, dispatching on the ids of the nodes. */
+  static class Evaluator implements Eg7Visitor {
+    private int child(SimpleNode node, int i) {
+      return Eg7Dispatcher.dispatch(this, (SimpleNode) node.jjtGetChild(i), null);
+    }
+
+    @Override public int visit(SimpleNode node, Object data) {
+      throw new UnsupportedOperationException(node.toString());
+    }
+
+    @Override public int visit(ASTStart node, Object data) {
+      return child(node, 0);
+    }
+
+    @Override public int visit(ASTAdd node, Object data) {
+      return child(node, 0) + child(node, 1);
+    }
+
+    @Override public int visit(ASTSub node, Object data) {
+      return child(node, 0) - child(node, 1);
+    }
+
+    @Override public int visit(ASTMul node, Object data) {
+      return child(node, 0) * child(node, 1);
+    }
+
+    @Override public int visit(ASTDiv node, Object data) {
+      return child(node, 0) / child(node, 1);
+    }
+
+    @Override public int visit(ASTInteger node, Object data) {
+      return Integer.parseInt(node.jjtGetFirstToken().getImage());
+    }
+  }
+
+  @Test
+  public void evaluate() throws IOException, ParseException {
+    ASTStart start = parser("(1 + 2) * 7 - 8 / 2 - 3;").Start();
+    Evaluator evaluator = new Evaluator();
+    assertEquals(14, Eg7Dispatcher.dispatch(evaluator, start, null));
+    assertEquals(14, start.jjtAccept(evaluator, null));
+  }
+
+  @Test
+  public void dispatchChildren() throws IOException, ParseException {
+    ASTStart start = parser("1 + 2;").Start();
+    final StringBuilder s = new StringBuilder();
+    Eg7Dispatcher.dispatchChildren(new Evaluator() {
+      @Override public int visit(ASTAdd node, Object data) {
+        s.append("Add");
+        return 0;
+      }
+    }, start, null);
+    assertEquals("Add", s.toString());
+  }
+
+  private static Eg7 parser(String input) throws IOException, ParseException {
+    return new Eg7(new Eg7Scanner(new CharStream.ForCharSequence(input)));
+  }
+}
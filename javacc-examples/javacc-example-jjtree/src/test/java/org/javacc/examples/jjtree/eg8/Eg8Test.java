@@ -0,0 +1,97 @@
+package org.javacc.examples.jjtree.eg8;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class Eg8Test {
+  /** Prints the events, and builds the tree from them on a stack of strings. */
+  static class Recorder implements NodeListener {
+    final StringBuilder events = new StringBuilder();
+    private String[] closed = new String[16];
+    private int sp;
+
+    @Override public void openNode(int id, Token firstToken) {
+      events.append("open ").append(Eg8TreeConstants.jjtNodeName[id])
+          .append(' ').append(firstToken.getImage()).append('\n');
+    }
+
+    @Override public void closeNode(int id, int arity, Token lastToken) {
+      events.append("close ").append(Eg8TreeConstants.jjtNodeName[id])
+          .append(' ').append(arity).append(' ').append(lastToken.getImage()).append('\n');
+      StringBuilder node = new StringBuilder(Eg8TreeConstants.jjtNodeName[id]);
+      if (arity > 0) {
+        node.append('(');
+        for (int i = sp - arity; i < sp; i++) {
+          node.append(i > sp - arity ? " " : "").append(closed[i]);
+        }
+        node.append(')');
+      }
+      sp -= arity;
+      closed[sp++] = node.toString();
+    }
+
+    @Override public void discardNode(int id) {
+      events.append("discard ").append(Eg8TreeConstants.jjtNodeName[id]).append('\n');
+    }
+
+    String tree() {
+      assertEquals(1, sp);
+      return closed[0];
+    }
+  }
+
+  @Test
+  public void events() throws IOException, ParseException {
+    Recorder recorder = parse("a * 2;");
+    assertEquals(
+        "open Start a\n" +
+        "open Add a\n" +
+        "open Mult a\n" +
+        "open Identifier a\n" +
+        "close Identifier 0 a\n" +
+        "open Integer 2\n" +
+        "close Integer 0 2\n" +
+        "close Mult 2 2\n" +
+        "discard Add\n" +
+        "close Start 1 ;\n",
+        recorder.events.toString());
+  }
+
+  @Test
+  public void tree() throws IOException, ParseException {
+    assertEquals(
+        "Start(Add(Mult(Add(Identifier Identifier) Integer) Negate(Identifier)))",
+        parse("(a + b) * 12 + -d;").tree());
+  }
+
+  @Test
+  public void definiteNode() throws IOException, ParseException {
+    Recorder recorder = parse("--a;");
+    assertEquals("Start(Negate(Negate(Identifier)))", recorder.tree());
+    assertEquals(
+        "open Start -\n" +
+        "open Add -\n" +
+        "open Mult -\n" +
+        "open Negate -\n" +
+        "open Negate a\n" +
+        "open Identifier a\n" +
+        "close Identifier 0 a\n" +
+        "close Negate 1 a\n" +
+        "close Negate 1 a\n" +
+        "discard Mult\n" +
+        "discard Add\n" +
+        "close Start 1 ;\n",
+        recorder.events.toString());
+  }
+
+  private static Recorder parse(String input) throws IOException, ParseException {
+    Eg8 parser = new Eg8(new Eg8Scanner(new CharStream.ForCharSequence(input)));
+    Recorder recorder = new Recorder();
+    parser.setNodeListener(recorder);
+    parser.Start();
+    return recorder;
+  }
+}
@@ -0,0 +1,294 @@
+package org.javacc.examples.options;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parses and scans inputs with the grammar of statements, generated with
+ * the options of every variant.  Every option must give the results and
+ * the error messages of the grammar generated with the default options.
+ *
+ * <p>The variants are generated in packages of their own, so the test
+ * finds their classes by name.</p>
+ */
+@RunWith(Parameterized.class)
+public class StatementsTest {
+  private static final String PROGRAM =
+      "int x = 0x1F + 2 * (3 - 1); // comment\n" +
+      "a[] b;\n" +
+      "a[i + 1][j] = \"s\\\"t\\n\";\n" +
+      "/* block\n" +
+      "   comment */ if (x <= 10) print x, y << 2; else { while (!done) x++; }\n" +
+      "f(1, 2.5e3, g());\n" +
+      "(int) x;\n" +
+      "(a) - b;\n" +
+      "exit;\n" +
+      "exit = 1 == 2 < 3;\n";
+
+  @Parameters
+  public static Collection<Object[]> variants() {
+    return Arrays.asList(new Object[][]{
+        {"base"},
+        {"dfa"},
+        {"pool"},
+        {"memo"},
+        {"retcode"},
+        {"tables"},
+        {"lazy"},
+    });
+  }
+
+  private final String variant;
+
+  public StatementsTest(String variant) {
+    this.variant = variant;
+  }
+
+  @Test
+  public void parsesStatements() throws Exception {
+    assertEquals(
+        "(decl int x (+ 0x1F (* 2 (- 3 1))))\n" +
+        "(decl a[] b)\n" +
+        "(set (index (index a (+ i 1)) j) \"s\\\"t\\n\")\n" +
+        "(if (<= x 10) (print x (<< y 2)) (block (while (! done) (++ x))))\n" +
+        "(call f 1 2.5e3 (call g))\n" +
+        "(cast int x)\n" +
+        "(- a b)\n" +
+        "(exit)\n" +
+        "(set exit (== 1 (< 2 3)))\n",
+        parse(PROGRAM));
+  }
+
+  @Test
+  public void reportsParseErrors() throws Exception {
+    assertEquals(
+        "Encountered: \";\" at line 1, column 5.\n" +
+        "Was expecting one of:\n" +
+        "   \"true\"...\n" +
+        "   \"false\"...\n" +
+        "   <INTEGER>...\n" +
+        "   <REAL>...\n" +
+        "   <STRING>...\n" +
+        "   <IDENTIFIER>...\n" +
+        "   \"(\"...\n" +
+        "   \"-\"...\n" +
+        "   \"!\"...",
+        parse("x = ;"));
+    assertEquals(
+        "Encountered: \"else\" at line 1, column 8.\n" +
+        "Was expecting one of:\n" +
+        "   \"if\"...\n" +
+        "   \"while\"...\n" +
+        "   \"print\"...\n" +
+        "   \"true\"...\n" +
+        "   \"false\"...\n" +
+        "   <INTEGER>...\n" +
+        "   <REAL>...\n" +
+        "   <STRING>...\n" +
+        "   <IDENTIFIER>...\n" +
+        "   \"(\"...\n" +
+        "   \"{\"...\n" +
+        "   \"-\"...\n" +
+        "   \"!\"...",
+        parse("if (x) else y;"));
+    assertEquals(
+        "Encountered: \"]\", \";\" at line 1, column 3.\n" +
+        "Was expecting one of:\n" +
+        "   \"true\"...\n" +
+        "   \"false\"...\n" +
+        "   <INTEGER>...\n" +
+        "   <REAL>...\n" +
+        "   <STRING>...\n" +
+        "   <IDENTIFIER>...\n" +
+        "   \"(\"...\n" +
+        "   \"-\"...\n" +
+        "   \"!\"...\n" +
+        "   \"]\", \"[\"...\n" +
+        "   \"]\", <IDENTIFIER>...",
+        parse("a[] ;"));
+    assertEquals(
+        "Encountered: <EOF> at line 1, column 9.\n" +
+        "Was expecting one of:\n" +
+        "   \"}\"...\n" +
+        "   <IDENTIFIER>...\n" +
+        "   \"if\"...\n" +
+        "   \"while\"...\n" +
+        "   \"print\"...\n" +
+        "   \"{\"...\n" +
+        "   \"-\"...\n" +
+        "   \"!\"...\n" +
+        "   \"(\"...\n" +
+        "   <INTEGER>...\n" +
+        "   <REAL>...\n" +
+        "   <STRING>...\n" +
+        "   \"true\"...\n" +
+        "   \"false\"...",
+        parse("{ x = 1;"));
+    assertEquals(
+        "Encountered: <IDENTIFIER> at line 1, column 6.\n" +
+        "Was expecting one of:\n" +
+        "   \";\"...\n" +
+        "   \"[\"...\n" +
+        "   \"==\"...\n" +
+        "   \"<\"...\n" +
+        "   \"<=\"...\n" +
+        "   \"<<\"...\n" +
+        "   \"+\"...\n" +
+        "   \"-\"...\n" +
+        "   \"*\"...\n" +
+        "   \"/\"...\n" +
+        "   \"++\"...\n" +
+        "   \"=\"...",
+        parse("a[1] b;"));
+  }
+
+  @Test
+  public void scansTokens() throws Exception {
+    assertEquals(
+        "\"if\" if at 0:0\n" +
+        "<IDENTIFIER> iffy at 0:3\n" +
+        "<INTEGER> 0x1F at 0:8\n" +
+        "<REAL> 2.5e3 at 0:13\n" +
+        "<REAL> 1e9 at 0:19\n" +
+        "<INTEGER> 0 at 0:23\n" +
+        "<INTEGER> 7 at 0:24\n" +
+        "<STRING> \"a\\\"b\" at 0:26\n" +
+        "\"<=\" <= at 0:33\n" +
+        "\"<<\" << at 0:36\n" +
+        "\"<\" < at 0:39\n" +
+        "<LINE_COMMENT> // c at 0:41\n" +
+        "\"*/\" /* d\n" +
+        " */ at 1:0\n" +
+        "<IDENTIFIER> x at 2:4\n" +
+        "\"++\" ++ at 2:5\n",
+        scan("if iffy 0x1F 2.5e3 1e9 07 \"a\\\"b\" <= << < // c\n/* d\n */ x++"));
+  }
+
+  @Test
+  public void reportsLexicalErrors() throws Exception {
+    assertEquals(
+        "Lexical error at 4, line 1, column 5, character <EOF>\n",
+        scan("\"abc"));
+    assertEquals(
+        "<IDENTIFIER> x at 0:0\n" +
+        "\"=\" = at 0:2\n" +
+        "<INTEGER> 1 at 0:4\n" +
+        "Lexical error at 6, line 1, column 7, character '#' (35)\n",
+        scan("x = 1 # 2;"));
+    assertEquals(
+        "Lexical error at 15, line 1, column 16, character <EOF>\n",
+        scan("/* unterminated"));
+    assertEquals(
+        "<IDENTIFIER> s at 0:0\n" +
+        "\"=\" = at 0:2\n" +
+        "Lexical error at 7, line 1, column 8, character 'q' (113)\n",
+        scan("s = \"a\\q\";"));
+    assertEquals(
+        "<IDENTIFIER> x at 0:0\n" +
+        "\"=\" = at 1:2\n" +
+        "Lexical error at 9, line 2, column 8, character '\\n' (10)\n",
+        scan("x\n  = \"ab\ncd\";"));
+    // The parser reports the lexical errors of the scanner.
+    assertEquals("Lexical error at 4, line 1, column 5, character <EOF>", parse("\"abc"));
+    assertEquals("Lexical error at 6, line 1, column 7, character '#' (35)", parse("x = 1 # 2;"));
+    assertEquals("Lexical error at 15, line 1, column 16, character <EOF>", parse("/* unterminated"));
+    assertEquals("Lexical error at 7, line 1, column 8, character 'q' (113)", parse("s = \"a\\q\";"));
+    assertEquals("Lexical error at 9, line 2, column 8, character '\\n' (10)", parse("x\n  = \"ab\ncd\";"));
+  }
+
+  /** @return The statements of the input as s-expressions, or the message of the error. */
+  private String parse(String input) throws Exception {
+    Class<?> parser = type("Statements");
+    try {
+      Object statements = parser.getConstructor(type("Scanner")).newInstance(scanner(input));
+      return (String) parser.getMethod("Program").invoke(statements);
+    }
+    catch (InvocationTargetException ex) {
+      return message(ex);
+    }
+  }
+
+  /** @return The tokens of the input, one per line, and the message of a lexical error. */
+  private String scan(String input) throws Exception {
+    StringBuilder b = new StringBuilder();
+    Object scanner = scanner(input);
+    Method getNextToken = scanner.getClass().getMethod("getNextToken");
+    Field specialToken = type("Token").getField("specialToken");
+    Field next = type("Token").getField("next");
+    Method release = release(scanner);
+    try {
+      for (Object t = getNextToken.invoke(scanner); kind(t) != 0; t = getNextToken.invoke(scanner)) {
+        Object special = specialToken.get(t);
+        if (special != null) {
+          while (specialToken.get(special) != null) {
+            special = specialToken.get(special);
+          }
+          for (; special != null; special = next.get(special)) {
+            describe(b, special);
+          }
+        }
+        describe(b, t);
+        if (release != null) {
+          // Reuse the token and its special tokens for the next ones.
+          release.invoke(scanner, t);
+        }
+      }
+    }
+    catch (InvocationTargetException ex) {
+      b.append(message(ex)).append('\n');
+    }
+    return b.toString();
+  }
+
+  /** @return The method that gives a token back to the scanner, if it pools the tokens. */
+  private Method release(Object scanner) throws Exception {
+    for (Method method : scanner.getClass().getMethods()) {
+      if (method.getName().equals("release")) {
+        return method;
+      }
+    }
+    return null;
+  }
+
+  private void describe(StringBuilder b, Object t) throws Exception {
+    String[] tokenImage = (String[]) type("StatementsConstants").getField("tokenImage").get(null);
+    b.append(tokenImage[kind(t)]).append(' ').append(property(t, "getImage"))
+        .append(" at ").append(property(t, "getLine")).append(':').append(property(t, "getColumn")).append('\n');
+  }
+
+  private static int kind(Object t) throws Exception {
+    return (Integer) property(t, "getKind");
+  }
+
+  private static Object property(Object t, String getter) throws Exception {
+    return t.getClass().getMethod(getter).invoke(t);
+  }
+
+  private Object scanner(String input) throws Exception {
+    Object chars = type("CharStream$ForCharSequence").getConstructor(CharSequence.class).newInstance(input);
+    return type("StatementsScanner").getConstructor(type("CharStream")).newInstance(chars);
+  }
+
+  /** @return The message of a parse or lexical error thrown by the generated code. */
+  private String message(InvocationTargetException ex) throws Exception {
+    Throwable cause = ex.getCause();
+    if (type("ParseException").isInstance(cause) || type("ScannerException").isInstance(cause)) {
+      return cause.getMessage();
+    }
+    throw ex;
+  }
+
+  private Class<?> type(String name) throws ClassNotFoundException {
+    return Class.forName(getClass().getPackage().getName() + "." + variant + "." + name);
+  }
+}
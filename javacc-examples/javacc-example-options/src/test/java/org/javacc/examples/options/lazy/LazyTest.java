@@ -0,0 +1,58 @@
+package org.javacc.examples.options.lazy;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LazyTest {
+  private static final String EXPECTING_EXPRESSION =
+      "Was expecting one of:\n" +
+      "   \"true\"...\n" +
+      "   \"false\"...\n" +
+      "   <INTEGER>...\n" +
+      "   <REAL>...\n" +
+      "   <STRING>...\n" +
+      "   <IDENTIFIER>...\n" +
+      "   \"(\"...\n" +
+      "   \"-\"...\n" +
+      "   \"!\"...";
+
+  @Test
+  public void replaysWithoutActions() throws IOException {
+    List<String> parsed = new ArrayList<String>();
+    try {
+      new Statements(scanner("x = 1;\nprint x;\ny = ;"), parsed).Program();
+      fail();
+    }
+    catch (ParseException ex) {
+      assertEquals("Encountered: \";\" at line 3, column 5.\n" + EXPECTING_EXPRESSION, ex.getMessage());
+    }
+    assertEquals(Arrays.asList("(set x 1)", "(print x)"), parsed);
+  }
+
+  @Test
+  public void recordsAfterTheReplayedTokens() throws IOException {
+    // Every statement has four tokens.
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < 3000; i++) {
+      b.append("x = 1;\n");
+    }
+    b.append("y = ;");
+    try {
+      new Statements(scanner(b.toString())).Program();
+      fail();
+    }
+    catch (ParseException ex) {
+      assertEquals("Encountered: \";\" at line 3001, column 5.\n" + EXPECTING_EXPRESSION, ex.getMessage());
+    }
+  }
+
+  private static StatementsScanner scanner(String input) {
+    return new StatementsScanner(new CharStream.ForCharSequence(input));
+  }
+}
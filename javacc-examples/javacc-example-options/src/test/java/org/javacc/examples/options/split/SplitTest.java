@@ -0,0 +1,174 @@
+package org.javacc.examples.options.split;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SplitTest {
+  @Test
+  public void splitsScannerMethods() {
+    Set<String> names = new HashSet<String>();
+    for (Method method : WordsScanner.class.getDeclaredMethods()) {
+      names.add(method.getName());
+    }
+    assertTrue(names.contains("jjMoveStringLiteralDfa3_0_1"));
+    assertTrue(names.contains("jjMoveNfa_0_ascii0_1"));
+  }
+
+  @Test
+  public void keepsMethodsUnderJitLimit() throws IOException {
+    Map<String, Integer> sizes = codeSizes(WordsScanner.class);
+    assertTrue(sizes.containsKey("jjMoveNfa_0_ascii0_1"));
+    // The static initializer of the tables runs once, the JIT does not matter.
+    sizes.remove("<clinit>");
+    for (Map.Entry<String, Integer> size : sizes.entrySet()) {
+      assertTrue(size.getKey() + " has " + size.getValue() + " bytes", size.getValue() <= 8000);
+    }
+  }
+
+  @Test
+  public void scansTokens() throws IOException {
+    assertEquals(
+        "\"baba\" baba at 0:0\n" +
+        "\"bafa\" bafa at 0:5\n" +
+        "<NAME> babax at 1:2\n" +
+        "<Q_BA> 12ba at 1:8\n" +
+        "<Q_ZU> 3.5zu at 1:13\n" +
+        "\"daru\" daru at 2:0\n" +
+        "<NAME> dasa at 2:5\n" +
+        "<NAME> zuzu at 2:10\n",
+        scan("baba bafa\n  babax 12ba 3.5zu\ndaru dasa zuzu"));
+  }
+
+  @Test
+  public void reportsLexicalErrors() throws IOException {
+    assertEquals(
+        "<NAME> x at 0:0\n" +
+        "Lexical error at 4, line 1, column 5, character <EOF>\n",
+        scan("x 12"));
+    assertEquals(
+        "Lexical error at 2, line 1, column 3, character 'b' (98)\n",
+        scan("4.ba"));
+    assertEquals(
+        "<NAME> x at 0:0\n" +
+        "Lexical error at 2, line 1, column 3, character 'B' (66)\n",
+        scan("x Baba"));
+  }
+
+  @Test
+  public void parsesNames() throws IOException {
+    assertEquals("babax\nzuzu\n", parse("babax zuzu"));
+    assertEquals(
+        "Encountered: \"baba\" at line 1, column 6.\n" +
+        "Was expecting one of:\n" +
+        "   <EOF>\n" +
+        "   <NAME>...",
+        parse("zuzu baba"));
+  }
+
+  private static String parse(String input) throws IOException {
+    try {
+      return new Words(scanner(input)).Names();
+    }
+    catch (ParseException ex) {
+      return ex.getMessage();
+    }
+    catch (ScannerException ex) {
+      return ex.getMessage();
+    }
+  }
+
+  private static String scan(String input) throws IOException {
+    StringBuilder b = new StringBuilder();
+    WordsScanner scanner = scanner(input);
+    try {
+      for (Token t = scanner.getNextToken(); t.getKind() != WordsConstants.EOF; t = scanner.getNextToken()) {
+        b.append(WordsConstants.tokenImage[t.getKind()]).append(' ').append(t.getImage())
+            .append(" at ").append(t.getLine()).append(':').append(t.getColumn()).append('\n');
+      }
+    }
+    catch (ScannerException ex) {
+      b.append(ex.getMessage()).append('\n');
+    }
+    return b.toString();
+  }
+
+  /** @return The bytecode size of every method of the class, read from its class file. */
+  private static Map<String, Integer> codeSizes(Class<?> c) throws IOException {
+    InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class");
+    try {
+      DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+      skip(data, 8);
+      int count = data.readUnsignedShort();
+      String[] utf8 = new String[count];
+      for (int i = 1; i < count; i++) {
+        int tag = data.readUnsignedByte();
+        switch (tag) {
+          case 1: utf8[i] = data.readUTF(); break;
+          case 5: case 6: skip(data, 8); i++; break;
+          case 7: case 8: case 16: case 19: case 20: skip(data, 2); break;
+          case 15: skip(data, 3); break;
+          default: skip(data, 4); break;
+        }
+      }
+      skip(data, 6);
+      skip(data, 2 * data.readUnsignedShort());
+      skipMembers(data);
+      Map<String, Integer> sizes = new HashMap<String, Integer>();
+      int methods = data.readUnsignedShort();
+      for (int i = 0; i < methods; i++) {
+        skip(data, 2);
+        String name = utf8[data.readUnsignedShort()];
+        skip(data, 2);
+        int attributes = data.readUnsignedShort();
+        for (int j = 0; j < attributes; j++) {
+          String attribute = utf8[data.readUnsignedShort()];
+          int length = data.readInt();
+          if (attribute.equals("Code")) {
+            skip(data, 4);
+            int code = data.readInt();
+            sizes.put(name, sizes.containsKey(name) ? Math.max(code, sizes.get(name)) : code);
+            skip(data, length - 8);
+          }
+          else {
+            skip(data, length);
+          }
+        }
+      }
+      return sizes;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static void skip(DataInputStream data, int bytes) throws IOException {
+    data.readFully(new byte[bytes]);
+  }
+
+  private static void skipMembers(DataInputStream data) throws IOException {
+    int members = data.readUnsignedShort();
+    for (int i = 0; i < members; i++) {
+      skip(data, 6);
+      int attributes = data.readUnsignedShort();
+      for (int j = 0; j < attributes; j++) {
+        skip(data, 2);
+        skip(data, data.readInt());
+      }
+    }
+  }
+
+  private static WordsScanner scanner(String input) {
+    return new WordsScanner(new CharStream.ForCharSequence(input));
+  }
+}
@@ -66,6 +66,17 @@ public class SimpleNode implements Node {
     children[i] = n;
   }
 
+  @Override
+  public void jjtSetChildren(Node[] nodes, int from, int count) {
+    if (count == 0) {
+      children = null;
+    }
+    else {
+      children = new Node[count];
+      System.arraycopy(nodes, from, children, 0, count);
+    }
+  }
+
   @Override
   public Node jjtGetChild(int i) {
     return children[i];
@@ -93,6 +93,17 @@ public class SimpleNode implements Node {
     children[i] = n;
   }
 
+  @Override
+  public void jjtSetChildren(Node[] nodes, int from, int count) {
+    if (count == 0) {
+      children = null;
+    }
+    else {
+      children = new Node[count];
+      System.arraycopy(nodes, from, children, 0, count);
+    }
+  }
+
   @Override
   public Node jjtGetChild(int i) {
     return children[i];
@@ -103,6 +114,10 @@ public class SimpleNode implements Node {
     return children == null ? 0 : children.length;
   }
 
+  public int jjtGetId() {
+    return id;
+  }
+
   @Override
   public Object jjtAccept(JavaVisitor visitor, Object data) {
     return visitor.visit(this, data);
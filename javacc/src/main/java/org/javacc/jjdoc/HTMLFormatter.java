@@ -93,15 +93,15 @@ public class HTMLFormatter extends TextFormatter {
     if (!"".equals(JJDocOptions.getCSS())) {
       println("<LINK REL=\"stylesheet\" type=\"text/css\" href=\"" + JJDocOptions.getCSS() + "\"/>");
     }
-    if (JJDocGlobals.inputFile != null) {
-      println("<TITLE>BNF for " + JJDocGlobals.inputFile + "</TITLE>");
+    if (JJDocGlobals.getInputFile() != null) {
+      println("<TITLE>BNF for " + JJDocGlobals.getInputFile() + "</TITLE>");
     }
     else {
       println("<TITLE>A BNF grammar by JJDoc</TITLE>");
     }
     println("</HEAD>");
     println("<BODY>");
-    println("<H1 ALIGN=CENTER>BNF for " + JJDocGlobals.inputFile + "</H1>");
+    println("<H1 ALIGN=CENTER>BNF for " + JJDocGlobals.getInputFile() + "</H1>");
   }
 
   @Override
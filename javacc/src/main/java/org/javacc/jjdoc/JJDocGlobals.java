@@ -28,6 +28,7 @@
 
 package org.javacc.jjdoc;
 
+import org.javacc.parser.GenerationContext;
 import org.javacc.utils.io.IndentingPrintWriter;
 
 import java.io.FileWriter;
@@ -36,10 +37,35 @@ import java.io.OutputStreamWriter;
 
 /** Global variables for JJDoc. */
 public class JJDocGlobals {
-  /** The name of the input file. */
-  public static String inputFile;
-  /** The name of the output file. */
-  public static String outputFile;
+  private static final class Files {
+    String inputFile;
+    String outputFile;
+  }
+
+  private static final GenerationContext.Local<Files> files =
+      new GenerationContext.Local<Files>() {
+        @Override protected Files initialValue() {
+          return new Files();
+        }
+      };
+
+  /** @return The name of the input file. */
+  public static String getInputFile() {
+    return files.get().inputFile;
+  }
+
+  public static void setInputFile(String inputFile) {
+    files.get().inputFile = inputFile;
+  }
+
+  /** @return The name of the output file. */
+  public static String getOutputFile() {
+    return files.get().outputFile;
+  }
+
+  public static void setOutputFile(String outputFile) {
+    files.get().outputFile = outputFile;
+  }
 
   public static Formatter createFormatter(IndentingPrintWriter out) {
     if (JJDocOptions.getText()) {
@@ -53,24 +79,26 @@ public class JJDocGlobals {
 
   public static IndentingPrintWriter createOutputStream()
       throws IOException {
+    String inputFile = getInputFile();
+    String outputFile;
     if (JJDocOptions.getOutputFile().equals("")) {
-      if (JJDocGlobals.inputFile.equals("standard input")) {
+      if (inputFile.equals("standard input")) {
         return new IndentingPrintWriter(
             new OutputStreamWriter(System.out));
       }
       else {
         String ext = ".bnf";
-        int i = JJDocGlobals.inputFile.lastIndexOf('.');
+        int i = inputFile.lastIndexOf('.');
         if (i == -1) {
           outputFile = inputFile + ext;
         }
         else {
-          String suffix = JJDocGlobals.inputFile.substring(i);
+          String suffix = inputFile.substring(i);
           if (suffix.equals(ext)) {
             outputFile = inputFile + ext;
           }
           else {
-            outputFile = JJDocGlobals.inputFile.substring(0, i) + ext;
+            outputFile = inputFile.substring(0, i) + ext;
           }
         }
       }
@@ -78,6 +106,7 @@ public class JJDocGlobals {
     else {
       outputFile = JJDocOptions.getOutputFile();
     }
+    setOutputFile(outputFile);
     return new IndentingPrintWriter(
         new FileWriter(
             outputFile));
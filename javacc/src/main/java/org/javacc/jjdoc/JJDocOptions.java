@@ -39,12 +39,12 @@ public class JJDocOptions extends Options {
   public static void init() {
     Options.init();
 
-    Options.optionValues.put("ONE_TABLE", Boolean.TRUE);
-    Options.optionValues.put("TEXT", Boolean.FALSE);
-    Options.optionValues.put("BNF", Boolean.FALSE);
+    optionValues().put("ONE_TABLE", Boolean.TRUE);
+    optionValues().put("TEXT", Boolean.FALSE);
+    optionValues().put("BNF", Boolean.FALSE);
 
-    Options.optionValues.put("OUTPUT_FILE", "");
-    Options.optionValues.put("CSS", "");
+    optionValues().put("OUTPUT_FILE", "");
+    optionValues().put("CSS", "");
   }
 
   /**
@@ -29,6 +29,7 @@
 package org.javacc.jjdoc;
 
 import org.javacc.parser.CharStream;
+import org.javacc.parser.GenerationContext;
 import org.javacc.parser.JavaCCErrors;
 import org.javacc.parser.JavaCCParser;
 import org.javacc.parser.JavaCCScanner;
@@ -43,14 +44,28 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
+import java.util.concurrent.Callable;
 
 public final class Main {
   public static void main(String[] args) throws Exception {
     System.exit(mainProgram(args));
   }
 
-  public static int mainProgram(String[] args) throws Exception {
-    org.javacc.parser.Main.reInitAll();
+  /**
+   * Run JJDoc in a new generation context.
+   *
+   * @param args The option settings and the grammar file.
+   * @return The exit code.
+   */
+  public static int mainProgram(final String[] args) throws Exception {
+    return new GenerationContext().call(new Callable<Integer>() {
+      @Override public Integer call() throws Exception {
+        return generate(args);
+      }
+    });
+  }
+
+  private static int generate(String[] args) throws Exception {
     JJDocOptions.init();
 
     Tools.bannerLine("Documentation Generator", "0.1.4");
@@ -83,8 +98,8 @@ public final class Main {
               new CharStream.Escaping(
                   new CharStream.ForReader(
                       new InputStreamReader(System.in)))));
-      JJDocGlobals.inputFile = "standard input";
-      JJDocGlobals.outputFile = "standard output";
+      JJDocGlobals.setInputFile("standard input");
+      JJDocGlobals.setOutputFile("standard output");
     }
     else {
       JJDocGlobals.info("Reading from file " + args[args.length - 1] + " . . .");
@@ -98,7 +113,7 @@ public final class Main {
           JJDocGlobals.error(args[args.length - 1] + " is a directory. Please use a valid file name.");
           return 1;
         }
-        JJDocGlobals.inputFile = fp.getName();
+        JJDocGlobals.setInputFile(fp.getName());
         BufferedReader reader = new BufferedReader(
             new InputStreamReader(
                 new FileInputStream(args[args.length - 1]),
@@ -135,7 +150,7 @@ public final class Main {
 
       if (JavaCCErrors.getErrorCount() == 0) {
         if (JavaCCErrors.getWarningCount() == 0) {
-          JJDocGlobals.info("Grammar documentation generated successfully in " + JJDocGlobals.outputFile);
+          JJDocGlobals.info("Grammar documentation generated successfully in " + JJDocGlobals.getOutputFile());
         }
         else {
           JJDocGlobals.info("Grammar documentation generated with 0 errors and "
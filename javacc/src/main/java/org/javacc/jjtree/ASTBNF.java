@@ -35,6 +35,9 @@ public class ASTBNF extends ASTProduction {
     throwsList.add("RuntimeException");
   }
 
+  /** Whether the production returns nothing and takes no parameters. */
+  boolean voidWithoutParameters;
+
   public String toString() {
     return super.toString() + ": " + name;
   }
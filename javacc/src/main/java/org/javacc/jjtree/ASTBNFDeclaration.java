@@ -52,6 +52,11 @@ public class ASTBNFDeclaration extends JJTreeNode {
 
       openJJTreeComment(io, nodeScope.getNodeDescriptorText());
       io.println();
+      if (nodeScope.isReusable()) {
+        io.println(indent + "if (jjtReuse(" + nodeScope.getNodeDescriptor().getNodeId() + ")) {");
+        io.println(indent + "  return;");
+        io.println(indent + "}");
+      }
       try {
         nodeScope.insertOpenNodeCode(io, indent);
       }
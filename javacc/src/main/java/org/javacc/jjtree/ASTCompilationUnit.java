@@ -38,18 +38,18 @@ public class ASTCompilationUnit extends JJTreeNode {
     Token t = getFirstToken();
 
     while (true) {
-      if (t == JJTreeGlobals.parserImports) {
+      if (t == JJTreeGlobals.get().parserImports) {
 
         // If the parser and nodes are in separate packages (NODE_PACKAGE specified in
         // OPTIONS), then generate an import for the node package.
-        if (!JJTreeGlobals.nodePackageName.equals("")
-            && !JJTreeGlobals.nodePackageName.equals(JJTreeGlobals.packageName)) {
+        if (!JJTreeGlobals.get().nodePackageName.equals("")
+            && !JJTreeGlobals.get().nodePackageName.equals(JJTreeGlobals.get().packageName)) {
           io.getOut().println("");
-          io.getOut().println("import " + JJTreeGlobals.nodePackageName + ".*;");
+          io.getOut().println("import " + JJTreeGlobals.get().nodePackageName + ".*;");
         }
       }
 
-      if (t == JJTreeGlobals.parserImplements) {
+      if (t == JJTreeGlobals.get().parserImplements) {
         if (t.getImage().equals("implements")) {
           print(io, t);
           openJJTreeComment(io, null);
@@ -68,7 +68,7 @@ public class ASTCompilationUnit extends JJTreeNode {
         print(io, t);
       }
 
-      if (t == JJTreeGlobals.parserClassBodyStart) {
+      if (t == JJTreeGlobals.get().parserClassBodyStart) {
         openJJTreeComment(io, null);
         TreeStateFile.insertParserMembers(io);
         closeJJTreeComment(io);
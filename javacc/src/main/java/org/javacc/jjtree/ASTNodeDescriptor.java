@@ -28,10 +28,7 @@
 
 package org.javacc.jjtree;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class ASTNodeDescriptor extends JJTreeNode {
   ASTNodeDescriptor(int id) {
@@ -48,27 +45,28 @@ public class ASTNodeDescriptor extends JJTreeNode {
     return nd;
   }
 
-  static List<String> nodeIds = new ArrayList<String>();
-  static List<String> nodeNames = new ArrayList<String>();
-  static Map<String, String> nodeSeen = new HashMap<String, String>();
-
   static List<String> getNodeIds() {
-    return nodeIds;
+    return JJTreeGlobals.get().nodeIds;
   }
 
   static List<String> getNodeNames() {
-    return nodeNames;
+    return JJTreeGlobals.get().nodeNames;
   }
 
   void setNodeIdValue() {
     String k = getNodeId();
-    if (!nodeSeen.containsKey(k)) {
-      nodeSeen.put(k, k);
-      nodeNames.add(name);
-      nodeIds.add(k);
+    JJTreeGlobals globals = JJTreeGlobals.get();
+    if (globals.nodeSeen.add(k)) {
+      globals.nodeNames.add(name);
+      globals.nodeIds.add(k);
     }
   }
 
+  int getNodeScopeCount() {
+    Integer count = JJTreeGlobals.get().nodeScopes.get(getNodeId());
+    return count != null ? count : 0;
+  }
+
   String getNodeId() {
     return "JJT" + name.toUpperCase().replace('.', '_');
   }
@@ -104,7 +102,12 @@ public class ASTNodeDescriptor extends JJTreeNode {
   }
 
   String openNode(String nodeVar) {
-    return "jjTree.openNodeScope(" + nodeVar + ");";
+    return "jjTree.openNodeScope(" + nodeVar + tokenArgument(1) + ");";
+  }
+
+  /** The listener of the tree state gets the first and last tokens of the nodes. */
+  private static String tokenArgument(int index) {
+    return JJTreeOptions.getNodeListener() ? ", getToken(" + index + ")" : "";
   }
 
   private String expressionText() {
@@ -127,15 +130,15 @@ public class ASTNodeDescriptor extends JJTreeNode {
 
   String closeNode(String nodeVar) {
     if (expression == null) {
-      return "jjTree.closeNodeScope(" + nodeVar + ", true);";
+      return "jjTree.closeNodeScope(" + nodeVar + ", true" + tokenArgument(0) + ");";
     }
     else if (isGT) {
       return "jjTree.closeNodeScope(" + nodeVar + ", jjTree.nodeArity() >" +
-          expressionText() + ");";
+          expressionText() + tokenArgument(0) + ");";
     }
     else {
       return "jjTree.closeNodeScope(" + nodeVar + ", " +
-          expressionText() + ");";
+          expressionText() + tokenArgument(0) + ");";
     }
   }
 
@@ -28,23 +28,40 @@
 
 package org.javacc.jjtree;
 
-import org.javacc.parser.Main;
+import org.javacc.parser.GenerationContext;
 import org.javacc.utils.Tools;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.concurrent.Callable;
 
 public final class JJTree {
   private IO io;
 
-  public int main(String[] args) {
-    // initialize static state for allowing repeat runs without exiting
-    ASTNodeDescriptor.nodeIds = new ArrayList<String>();
-    ASTNodeDescriptor.nodeNames = new ArrayList<String>();
-    ASTNodeDescriptor.nodeSeen = new Hashtable<String, String>();
-    Main.reInitAll();
+  /**
+   * Run JJTree in a new generation context, so that several threads can
+   * generate grammars at the same time.
+   *
+   * @param args The option settings and the grammar file.
+   * @return The exit code.
+   */
+  public int main(final String[] args) {
+    try {
+      return new GenerationContext().call(new Callable<Integer>() {
+        @Override public Integer call() {
+          return run(args);
+        }
+      });
+    }
+    catch (RuntimeException ex) {
+      throw ex;
+    }
+    catch (Exception ex) {
+      // The task throws no checked exceptions.
+      throw new IllegalStateException(ex);
+    }
+  }
 
+  private int run(String[] args) {
     Tools.bannerLine("Tree Builder", "");
 
     io = new IO();
@@ -116,7 +133,10 @@ public final class JJTree {
       io.getOut().close();
 
       NodeFiles.generateTreeConstantsClass();
+      NodeFiles.generateArenaClass();
+      NodeFiles.generateListenerClass();
       NodeFiles.generateVisitorClass();
+      NodeFiles.generateDispatcherClass();
 
       TreeStateFile treeStateFile = new TreeStateFile();
       treeStateFile.start();
@@ -139,7 +159,6 @@ public final class JJTree {
   /** Initialize for JJTree */
   private void initializeOptions() {
     JJTreeOptions.init();
-    JJTreeGlobals.initialize();
   }
 
   private void usage() {
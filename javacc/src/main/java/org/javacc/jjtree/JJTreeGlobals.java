@@ -28,94 +28,112 @@
 
 package org.javacc.jjtree;
 
+import org.javacc.parser.GenerationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-class JJTreeGlobals {
-  static void initialize() {
-    parserName = null;
-    packageName = "";
-    parserImplements = null;
-    parserClassBodyStart = null;
-    parserImports = null;
-    productions = new HashMap<String, ASTProduction>();
-
-    jjtreeOptions = new HashSet<String>();
-    jjtreeOptions.add("JJTREE_OUTPUT_DIRECTORY");
-    jjtreeOptions.add("MULTI");
-    jjtreeOptions.add("NODE_PREFIX");
-    jjtreeOptions.add("NODE_PACKAGE");
-    jjtreeOptions.add("NODE_EXTENDS");
-    jjtreeOptions.add("NODE_CLASS");
-    jjtreeOptions.add("NODE_STACK_SIZE");
-    jjtreeOptions.add("NODE_DEFAULT_VOID");
-    jjtreeOptions.add("OUTPUT_FILE");
-    jjtreeOptions.add("CHECK_DEFINITE_NODE");
-    jjtreeOptions.add("NODE_SCOPE_HOOK");
-    jjtreeOptions.add("TRACK_TOKENS");
-    jjtreeOptions.add("NODE_FACTORY");
-    jjtreeOptions.add("NODE_USES_PARSER");
-    jjtreeOptions.add("BUILD_NODE_FILES");
-    jjtreeOptions.add("VISITOR");
-    jjtreeOptions.add("VISITOR_EXCEPTION");
-    jjtreeOptions.add("VISITOR_DATA_TYPE");
-    jjtreeOptions.add("VISITOR_RETURN_TYPE");
-  }
+/** Global variables of JJTree, in the generation context of the current thread. */
+final class JJTreeGlobals {
+  private static final GenerationContext.Local<JJTreeGlobals> current =
+      new GenerationContext.Local<JJTreeGlobals>() {
+        @Override protected JJTreeGlobals initialValue() {
+          return new JJTreeGlobals();
+        }
+      };
 
-  static {
-    initialize();
+  /** @return The global variables of the current generation context. */
+  static JJTreeGlobals get() {
+    return current.get();
   }
 
   /**
    * This set stores the JJTree-specific options that should not be
    * passed down to JavaCC
    */
-  private static Set<String> jjtreeOptions;
+  private static final Set<String> jjtreeOptions = Collections.unmodifiableSet(
+      new HashSet<String>(Arrays.asList(
+          "JJTREE_OUTPUT_DIRECTORY",
+          "MULTI",
+          "NODE_PREFIX",
+          "NODE_PACKAGE",
+          "NODE_EXTENDS",
+          "NODE_CLASS",
+          "NODE_STACK_SIZE",
+          "NODE_DEFAULT_VOID",
+          "OUTPUT_FILE",
+          "CHECK_DEFINITE_NODE",
+          "NODE_SCOPE_HOOK",
+          "TRACK_TOKENS",
+          "NODE_ARENA",
+          "NODE_LISTENER",
+          "NODE_FACTORY",
+          "NODE_USES_PARSER",
+          "BUILD_NODE_FILES",
+          "VISITOR",
+          "VISITOR_EXCEPTION",
+          "VISITOR_DATA_TYPE",
+          "VISITOR_RETURN_TYPE")));
 
   public static boolean isOptionJJTreeOnly(String optionName) {
     return jjtreeOptions.contains(optionName.toUpperCase());
   }
 
   /** Use this like className. */
-  public static String parserName;
+  String parserName;
   /**
    * The package that the parser lives in.  If the grammar doesn't
    * specify a package it is the empty string.
    */
-  public static String packageName = "";
+  String packageName = "";
   /**
    * The package the node files live in. If the NODE_PACKAGE option
    * is not set, then this defaults to packageName.
    */
-  public static String nodePackageName = "";
+  String nodePackageName = "";
   /**
    * The <code>implements</code> token of the parser class.  If the
    * parser doesn't have one then it is the first "{" of the parser
    * class body.
    */
-  public static Token parserImplements;
+  Token parserImplements;
   /**
    * The first token of the parser class body (the <code>{</code>).
    * The JJTree state is inserted after this token.
    */
-  public static Token parserClassBodyStart;
+  Token parserClassBodyStart;
   /**
    * The first token of the <code>import</code> list, or the
    * position where such a list should be inserted. The import
    * for the Node Package is inserted after this token.
    */
-  public static Token parserImports;
+  Token parserImports;
   /** The mapping from production names to ASTProduction objects. */
-  static Map<String, ASTProduction> productions = new HashMap<String, ASTProduction>();
+  final Map<String, ASTProduction> productions = new HashMap<String, ASTProduction>();
+
+  /** Ids and names of the node types, in the order they are first seen. */
+  final List<String> nodeIds = new ArrayList<String>();
+  final List<String> nodeNames = new ArrayList<String>();
+  final Set<String> nodeSeen = new HashSet<String>();
+  /** Number of node scopes creating the nodes of each id. */
+  final Map<String, Integer> nodeScopes = new HashMap<String, Integer>();
+  /** Names of the node files written. */
+  final Set<String> nodesGenerated = new HashSet<String>();
+
+  private JJTreeGlobals() {}
 
   static String treeStateClass() {
-    return "JJT" + parserName + "State";
+    return "JJT" + get().parserName + "State";
   }
 
   static String treeConstantsClass() {
-    String name = parserName;
+    String name = get().parserName;
     if (name.endsWith("Parser")) {
       name = name.substring(0, name.length() - "Parser".length());
     }
@@ -123,12 +141,18 @@ class JJTreeGlobals {
   }
 
   static String visitorClass() {
-    String name = parserName;
+    String name = get().parserName;
     if (name.endsWith("Parser")) {
       name = name.substring(0, name.length() - "Parser".length());
     }
     return name + "Visitor";
   }
-}
-
 
+  static String dispatcherClass() {
+    String name = get().parserName;
+    if (name.endsWith("Parser")) {
+      name = name.substring(0, name.length() - "Parser".length());
+    }
+    return name + "Dispatcher";
+  }
+}
@@ -41,6 +41,14 @@ public class JJTreeNode extends SimpleNode {
     ((JJTreeNode) n).setOrdinal(i);
   }
 
+  // Not annotated, since the SimpleNode of the JJTree that bootstraps this
+  // one may not have the method yet.
+  public void jjtSetChildren(Node[] nodes, int from, int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      jjtSetChild(nodes[from + i], i);
+    }
+  }
+
   public int getOrdinal() {
     return ordinal;
   }
@@ -48,26 +48,28 @@ class JJTreeOptions extends Options {
   public static void init() {
     Options.init();
 
-    Options.optionValues.put("JDK_VERSION", "1.5");
-    Options.optionValues.put("MULTI", Boolean.FALSE);
-    Options.optionValues.put("NODE_DEFAULT_VOID", Boolean.FALSE);
-    Options.optionValues.put("NODE_SCOPE_HOOK", Boolean.FALSE);
-    Options.optionValues.put("NODE_USES_PARSER", Boolean.FALSE);
-    Options.optionValues.put("BUILD_NODE_FILES", Boolean.TRUE);
-    Options.optionValues.put("VISITOR", Boolean.FALSE);
-    Options.optionValues.put("TRACK_TOKENS", Boolean.FALSE);
-
-    Options.optionValues.put("NODE_PREFIX", "AST");
-    Options.optionValues.put("NODE_PACKAGE", "");
-    Options.optionValues.put("NODE_EXTENDS", "");
-    Options.optionValues.put("NODE_CLASS", "");
-    Options.optionValues.put("NODE_FACTORY", "");
-    Options.optionValues.put("OUTPUT_FILE", "");
-    Options.optionValues.put("VISITOR_DATA_TYPE", "");
-    Options.optionValues.put("VISITOR_RETURN_TYPE", "Object");
-    Options.optionValues.put("VISITOR_EXCEPTION", "");
-
-    Options.optionValues.put("JJTREE_OUTPUT_DIRECTORY", "");
+    optionValues().put("JDK_VERSION", "1.5");
+    optionValues().put("MULTI", Boolean.FALSE);
+    optionValues().put("NODE_DEFAULT_VOID", Boolean.FALSE);
+    optionValues().put("NODE_SCOPE_HOOK", Boolean.FALSE);
+    optionValues().put("NODE_USES_PARSER", Boolean.FALSE);
+    optionValues().put("BUILD_NODE_FILES", Boolean.TRUE);
+    optionValues().put("VISITOR", Boolean.FALSE);
+    optionValues().put("TRACK_TOKENS", Boolean.FALSE);
+    optionValues().put("NODE_ARENA", Boolean.FALSE);
+    optionValues().put("NODE_LISTENER", Boolean.FALSE);
+
+    optionValues().put("NODE_PREFIX", "AST");
+    optionValues().put("NODE_PACKAGE", "");
+    optionValues().put("NODE_EXTENDS", "");
+    optionValues().put("NODE_CLASS", "");
+    optionValues().put("NODE_FACTORY", "");
+    optionValues().put("OUTPUT_FILE", "");
+    optionValues().put("VISITOR_DATA_TYPE", "");
+    optionValues().put("VISITOR_RETURN_TYPE", "Object");
+    optionValues().put("VISITOR_EXCEPTION", "");
+
+    optionValues().put("JJTREE_OUTPUT_DIRECTORY", "");
   }
 
   /** Check options for consistency */
@@ -83,6 +85,31 @@ class JJTreeOptions extends Options {
         JavaCCErrors.warning("VISITOR_EXCEPTION option will be ignored since VISITOR is false");
       }
     }
+    if (!getBuildNodeObjects()) {
+      String mode = getNodeListener() ? "NODE_LISTENER" : "NODE_ARENA";
+      if (getNodeListener() && booleanValue("NODE_ARENA")) {
+        JavaCCErrors.warning("NODE_ARENA option will be ignored since NODE_LISTENER is true");
+      }
+      if (getNodeListener() && getTrackTokens()) {
+        JavaCCErrors.warning("TRACK_TOKENS option will be ignored since NODE_LISTENER is true");
+      }
+      if (getMulti()) {
+        JavaCCErrors.warning("MULTI option will be ignored since " + mode + " is true");
+      }
+      if (getVisitor()) {
+        JavaCCErrors.warning("VISITOR option will be ignored since " + mode + " is true");
+      }
+      if (getNodeClass().length() > 0 || getNodeExtends().length() > 0 || getNodeFactory().length() > 0) {
+        JavaCCErrors.warning("NODE_CLASS, NODE_EXTENDS and NODE_FACTORY options will be ignored since "
+            + mode + " is true");
+      }
+      if (getIncrementalParsing()) {
+        JavaCCErrors.warning("INCREMENTAL_PARSING option will not reuse nodes since " + mode + " is true");
+      }
+    }
+    else if (getIncrementalParsing() && !getTrackTokens()) {
+      JavaCCErrors.warning("INCREMENTAL_PARSING option will not reuse nodes since TRACK_TOKENS is false");
+    }
   }
 
   /**
@@ -166,6 +193,51 @@ class JJTreeOptions extends Options {
     return booleanValue("TRACK_TOKENS");
   }
 
+  /**
+   * Find whether the nodes are kept in a NodeArena, as parallel arrays of
+   * ints, instead of one object per node.  The node variable of a scope,
+   * jjtThis, is then the id of the node, since the node is added to the
+   * arena when its scope closes.
+   *
+   * @return The requested node arena value.
+   */
+  public static boolean getNodeArena() {
+    return booleanValue("NODE_ARENA") && !getNodeListener();
+  }
+
+  /**
+   * Find whether the parser reports the nodes to a NodeListener as their
+   * scopes open and close, instead of building a tree.  The node variable
+   * of a scope, jjtThis, is then the id of the node.
+   *
+   * @return The requested node listener value.
+   */
+  public static boolean getNodeListener() {
+    return booleanValue("NODE_LISTENER");
+  }
+
+  /**
+   * Find whether the parser builds an object for every node, that is,
+   * whether neither NODE_ARENA nor NODE_LISTENER is set.
+   *
+   * @return The requested build node objects value.
+   */
+  public static boolean getBuildNodeObjects() {
+    return !getNodeArena() && !getNodeListener();
+  }
+
+  /**
+   * Find whether the parser reuses the nodes of the previous parse after
+   * an edit, which needs the first and last tokens of the nodes.  The
+   * options that disable incremental parsing in JavaCC disable it here.
+   *
+   * @return The requested reuse nodes value.
+   */
+  public static boolean getReuseNodes() {
+    return getIncrementalParsing() && getTrackTokens() && getBuildNodeObjects()
+        && !getTokenPool() && !getUserScanner();
+  }
+
   /**
    * Find the node prefix value.
    *
@@ -38,14 +38,11 @@ import org.javacc.utils.io.IndentingPrintWriter;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 final class NodeFiles implements FileGenerator {
-  static Set<String> nodesGenerated = new HashSet<String>();
-
   @Override
   public void start() throws MetaParseException, IOException {
     //
@@ -68,6 +65,7 @@ final class NodeFiles implements FileGenerator {
 
     File path = new File(JJTreeOptions.getJJTreeOutputDirectory(), nodeType + ".java");
 
+    Set<String> nodesGenerated = JJTreeGlobals.get().nodesGenerated;
     if (path.exists() && nodesGenerated.contains(path.getName())) {
       return;
     }
@@ -87,16 +85,16 @@ final class NodeFiles implements FileGenerator {
   }
 
   static void generatePrologue(IndentingPrintWriter out) {
-    // Output the node's package name. JJTreeGlobals.nodePackageName
+    // Output the node's package name. JJTreeGlobals.get().nodePackageName
     // will be the value of NODE_PACKAGE in OPTIONS; if that wasn't set it
     // will default to the parser's package name.
     // If the package names are different we will need to import classes
     // from the parser's package.
-    if (!"".equals(JJTreeGlobals.nodePackageName)) {
-      out.println("package " + JJTreeGlobals.nodePackageName + ";");
+    if (!"".equals(JJTreeGlobals.get().nodePackageName)) {
+      out.println("package " + JJTreeGlobals.get().nodePackageName + ";");
       out.println();
-      if (!JJTreeGlobals.nodePackageName.equals(JJTreeGlobals.packageName)) {
-        out.println("import " + JJTreeGlobals.packageName + ".*;");
+      if (!JJTreeGlobals.get().nodePackageName.equals(JJTreeGlobals.get().packageName)) {
+        out.println("import " + JJTreeGlobals.get().packageName + ".*;");
         out.println();
       }
     }
@@ -131,8 +129,52 @@ final class NodeFiles implements FileGenerator {
     out.close();
   }
 
+  static void generateArenaClass() throws IOException {
+    if (!JJTreeOptions.getNodeArena()) {
+      return;
+    }
+
+    File path = new File(JJTreeOptions.getJJTreeOutputDirectory(), "NodeArena.java");
+    OutputFile outputFile = new OutputFile(path);
+    IndentingPrintWriter out = outputFile.getPrintWriter();
+    try {
+      Map<String, Object> options = new HashMap<String, Object>(Options.getOptions());
+      options.put("TREE_CONSTANTS_TYPE",
+          JJTreeGlobals.treeConstantsClass());
+      JavaFileGenerator generator = new JavaFileGenerator(
+          "/templates/NodeArena.template", options);
+      generatePrologue(out);
+      generator.generate(out);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  static void generateListenerClass() throws IOException {
+    if (!JJTreeOptions.getNodeListener()) {
+      return;
+    }
+
+    File path = new File(JJTreeOptions.getJJTreeOutputDirectory(), "NodeListener.java");
+    OutputFile outputFile = new OutputFile(path);
+    IndentingPrintWriter out = outputFile.getPrintWriter();
+    try {
+      Map<String, Object> options = new HashMap<String, Object>(Options.getOptions());
+      options.put("TREE_CONSTANTS_TYPE",
+          JJTreeGlobals.treeConstantsClass());
+      JavaFileGenerator generator = new JavaFileGenerator(
+          "/templates/NodeListener.template", options);
+      generatePrologue(out);
+      generator.generate(out);
+    }
+    finally {
+      out.close();
+    }
+  }
+
   static void generateVisitorClass() throws IOException {
-    if (!JJTreeOptions.getVisitor()) {
+    if (!JJTreeOptions.getVisitor() || !JJTreeOptions.getBuildNodeObjects()) {
       return;
     }
 
@@ -172,6 +214,82 @@ final class NodeFiles implements FileGenerator {
     }
   }
 
+  /**
+   * Generate the dispatcher, which calls the visit method of a visitor for
+   * the class of a node with a switch on the id of the node.  Calls of
+   * jjtAccept over the many node classes of a tree are megamorphic, while
+   * the switch leaves the JIT one call site per node class.
+   */
+  static void generateDispatcherClass() throws IOException {
+    if (!JJTreeOptions.getVisitor() || !JJTreeOptions.getBuildNodeObjects()) {
+      return;
+    }
+
+    File path = new File(JJTreeOptions.getJJTreeOutputDirectory(), JJTreeGlobals.dispatcherClass() + ".java");
+    OutputFile outputFile = new OutputFile(path);
+    IndentingPrintWriter out = outputFile.getPrintWriter();
+    try {
+      List<String> nodeIds = ASTNodeDescriptor.getNodeIds();
+      List<String> nodeNames = ASTNodeDescriptor.getNodeNames();
+
+      generatePrologue(out);
+
+      String ve = mergeVisitorException();
+      String returnType = JJTreeOptions.getVisitorReturnType();
+      boolean isVoid = "void".equals(returnType);
+      String argumentType = "Object";
+      if (!"".equals(JJTreeOptions.getVisitorDataType())) {
+        argumentType = JJTreeOptions.getVisitorDataType();
+      }
+
+      out.println("/** Calls the visit methods of a " + JJTreeGlobals.visitorClass() + " with a switch on the");
+      out.println("    ids of the nodes, instead of a virtual call of jjtAccept. */");
+      out.println("public final class " + JJTreeGlobals.dispatcherClass() + " implements " +
+          JJTreeGlobals.treeConstantsClass() + " {");
+      out.println("  private " + JJTreeGlobals.dispatcherClass() + "() {}");
+      out.println();
+      out.println("  public static " + returnType + " dispatch(" + JJTreeGlobals.visitorClass() +
+          " visitor, SimpleNode node, " + argumentType + " data)" + ve + " {");
+      if (JJTreeOptions.getMulti()) {
+        out.println("    switch (node.jjtGetId()) {");
+        for (int i = 0; i < nodeIds.size(); i++) {
+          if ("void".equals(nodeNames.get(i))) {
+            continue;
+          }
+          String nodeType = JJTreeOptions.getNodePrefix() + nodeNames.get(i);
+          out.println("      case " + nodeIds.get(i) + ":");
+          if (isVoid) {
+            out.println("        visitor.visit((" + nodeType + ") node, data);");
+            out.println("        return;");
+          }
+          else {
+            out.println("        return visitor.visit((" + nodeType + ") node, data);");
+          }
+        }
+        out.println("      default:");
+        out.println("        " + (isVoid ? "" : "return ") + "visitor.visit(node, data);");
+        out.println("    }");
+      }
+      else {
+        out.println("    " + (isVoid ? "" : "return ") + "visitor.visit(node, data);");
+      }
+      out.println("  }");
+      out.println();
+      out.println("  /** Dispatches the children of a node in order. */");
+      out.println("  public static " + argumentType + " dispatchChildren(" + JJTreeGlobals.visitorClass() +
+          " visitor, SimpleNode node, " + argumentType + " data)" + ve + " {");
+      out.println("    for (int i = 0; i < node.jjtGetChildCount(); i++) {");
+      out.println("      dispatch(visitor, (SimpleNode) node.jjtGetChild(i), data);");
+      out.println("    }");
+      out.println("    return data;");
+      out.println("  }");
+      out.println("}");
+    }
+    finally {
+      out.close();
+    }
+  }
+
   private static String mergeVisitorException() {
     String ve = JJTreeOptions.getVisitorException();
     if (!"".equals(ve)) {
@@ -185,7 +303,7 @@ final class NodeFiles implements FileGenerator {
     try {
       Map<String, Object> options = new HashMap<String, Object>(Options.getOptions());
       options.put("PARSER_NAME",
-          JJTreeGlobals.parserName);
+          JJTreeGlobals.get().parserName);
       options.put("VISITOR_TYPE",
           JJTreeGlobals.visitorClass());
       options.put("TREE_CONSTANTS_TYPE",
@@ -205,7 +323,7 @@ final class NodeFiles implements FileGenerator {
     try {
       Map<String, Object> options = new HashMap<String, Object>(Options.getOptions());
       options.put("PARSER_NAME",
-          JJTreeGlobals.parserName);
+          JJTreeGlobals.get().parserName);
       options.put("VISITOR_TYPE",
           JJTreeGlobals.visitorClass());
       options.put("TREE_CONSTANTS_TYPE",
@@ -228,7 +346,7 @@ final class NodeFiles implements FileGenerator {
     try {
       Map<String, Object> options = new HashMap<String, Object>(Options.getOptions());
       options.put("PARSER_NAME",
-          JJTreeGlobals.parserName);
+          JJTreeGlobals.get().parserName);
       options.put("VISITOR_TYPE",
           JJTreeGlobals.visitorClass());
       options.put("TREE_CONSTANTS_TYPE",
@@ -56,6 +56,7 @@ public class NodeScope {
     }
 
     scopeNumber = production.getNodeScopeNumber(this);
+    JJTreeGlobals.get().nodeScopes.put(nodeDescriptor.getNodeId(), nodeDescriptor.getNodeScopeCount() + 1);
     nodeVar = constructVariable("n");
     closedVar = constructVariable("c");
     exceptionVar = constructVariable("e");
@@ -65,6 +66,23 @@ public class NodeScope {
     return nodeDescriptor.isVoid();
   }
 
+  /**
+   * Whether the parser may reuse the node of the previous parse instead of
+   * calling the production again.  Only the nodes of productions without
+   * result and parameters are reused, and only those of unconditional
+   * production scopes, which no other scope creates nodes with the same id
+   * as, so that the id of a node tells the production that created it.
+   */
+  boolean isReusable() {
+    return JJTreeOptions.getReuseNodes()
+        && production instanceof ASTBNF
+        && ((ASTBNF) production).voidWithoutParameters
+        && scopeNumber == 0
+        && !isVoid()
+        && nodeDescriptor.expression == null
+        && nodeDescriptor.getNodeScopeCount() == 1;
+  }
+
   ASTNodeDescriptor getNodeDescriptor() {
     return nodeDescriptor;
   }
@@ -87,6 +105,30 @@ public class NodeScope {
   }
 
   void insertOpenNodeCode(IO io, String indent) throws IOException {
+    if (!JJTreeOptions.getBuildNodeObjects()) {
+      // The node is added to the arena, or reported to the listener, when
+      // the scope closes.
+      io.println(indent + "int " + nodeVar + " = " + nodeDescriptor.getNodeId() + ";");
+    }
+    else {
+      insertCreateNodeCode(io, indent);
+    }
+
+    if (usesCloseNodeVar()) {
+      io.println(indent + "boolean " + closedVar + " = true;");
+    }
+    io.println(indent + nodeDescriptor.openNode(nodeVar));
+    if (JJTreeOptions.getNodeScopeHook()) {
+      io.println(indent + "jjtreeOpenNodeScope(" + nodeVar + ");");
+    }
+
+    if (JJTreeOptions.getTrackTokens() && !JJTreeOptions.getNodeListener()) {
+      io.println(indent + "Token " + nodeVar + "_firstToken = getToken(1);");
+      io.println(indent + "Token " + nodeVar + "_lastToken;");
+    }
+  }
+
+  private void insertCreateNodeCode(IO io, String indent) throws IOException {
     String type = nodeDescriptor.getNodeType();
     String nodeClass;
     if (JJTreeOptions.getNodeClass().length() > 0 && !JJTreeOptions.getMulti()) {
@@ -114,19 +156,6 @@ public class NodeScope {
     else {
       io.println("new " + nodeClass + "(" + parserArg + nodeDescriptor.getNodeId() + ");");
     }
-
-    if (usesCloseNodeVar()) {
-      io.println(indent + "boolean " + closedVar + " = true;");
-    }
-    io.println(indent + nodeDescriptor.openNode(nodeVar));
-    if (JJTreeOptions.getNodeScopeHook()) {
-      io.println(indent + "jjtreeOpenNodeScope(" + nodeVar + ");");
-    }
-
-    if (JJTreeOptions.getTrackTokens()) {
-      io.println(indent + "Token " + nodeVar + "_firstToken = getToken(1);");
-      io.println(indent + "Token " + nodeVar + "_lastToken;");
-    }
   }
 
   void insertCloseNodeCode(IO io, String indent, boolean isFinal) {
@@ -138,11 +167,20 @@ public class NodeScope {
       io.println(indent + "jjtreeCloseNodeScope(" + nodeVar + ");");
     }
 
-    if (JJTreeOptions.getTrackTokens()) {
+    if (JJTreeOptions.getTrackTokens() && !JJTreeOptions.getNodeListener()) {
       // Make sure that this production has matched at least some tokens.
       io.println(indent + "" + nodeVar + "_lastToken = getToken(0);");
-      io.println(indent + "if (" + nodeVar + "_lastToken" + ".next != "+ nodeVar + "_firstToken" +") {");
-      io.println(indent + "  " + nodeVar + ".jjtSetTokens(" + nodeVar + "_firstToken" + ", " + nodeVar + "_lastToken" +");");
+      if (JJTreeOptions.getNodeArena()) {
+        io.println(indent + "if (jjTree.nodeCreated() && " + nodeVar + "_lastToken" + ".next != " + nodeVar + "_firstToken" + ") {");
+        io.println(indent + "  jjTree.setTokens(" + nodeVar + "_firstToken" + ", " + nodeVar + "_lastToken" + ");");
+      }
+      else {
+        io.println(indent + "if (" + nodeVar + "_lastToken" + ".next != "+ nodeVar + "_firstToken" +") {");
+        io.println(indent + "  " + nodeVar + ".jjtSetTokens(" + nodeVar + "_firstToken" + ", " + nodeVar + "_lastToken" +");");
+        if (isReusable()) {
+          io.println(indent + "  " + nodeVar + ".jjtSetReachToken(jj_reach);");
+        }
+      }
       io.println(indent + "}");
     }
   }
@@ -216,7 +254,7 @@ public class NodeScope {
     if (expansionUnit instanceof ASTBNFNonTerminal) {
       // Should really make the nonterminal explicitly maintain its name.
       String nt = expansionUnit.getFirstToken().getImage();
-      ASTProduction prod = JJTreeGlobals.productions.get(nt);
+      ASTProduction prod = JJTreeGlobals.get().productions.get(nt);
       if (prod != null) {
         for (String t : prod.throwsList) {
           thrownSet.put(t, t);
@@ -48,6 +48,67 @@ final class TreeStateFile implements FileGenerator {
     io.println("  protected final " + JJTreeGlobals.treeStateClass() +
         " jjTree = new " + JJTreeGlobals.treeStateClass() + "();");
     io.println();
+    if (JJTreeOptions.getNodeListener()) {
+      io.println("  /** Sets the listener that the nodes are reported to. */");
+      io.println("  public void setNodeListener(NodeListener listener) {");
+      io.println("    jjTree.setListener(listener);");
+      io.println("  }");
+      io.println();
+    }
+    if (JJTreeOptions.getReuseNodes()) {
+      insertReuse(io);
+    }
+  }
+
+  /**
+   * Insert the reuse of the nodes of the previous parse.  The nodes are
+   * indexed by their first token, and a node is reused if the production
+   * called at its first token created it, and the edit changed none of the
+   * tokens the production looked at.
+   */
+  private static void insertReuse(IO io) {
+    io.println("  /** The nodes of the previous parse by first token, see reparse. */");
+    io.println("  private java.util.Map<Token, java.util.List<SimpleNode>> jjtReusable;");
+    io.println();
+    io.println("  private void jjtIndex(Node node) {");
+    io.println("    if (node instanceof SimpleNode && ((SimpleNode) node).jjtGetReachToken() != null) {");
+    io.println("      SimpleNode n = (SimpleNode) node;");
+    io.println("      java.util.List<SimpleNode> nodes = jjtReusable.get(n.jjtGetFirstToken());");
+    io.println("      if (nodes == null) {");
+    io.println("        jjtReusable.put(n.jjtGetFirstToken(), nodes = new java.util.ArrayList<SimpleNode>());");
+    io.println("      }");
+    io.println("      nodes.add(n);");
+    io.println("    }");
+    io.println("    for (int i = 0; i < node.jjtGetChildCount(); i++) {");
+    io.println("      jjtIndex(node.jjtGetChild(i));");
+    io.println("    }");
+    io.println("  }");
+    io.println();
+    io.println("  private boolean jjtReuse(int id) throws java.io.IOException {");
+    io.println("    if (jj_previous == null) {");
+    io.println("      return false;");
+    io.println("    }");
+    io.println("    if (jjtReusable == null) {");
+    io.println("      jjtReusable = new java.util.HashMap<Token, java.util.List<SimpleNode>>();");
+    io.println("      if (jj_previous.jjTree.nodeArity() > 0) {");
+    io.println("        jjtIndex(jj_previous.jjTree.rootNode());");
+    io.println("      }");
+    io.println("    }");
+    io.println("    Token first = getToken(1);");
+    io.println("    java.util.List<SimpleNode> nodes = jjtReusable.get(first);");
+    io.println("    if (nodes == null) {");
+    io.println("      return false;");
+    io.println("    }");
+    io.println("    for (SimpleNode node : nodes) {");
+    io.println("      if (node.jjtGetId() == id && jj_unchanged(first, node.jjtGetReachToken())) {");
+    io.println("        jjTree.pushNode(node);");
+    io.println("        jj_skip(node.jjtGetLastToken(), node.jjtGetReachToken());");
+    io.println("        return true;");
+    io.println("      }");
+    io.println("    }");
+    io.println("    return false;");
+    io.println("  }");
+    io.println();
   }
 
   private void generateTreeState_java() throws IOException {
@@ -56,7 +117,15 @@ final class TreeStateFile implements FileGenerator {
     IndentingPrintWriter out = outputFile.getPrintWriter();
     try {
       NodeFiles.generatePrologue(out);
-      generate(out);
+      if (JJTreeOptions.getNodeArena()) {
+        generateArena(out);
+      }
+      else if (JJTreeOptions.getNodeListener()) {
+        generateListener(out);
+      }
+      else {
+        generate(out);
+      }
     }
     finally {
       outputFile.close();
@@ -65,10 +134,11 @@ final class TreeStateFile implements FileGenerator {
 
   private void generate(IndentingPrintWriter out) {
     out.println("public class " + JJTreeGlobals.treeStateClass() + " {");
-    out.println("  private final java.util.List<Node> nodes = new java.util.ArrayList<Node>();");
-    out.println("  private final java.util.List<Integer> marks = new java.util.ArrayList<Integer>();");
+    out.println("  private Node[] nodes = new Node[64];");
+    out.println("  private int[] marks = new int[32];");
     out.println("  private int sp;");
     out.println("  private int mk;");
+    out.println("  private int mp;");
     out.println("  private boolean nodeCreated;");
     out.println();
     out.println("  public " + JJTreeGlobals.treeStateClass() + "() {}");
@@ -83,27 +153,31 @@ final class TreeStateFile implements FileGenerator {
     out.println("  /** Returns the root node of the AST.  It only makes sense to call");
     out.println("      this after a successful parse. */");
     out.println("  public Node rootNode() {");
-    out.println("    return nodes.get(0);");
+    out.println("    return nodes[0];");
     out.println("  }");
     out.println();
     out.println("  /** Pushes a node on to the stack. */");
     out.println("  public void pushNode(Node n) {");
-    out.println("    nodes.add(n);");
-    out.println("    ++sp;");
+    out.println("    if (sp == nodes.length) {");
+    out.println("      nodes = java.util.Arrays.copyOf(nodes, sp * 2);");
+    out.println("    }");
+    out.println("    nodes[sp++] = n;");
     out.println("  }");
     out.println();
     out.println("  /** Returns the node on the top of the stack, and remove it from the");
     out.println("      stack.  */");
     out.println("  public Node popNode() {");
-    out.println("    if (--sp < mk) {");
-    out.println("      mk = marks.remove(marks.size() - 1);");
+    out.println("    Node n = nodes[--sp];");
+    out.println("    nodes[sp] = null;");
+    out.println("    if (sp < mk) {");
+    out.println("      mk = marks[--mp];");
     out.println("    }");
-    out.println("    return nodes.remove(nodes.size() - 1);");
+    out.println("    return n;");
     out.println("  }");
     out.println();
     out.println("  /** Returns the node currently on the top of the stack. */");
     out.println("  public Node peekNode() {");
-    out.println("    return nodes.get(nodes.size() - 1);");
+    out.println("    return nodes[sp - 1];");
     out.println("  }");
     out.println();
     out.println("  /** Returns the number of children on the stack in the current node");
@@ -113,14 +187,16 @@ final class TreeStateFile implements FileGenerator {
     out.println("  }");
     out.println();
     out.println("  public void clearNodeScope(Node n) {");
-    out.println("    while (sp > mk) {");
-    out.println("      popNode();");
-    out.println("    }");
-    out.println("    mk = marks.remove(marks.size() - 1);");
+    out.println("    java.util.Arrays.fill(nodes, mk, sp, null);");
+    out.println("    sp = mk;");
+    out.println("    mk = marks[--mp];");
     out.println("  }");
     out.println();
     out.println("  public void openNodeScope(Node n) {");
-    out.println("    marks.add(mk);");
+    out.println("    if (mp == marks.length) {");
+    out.println("      marks = java.util.Arrays.copyOf(marks, mp * 2);");
+    out.println("    }");
+    out.println("    marks[mp++] = mk;");
     out.println("    mk = sp;");
     out.println("    n.jjtOpen();");
     out.println("  }");
@@ -130,12 +206,8 @@ final class TreeStateFile implements FileGenerator {
     out.println("      made the children of the definite node.  Then the definite node");
     out.println("      is pushed on to the stack. */");
     out.println("  public void closeNodeScope(Node n, int num) {");
-    out.println("    mk = marks.remove(marks.size() - 1);");
-    out.println("    while (num-- > 0) {");
-    out.println("      Node c = popNode();");
-    out.println("      c.jjtSetParent(n);");
-    out.println("      n.jjtSetChild(c, num);");
-    out.println("    }");
+    out.println("    mk = marks[--mp];");
+    out.println("    setChildren(n, sp - num);");
     out.println("    n.jjtClose();");
     out.println("    pushNode(n);");
     out.println("    nodeCreated = true;");
@@ -148,22 +220,255 @@ final class TreeStateFile implements FileGenerator {
     out.println("      constructed and they are left on the stack. */");
     out.println("  public void closeNodeScope(Node n, boolean condition) {");
     out.println("    if (condition) {");
-    out.println("      int a = nodeArity();");
-    out.println("      mk = marks.remove(marks.size() - 1);");
-    out.println("      while (a-- > 0) {");
-    out.println("        Node c = popNode();");
-    out.println("        c.jjtSetParent(n);");
-    out.println("        n.jjtSetChild(c, a);");
-    out.println("      }");
+    out.println("      int from = mk;");
+    out.println("      mk = marks[--mp];");
+    out.println("      setChildren(n, from);");
     out.println("      n.jjtClose();");
     out.println("      pushNode(n);");
     out.println("      nodeCreated = true;");
     out.println("    }");
     out.println("    else {");
-    out.println("      mk = marks.remove(marks.size() - 1);");
+    out.println("      mk = marks[--mp];");
+    out.println("      nodeCreated = false;");
+    out.println("    }");
+    out.println("  }");
+    out.println();
+    out.println("  /** Makes the nodes from a stack position up to the top the children");
+    out.println("      of a node, and removes them from the stack. */");
+    out.println("  private void setChildren(Node n, int from) {");
+    out.println("    for (int i = from; i < sp; i++) {");
+    out.println("      nodes[i].jjtSetParent(n);");
+    out.println("    }");
+    out.println("    n.jjtSetChildren(nodes, from, sp - from);");
+    out.println("    java.util.Arrays.fill(nodes, from, sp, null);");
+    out.println("    sp = from;");
+    out.println("    while (sp < mk) {");
+    out.println("      mk = marks[--mp];");
+    out.println("    }");
+    out.println("  }");
+    out.println("}");
+  }
+
+  /**
+   * Generate the state of a tree whose nodes are kept in a NodeArena.  The
+   * stack holds the indices of the nodes in the arena, and a node is added
+   * to the arena when its scope closes, with the nodes above the mark as
+   * its children.
+   */
+  private void generateArena(IndentingPrintWriter out) {
+    out.println("public class " + JJTreeGlobals.treeStateClass() + " {");
+    out.println("  private final NodeArena arena = new NodeArena();");
+    out.println("  private int[] nodes = new int[64];");
+    out.println("  private int[] marks = new int[32];");
+    out.println("  private int sp;");
+    out.println("  private int mk;");
+    out.println("  private int mp;");
+    out.println("  private boolean nodeCreated;");
+    out.println();
+    out.println("  public " + JJTreeGlobals.treeStateClass() + "() {}");
+    out.println();
+    out.println("  /** Returns the arena that the nodes are added to. */");
+    out.println("  public NodeArena arena() {");
+    out.println("    return arena;");
+    out.println("  }");
+    out.println();
+    out.println("  /** Determines whether the current node was actually closed and");
+    out.println("      pushed.  This should only be called in the final user action of a");
+    out.println("      node scope. */");
+    out.println("  public boolean nodeCreated() {");
+    out.println("    return nodeCreated;");
+    out.println("  }");
+    out.println();
+    out.println("  /** Returns the root node of the AST.  It only makes sense to call");
+    out.println("      this after a successful parse. */");
+    out.println("  public int rootNode() {");
+    out.println("    return nodes[0];");
+    out.println("  }");
+    out.println();
+    out.println("  /** Pushes a node on to the stack. */");
+    out.println("  public void pushNode(int n) {");
+    out.println("    if (sp == nodes.length) {");
+    out.println("      nodes = java.util.Arrays.copyOf(nodes, sp * 2);");
+    out.println("    }");
+    out.println("    nodes[sp++] = n;");
+    out.println("  }");
+    out.println();
+    out.println("  /** Returns the node on the top of the stack, and remove it from the");
+    out.println("      stack.  */");
+    out.println("  public int popNode() {");
+    out.println("    int n = nodes[--sp];");
+    out.println("    if (sp < mk) {");
+    out.println("      mk = marks[--mp];");
+    out.println("    }");
+    out.println("    return n;");
+    out.println("  }");
+    out.println();
+    out.println("  /** Returns the node currently on the top of the stack. */");
+    out.println("  public int peekNode() {");
+    out.println("    return nodes[sp - 1];");
+    out.println("  }");
+    out.println();
+    out.println("  /** Returns the number of children on the stack in the current node");
+    out.println("      scope. */");
+    out.println("  public int nodeArity() {");
+    out.println("    return sp - mk;");
+    out.println("  }");
+    out.println();
+    out.println("  /** The nodes of the scope stay in the arena, without a parent. */");
+    out.println("  public void clearNodeScope(int kind) {");
+    out.println("    sp = mk;");
+    out.println("    mk = marks[--mp];");
+    out.println("  }");
+    out.println();
+    out.println("  public void openNodeScope(int kind) {");
+    out.println("    if (mp == marks.length) {");
+    out.println("      marks = java.util.Arrays.copyOf(marks, mp * 2);");
+    out.println("    }");
+    out.println("    marks[mp++] = mk;");
+    out.println("    mk = sp;");
+    out.println("  }");
+    out.println();
+    out.println("  /** A definite node is constructed from a specified number of");
+    out.println("      children.  That number of nodes are popped from the stack and");
+    out.println("      made the children of the definite node.  Then the definite node");
+    out.println("      is pushed on to the stack. */");
+    out.println("  public void closeNodeScope(int kind, int num) {");
+    out.println("    mk = marks[--mp];");
+    out.println("    addNode(kind, sp - num);");
+    out.println("  }");
+    out.println();
+    out.println("  /** A conditional node is constructed if its condition is true.  All");
+    out.println("      the nodes that have been pushed since the node was opened are");
+    out.println("      made children of the conditional node, which is then pushed");
+    out.println("      on to the stack.  If the condition is false the node is not");
+    out.println("      constructed and they are left on the stack. */");
+    out.println("  public void closeNodeScope(int kind, boolean condition) {");
+    out.println("    if (condition) {");
+    out.println("      int from = mk;");
+    out.println("      mk = marks[--mp];");
+    out.println("      addNode(kind, from);");
+    out.println("    }");
+    out.println("    else {");
+    out.println("      mk = marks[--mp];");
+    out.println("      nodeCreated = false;");
+    out.println("    }");
+    out.println("  }");
+    if (JJTreeOptions.getTrackTokens()) {
+      out.println();
+      out.println("  /** Sets the tokens of the node on the top of the stack. */");
+      out.println("  public void setTokens(Token first, Token last) {");
+      out.println("    arena.setTokens(nodes[sp - 1], first.getBegin(), last.getEnd());");
+      out.println("  }");
+    }
+    out.println();
+    out.println("  /** Adds a node to the arena with the nodes from a stack position up");
+    out.println("      to the top as its children, and replaces them with it on the stack. */");
+    out.println("  private void addNode(int kind, int from) {");
+    out.println("    int n = arena.add(kind, nodes, from, sp - from);");
+    out.println("    sp = from;");
+    out.println("    while (sp < mk) {");
+    out.println("      mk = marks[--mp];");
+    out.println("    }");
+    out.println("    pushNode(n);");
+    out.println("    nodeCreated = true;");
+    out.println("  }");
+    out.println("}");
+  }
+
+  /**
+   * Generate the state of a tree whose nodes are reported to a NodeListener.
+   * Only the number of the closed nodes that have no parent yet is kept,
+   * with the marks of the open scopes, so that the state takes space in
+   * the depth of the tree rather than its size.
+   */
+  private void generateListener(IndentingPrintWriter out) {
+    out.println("public class " + JJTreeGlobals.treeStateClass() + " {");
+    out.println("  private NodeListener listener;");
+    out.println("  private int[] marks = new int[32];");
+    out.println("  private int sp;");
+    out.println("  private int mk;");
+    out.println("  private int mp;");
+    out.println("  private boolean nodeCreated;");
+    out.println();
+    out.println("  public " + JJTreeGlobals.treeStateClass() + "() {}");
+    out.println();
+    out.println("  /** Sets the listener that the nodes are reported to. */");
+    out.println("  public void setListener(NodeListener listener) {");
+    out.println("    this.listener = listener;");
+    out.println("  }");
+    out.println();
+    out.println("  /** Determines whether the current node was actually closed and");
+    out.println("      reported.  This should only be called in the final user action");
+    out.println("      of a node scope. */");
+    out.println("  public boolean nodeCreated() {");
+    out.println("    return nodeCreated;");
+    out.println("  }");
+    out.println();
+    out.println("  /** Drops the last closed node, which then has no parent. */");
+    out.println("  public void popNode() {");
+    out.println("    if (--sp < mk) {");
+    out.println("      mk = marks[--mp];");
+    out.println("    }");
+    out.println("  }");
+    out.println();
+    out.println("  /** Returns the number of children closed in the current node");
+    out.println("      scope. */");
+    out.println("  public int nodeArity() {");
+    out.println("    return sp - mk;");
+    out.println("  }");
+    out.println();
+    out.println("  /** The nodes of the scope are left without a parent. */");
+    out.println("  public void clearNodeScope(int id) {");
+    out.println("    sp = mk;");
+    out.println("    mk = marks[--mp];");
+    out.println("    listener.discardNode(id);");
+    out.println("  }");
+    out.println();
+    out.println("  public void openNodeScope(int id, Token first) {");
+    out.println("    if (mp == marks.length) {");
+    out.println("      marks = java.util.Arrays.copyOf(marks, mp * 2);");
+    out.println("    }");
+    out.println("    marks[mp++] = mk;");
+    out.println("    mk = sp;");
+    out.println("    listener.openNode(id, first);");
+    out.println("  }");
+    out.println();
+    out.println("  /** A definite node is constructed from a specified number of");
+    out.println("      children, the last nodes closed. */");
+    out.println("  public void closeNodeScope(int id, int num, Token last) {");
+    out.println("    mk = marks[--mp];");
+    out.println("    closeNode(id, sp - num, last);");
+    out.println("  }");
+    out.println();
+    out.println("  /** A conditional node is constructed if its condition is true.  All");
+    out.println("      the nodes that have been closed since the node was opened are");
+    out.println("      its children.  If the condition is false the node is not");
+    out.println("      constructed and they are left to the enclosing node. */");
+    out.println("  public void closeNodeScope(int id, boolean condition, Token last) {");
+    out.println("    if (condition) {");
+    out.println("      int from = mk;");
+    out.println("      mk = marks[--mp];");
+    out.println("      closeNode(id, from, last);");
+    out.println("    }");
+    out.println("    else {");
+    out.println("      mk = marks[--mp];");
     out.println("      nodeCreated = false;");
+    out.println("      listener.discardNode(id);");
     out.println("    }");
     out.println("  }");
+    out.println();
+    out.println("  /** Reports a node whose children are the nodes closed from a stack");
+    out.println("      position on, and counts it in their place. */");
+    out.println("  private void closeNode(int id, int from, Token last) {");
+    out.println("    int arity = sp - from;");
+    out.println("    sp = from;");
+    out.println("    while (sp < mk) {");
+    out.println("      mk = marks[--mp];");
+    out.println("    }");
+    out.println("    sp++;");
+    out.println("    nodeCreated = true;");
+    out.println("    listener.closeNode(id, arity, last);");
+    out.println("  }");
     out.println("}");
   }
 }
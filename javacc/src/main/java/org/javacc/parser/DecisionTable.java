@@ -0,0 +1,368 @@
+package org.javacc.parser;
+
+import org.javacc.utils.io.IndentingPrintWriter;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Decision of a choice point computed at generation time, from the kinds of
+ * the next tokens.
+ *
+ * <p>The conditions of the choice point are either a lookahead of one token,
+ * decided by the first set of the expansion, or a syntactic lookahead of a
+ * few tokens without semantic lookahead.  The phase 3 routine of a syntactic
+ * lookahead is simulated here on every sequence of token kinds it compares
+ * the tokens with, which gives a trie over the next tokens.  The generated
+ * method walks the trie with nested switch statements and returns the index
+ * of the condition that holds, as the chain of phase 2 calls would have.</p>
+ *
+ * <p>With error reporting, the trie leaves also record the failed lookaheads
+ * like the phase 2 routines and the switch statements do, so that error
+ * messages stay the same.</p>
+ */
+final class DecisionTable {
+  /** Largest lookahead amount a table is computed for. */
+  static final int MAX_AMOUNT = 4;
+  /** Tables with more nodes than this are left to the phase 2 routines. */
+  private static final int MAX_NODES = 512;
+  /** Kind of a token that none of the expansions compare the token with. */
+  private static final int OTHER = -1;
+
+  private static final int MATCHED = 0;
+  private static final int FAILED = 1;
+  private static final int NEED_MORE = 2;
+
+  /** The phase 3 routine needs more tokens than known. */
+  @SuppressWarnings("serial")
+  private static final class NeedMore extends Exception {}
+
+  /** The phase 3 routine reached the lookahead limit. */
+  @SuppressWarnings("serial")
+  private static final class LimitReached extends Exception {}
+
+  /** The trie has more than {@link #MAX_NODES} nodes. */
+  @SuppressWarnings("serial")
+  private static final class TooLarge extends Exception {}
+
+  /** A node of the trie. */
+  private static final class Node {
+    /** Index of the condition that holds, or -1 if the node is a branch. */
+    int alternative = -1;
+    /** Number of tokens every syntactic lookahead looked at, for the leaves. */
+    int[] looked;
+    /** Children of a branch by kind of the next token. */
+    final Map<Integer, Node> children = new LinkedHashMap<Integer, Node>();
+    /** Child of a branch for all other kinds. */
+    Node other;
+  }
+
+  private final JavaCCState state;
+  private final List<Lookahead> lookaheads;
+  /** First sets of the lookaheads of one token, null for the syntactic lookaheads. */
+  private final List<boolean[]> firstSets;
+  private int nodes;
+  private Node root;
+  private boolean lazy;
+
+  // The state of the simulated phase 3 routine.
+  private int[] tokens;
+  private int length;
+  private int amount;
+  private int pos;
+  private int looked;
+  /** The kinds compared with the token after the known ones, or null if not collecting. */
+  private Set<Integer> expected;
+
+  DecisionTable(JavaCCState state, List<Lookahead> lookaheads, List<boolean[]> firstSets) {
+    this.state = state;
+    this.lookaheads = lookaheads;
+    this.firstSets = firstSets;
+  }
+
+  /** @return false if the table is too large. */
+  boolean build() {
+    try {
+      root = decide(new int[0]);
+      return true;
+    }
+    catch (TooLarge ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Print the method returning the index of the condition that holds, or
+   * the number of conditions if none of them holds.
+   *
+   * @param name       The name of the method.
+   * @param saveIndex  For every syntactic lookahead, the index of its phase 2
+   *                   routine to record its result for error reporting, or -1.
+   * @param maskIndex  For every lookahead of one token that ends a switch
+   *                   statement, the index of the switch in jj_la1, or -1.
+   * @param kindOfNext The expression for the kind of the next token.
+   * @param lazy       Whether the results are only recorded while jj_track is set.
+   * @param out        The writer to print the method to.
+   */
+  void print(String name, int[] saveIndex, int[] maskIndex, String kindOfNext,
+             boolean lazy, IndentingPrintWriter out) {
+    this.lazy = lazy;
+    out.println("private int " + name + "() throws java.io.IOException {");
+    out.indent();
+    printNode(root, 1, saveIndex, maskIndex, kindOfNext, out);
+    out.unindent();
+    out.println("}");
+    out.println();
+  }
+
+  private Node decide(int[] prefix) throws TooLarge {
+    if (++nodes > MAX_NODES) {
+      throw new TooLarge();
+    }
+    Node node = new Node();
+    int[] looked = new int[lookaheads.size()];
+    for (int i = 0; i < lookaheads.size(); i++) {
+      int result = evaluate(i, prefix);
+      if (result == NEED_MORE) {
+        branch(node, prefix);
+        return node;
+      }
+      looked[i] = this.looked;
+      if (result == MATCHED) {
+        node.alternative = i;
+        node.looked = looked;
+        return node;
+      }
+    }
+    node.alternative = lookaheads.size();
+    node.looked = looked;
+    return node;
+  }
+
+  private void branch(Node node, int[] prefix) throws TooLarge {
+    int[] other = append(prefix, OTHER);
+    Set<Integer> kinds = new TreeSet<Integer>();
+    expected = kinds;
+    try {
+      for (int i = 0; i < lookaheads.size(); i++) {
+        evaluate(i, other);
+        boolean[] firstSet = firstSets.get(i);
+        if (firstSet != null && prefix.length == 0) {
+          for (int kind = 0; kind < firstSet.length; kind++) {
+            if (firstSet[kind]) {
+              kinds.add(kind);
+            }
+          }
+        }
+      }
+    }
+    finally {
+      expected = null;
+    }
+    for (int kind : kinds) {
+      node.children.put(kind, decide(append(prefix, kind)));
+    }
+    node.other = decide(other);
+  }
+
+  private static int[] append(int[] prefix, int kind) {
+    int[] tokens = new int[prefix.length + 1];
+    System.arraycopy(prefix, 0, tokens, 0, prefix.length);
+    tokens[prefix.length] = kind;
+    return tokens;
+  }
+
+  /** Evaluate a condition on the known tokens, and set {@link #looked}. */
+  private int evaluate(int index, int[] prefix) {
+    tokens = prefix;
+    length = prefix.length;
+    boolean[] firstSet = firstSets.get(index);
+    if (firstSet != null) {
+      if (length == 0) {
+        return NEED_MORE;
+      }
+      looked = 1;
+      return prefix[0] != OTHER && firstSet[prefix[0]] ? MATCHED : FAILED;
+    }
+    Lookahead la = lookaheads.get(index);
+    amount = la.getAmount();
+    pos = 0;
+    looked = 0;
+    try {
+      return scan(la.getLaExpansion()) ? FAILED : MATCHED;
+    }
+    catch (LimitReached ex) {
+      return MATCHED;
+    }
+    catch (NeedMore ex) {
+      return NEED_MORE;
+    }
+  }
+
+  /** Simulate jj_scan_token. */
+  private boolean scanToken(int kind) throws NeedMore, LimitReached {
+    pos++;
+    if (pos > length) {
+      throw new NeedMore();
+    }
+    if (pos > looked) {
+      looked = pos;
+    }
+    if (expected != null && pos == length) {
+      expected.add(kind);
+    }
+    if (tokens[pos - 1] != kind) {
+      return true;
+    }
+    if (pos == amount) {
+      throw new LimitReached();
+    }
+    return false;
+  }
+
+  /**
+   * Simulate the phase 3 routine of the expansion, see
+   * ParseEngine.buildPhase3Statement.
+   *
+   * @return true if the expansion failed to match.
+   */
+  private boolean scan(Expansion expansion) throws NeedMore, LimitReached {
+    if (expansion instanceof NonTerminal) {
+      return scan(state.bnfProductionsTable.get(((NonTerminal) expansion).getName()).getExpansion());
+    }
+    else if (expansion instanceof RegularExpression) {
+      return scanToken(((RegularExpression) expansion).ordinal);
+    }
+    else if (expansion instanceof Sequence) {
+      // The first unit is the lookahead.
+      List<Expansion> units = ((Sequence) expansion).units;
+      for (int i = 1; i < units.size(); i++) {
+        if (scan(units.get(i))) {
+          return true;
+        }
+      }
+      return false;
+    }
+    else if (expansion instanceof Choice) {
+      int start = pos;
+      for (Expansion choice : ((Choice) expansion).getChoices()) {
+        if (!scan(choice)) {
+          return false;
+        }
+        pos = start;
+      }
+      return true;
+    }
+    else if (expansion instanceof ZeroOrOne) {
+      int start = pos;
+      if (scan(((ZeroOrOne) expansion).expansion)) {
+        pos = start;
+      }
+      return false;
+    }
+    else if (expansion instanceof ZeroOrMore) {
+      scanRepetition(((ZeroOrMore) expansion).expansion);
+      return false;
+    }
+    else if (expansion instanceof OneOrMore) {
+      Expansion nested = ((OneOrMore) expansion).expansion;
+      if (scan(nested)) {
+        return true;
+      }
+      scanRepetition(nested);
+      return false;
+    }
+    else if (expansion instanceof TryBlock) {
+      return scan(((TryBlock) expansion).expansion);
+    }
+    else {
+      return false;
+    }
+  }
+
+  private void scanRepetition(Expansion nested) throws NeedMore, LimitReached {
+    while (true) {
+      int start = pos;
+      if (scan(nested)) {
+        pos = start;
+        break;
+      }
+    }
+  }
+
+  private void printNode(Node node, int depth, int[] saveIndex, int[] maskIndex,
+                         String kindOfNext, IndentingPrintWriter out) {
+    if (node.alternative >= 0) {
+      List<String> records = new ArrayList<String>();
+      for (int i = 0; i < lookaheads.size() && i <= node.alternative; i++) {
+        if (saveIndex[i] >= 0) {
+          int amount = lookaheads.get(i).getAmount();
+          records.add("jj_la = " + (amount - node.looked[i]) + "; jj_save(" + saveIndex[i] + ", " + amount + ");");
+        }
+        if (maskIndex[i] >= 0 && i < node.alternative) {
+          records.add("jj_la1[" + maskIndex[i] + "] = jj_gen;");
+        }
+      }
+      if (lazy && !records.isEmpty()) {
+        out.println("if (jj_track) {");
+        out.indent();
+      }
+      for (String record : records) {
+        out.println(record);
+      }
+      if (lazy && !records.isEmpty()) {
+        out.unindent();
+        out.println("}");
+      }
+      out.println("return " + node.alternative + ";");
+      return;
+    }
+
+    // Children with the same code share the case labels, the most
+    // common code is that of the other kinds.
+    String otherCode = code(node.other, depth + 1, saveIndex, maskIndex, kindOfNext);
+    Map<String, List<Integer>> cases = new LinkedHashMap<String, List<Integer>>();
+    for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+      String code = code(child.getValue(), depth + 1, saveIndex, maskIndex, kindOfNext);
+      if (!code.equals(otherCode)) {
+        List<Integer> kinds = cases.get(code);
+        if (kinds == null) {
+          cases.put(code, kinds = new ArrayList<Integer>());
+        }
+        kinds.add(child.getKey());
+      }
+    }
+    if (cases.isEmpty()) {
+      out.print(otherCode);
+      return;
+    }
+    out.println("switch (" + (depth == 1 ? kindOfNext : "getToken(" + depth + ").getKind()") + ") {");
+    for (Map.Entry<String, List<Integer>> c : cases.entrySet()) {
+      for (int kind : c.getValue()) {
+        String name = state.tokenNames.get(kind);
+        out.println("case " + (name != null ? state.constantsClass() + "." + name : String.valueOf(kind)) + ":");
+      }
+      out.indent();
+      out.print(c.getKey());
+      out.unindent();
+    }
+    out.println("default:");
+    out.indent();
+    out.print(otherCode);
+    out.unindent();
+    out.println("}");
+  }
+
+  private String code(Node node, int depth, int[] saveIndex, int[] maskIndex, String kindOfNext) {
+    StringWriter buffer = new StringWriter();
+    IndentingPrintWriter out = MethodSizes.buffer(buffer);
+    printNode(node, depth, saveIndex, maskIndex, kindOfNext, out);
+    out.flush();
+    return buffer.toString();
+  }
+}
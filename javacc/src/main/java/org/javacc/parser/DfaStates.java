@@ -0,0 +1,529 @@
+package org.javacc.parser;
+
+import org.javacc.utils.io.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Deterministic automata of the table driven scanner backend, that is
+ * selected with the <code>SCANNER_BACKEND=DFA</code> option.
+ *
+ * <p>The automaton of every lexical state is built from the NFA of the
+ * state by subset construction, and then minimized. Characters are mapped
+ * to equivalence classes shared by all lexical states, so that the scanner
+ * needs a single character map, and one row of next states per DFA state.</p>
+ *
+ * <p>State 0 of every automaton is the dead state, state 1 is the start
+ * state. The kind of a state is the kind matched on entering the state,
+ * or <code>Integer.MAX_VALUE</code> if the state does not match anything.</p>
+ */
+final class DfaStates {
+  static final int DEAD = 0;
+  static final int START = 1;
+
+  /** Value of the generated kind table for states that match nothing. */
+  private static final int NO_KIND = 0xffff;
+
+  /** Maximal number of characters in a string literal of a packed table. */
+  private static final int CHUNK = 8192;
+
+  /** Minimized automaton of a lexical state. */
+  private static final class Automaton {
+    /** Starts of the character intervals, in ascending order. */
+    int[] bounds;
+    /** Local equivalence class of each character interval. */
+    int[] classOf;
+    /** Next states, indexed by state and local class. */
+    int[][] next;
+    /** Matched kinds, indexed by state. */
+    int[] kinds;
+  }
+
+  private Automaton[] automata;
+
+  void reInit(int maxLexStates) {
+    automata = new Automaton[maxLexStates];
+  }
+
+  /**
+   * Build the automaton of the current lexical state from its NFA.
+   * Epsilon closures of the NFA states must be already computed.
+   *
+   * @param scannerGen   The scanner generator.
+   * @param initialState The initial state of the NFA.
+   */
+  void build(ScannerGen scannerGen, NfaState initialState) {
+    // Collect NFA states reachable from the initial state.
+    List<NfaState> states = new ArrayList<NfaState>();
+    Map<NfaState, Integer> index = new IdentityHashMap<NfaState, Integer>();
+    addStates(initialState.epsilonMoveArray, states, index);
+    for (int i = 0; i < states.size(); i++) {
+      NfaState state = states.get(i);
+      if (state.next != null) {
+        addStates(state.next.epsilonMoveArray, states, index);
+      }
+    }
+
+    // Split characters into intervals that are either contained
+    // in the moves of a state, or disjoint with them.
+    List<int[]>[] moves = new List[states.size()];
+    TreeSet<Integer> boundSet = new TreeSet<Integer>();
+    boundSet.add(0);
+    for (int i = 0; i < states.size(); i++) {
+      moves[i] = moves(states.get(i));
+      for (int[] move : moves[i]) {
+        boundSet.add(move[0]);
+        if (move[1] < 0xffff) {
+          boundSet.add(move[1] + 1);
+        }
+      }
+    }
+    int[] bounds = new int[boundSet.size()];
+    int n = 0;
+    for (int bound : boundSet) {
+      bounds[n++] = bound;
+    }
+
+    // Intervals contained in the moves of the same states are equivalent.
+    BitSet[] covers = new BitSet[bounds.length];
+    for (int k = 0; k < bounds.length; k++) {
+      covers[k] = new BitSet();
+    }
+    for (int i = 0; i < states.size(); i++) {
+      for (int[] move : moves[i]) {
+        int k = Arrays.binarySearch(bounds, move[0]);
+        while (k < bounds.length && bounds[k] <= move[1]) {
+          covers[k++].set(i);
+        }
+      }
+    }
+    Map<BitSet, Integer> classes = new HashMap<BitSet, Integer>();
+    List<BitSet> classCovers = new ArrayList<BitSet>();
+    int[] classOf = new int[bounds.length];
+    for (int k = 0; k < bounds.length; k++) {
+      Integer c = classes.get(covers[k]);
+      if (c == null) {
+        classes.put(covers[k], c = classCovers.size());
+        classCovers.add(covers[k]);
+      }
+      classOf[k] = c;
+    }
+    int classCount = classCovers.size();
+
+    // Subset construction. A DFA state is identified by the set of
+    // NFA states it contains, and by the kind matched on entering it.
+    Map<String, Integer> dfaStates = new HashMap<String, Integer>();
+    List<BitSet> sets = new ArrayList<BitSet>();
+    List<Integer> kinds = new ArrayList<Integer>();
+    List<int[]> next = new ArrayList<int[]>();
+    sets.add(new BitSet());
+    kinds.add(Integer.MAX_VALUE);
+    dfaStates.put(key(sets.get(DEAD), Integer.MAX_VALUE), DEAD);
+    BitSet start = new BitSet();
+    for (NfaState state : initialState.epsilonMoveArray) {
+      start.set(index.get(state));
+    }
+    sets.add(start);
+    kinds.add(Integer.MAX_VALUE);
+    if (!start.isEmpty()) {
+      dfaStates.put(key(start, Integer.MAX_VALUE), START);
+    }
+    for (int d = 0; d < sets.size(); d++) {
+      BitSet set = sets.get(d);
+      int[] row = new int[classCount];
+      for (int c = 0; c < classCount; c++) {
+        BitSet target = new BitSet();
+        int kind = Integer.MAX_VALUE;
+        BitSet movers = (BitSet) classCovers.get(c).clone();
+        movers.and(set);
+        for (int i = movers.nextSetBit(0); i >= 0; i = movers.nextSetBit(i + 1)) {
+          NfaState to = states.get(i).next;
+          for (NfaState state : to.epsilonMoveArray) {
+            target.set(index.get(state));
+          }
+          if (kind > to.kind) {
+            kind = to.kind;
+          }
+        }
+        String key = key(target, kind);
+        Integer t = dfaStates.get(key);
+        if (t == null) {
+          dfaStates.put(key, t = sets.size());
+          sets.add(target);
+          kinds.add(kind);
+        }
+        row[c] = t;
+      }
+      next.add(row);
+    }
+
+    automata[scannerGen.lexStateIndex] = minimize(bounds, classOf, next, kinds);
+  }
+
+  private static void addStates(NfaState[] moves, List<NfaState> states,
+                                Map<NfaState, Integer> index) {
+    for (NfaState state : moves) {
+      if (!index.containsKey(state)) {
+        index.put(state, states.size());
+        states.add(state);
+      }
+    }
+  }
+
+  /** @return Character intervals of the moves of the NFA state. */
+  private static List<int[]> moves(NfaState state) {
+    List<int[]> moves = new ArrayList<int[]>();
+    for (int c = 0; c < 128; c++) {
+      if ((state.asciiMoves[c / 64] & (1L << (c % 64))) != 0L) {
+        int end = c;
+        while (end + 1 < 128 && (state.asciiMoves[(end + 1) / 64] & (1L << ((end + 1) % 64))) != 0L) {
+          end++;
+        }
+        moves.add(new int[]{c, end});
+        c = end;
+      }
+    }
+    if (state.charMoves != null) {
+      for (int i = 0; i < state.charMoves.length && state.charMoves[i] != 0; i++) {
+        moves.add(new int[]{state.charMoves[i], state.charMoves[i]});
+      }
+    }
+    if (state.rangeMoves != null) {
+      for (int i = 0; i < state.rangeMoves.length && state.rangeMoves[i] != 0; i += 2) {
+        moves.add(new int[]{state.rangeMoves[i], state.rangeMoves[i + 1]});
+      }
+    }
+    return moves;
+  }
+
+  private static String key(BitSet set, int kind) {
+    return kind + ":" + set;
+  }
+
+  /**
+   * Merge equivalent states, starting with states partitioned by the kind
+   * they match, and splitting partitions until all states of a partition
+   * move to the same partitions.
+   */
+  private static Automaton minimize(int[] bounds, int[] classOf,
+                                    List<int[]> next, List<Integer> kinds) {
+    int count = next.size();
+    int[] block = new int[count];
+    Map<String, Integer> blockIds = new HashMap<String, Integer>();
+    for (int i = 0; i < count; i++) {
+      block[i] = blockId(blockIds, String.valueOf(kinds.get(i)));
+    }
+    int blocks = blockIds.size();
+    while (true) {
+      blockIds.clear();
+      int[] refined = new int[count];
+      for (int i = 0; i < count; i++) {
+        StringBuilder signature = new StringBuilder().append(block[i]);
+        for (int to : next.get(i)) {
+          signature.append(',').append(block[to]);
+        }
+        refined[i] = blockId(blockIds, signature.toString());
+      }
+      block = refined;
+      if (blockIds.size() == blocks) {
+        break;
+      }
+      blocks = blockIds.size();
+    }
+
+    // Renumber blocks, so that the dead state comes first,
+    // followed by the start state.
+    int[] number = new int[blocks];
+    Arrays.fill(number, -1);
+    number[block[DEAD]] = DEAD;
+    int states = 1;
+    if (number[block[START]] == -1) {
+      number[block[START]] = states++;
+    }
+    for (int i = 0; i < count; i++) {
+      if (number[block[i]] == -1) {
+        number[block[i]] = states++;
+      }
+    }
+
+    Automaton automaton = new Automaton();
+    automaton.bounds = bounds;
+    automaton.classOf = classOf;
+    // Without any token the start state is equivalent to the dead state,
+    // but the scanner still starts from state 1.
+    automaton.next = new int[Math.max(states, START + 1)][];
+    automaton.kinds = new int[automaton.next.length];
+    Arrays.fill(automaton.kinds, Integer.MAX_VALUE);
+    for (int i = 0; i < count; i++) {
+      int state = number[block[i]];
+      if (automaton.next[state] == null) {
+        int[] row = next.get(i).clone();
+        for (int c = 0; c < row.length; c++) {
+          row[c] = number[block[row[c]]];
+        }
+        automaton.next[state] = row;
+        automaton.kinds[state] = kinds.get(i);
+      }
+    }
+    if (automaton.next[START] == null) {
+      automaton.next[START] = new int[next.get(DEAD).length];
+    }
+    return automaton;
+  }
+
+  private static int blockId(Map<String, Integer> blockIds, String signature) {
+    Integer id = blockIds.get(signature);
+    if (id == null) {
+      blockIds.put(signature, id = blockIds.size());
+    }
+    return id;
+  }
+
+  /**
+   * Print the character map, the tables of all lexical states, and the
+   * matcher method that runs them.
+   *
+   * @param scannerGen The scanner generator.
+   * @param out        The writer to print to.
+   */
+  void dump(ScannerGen scannerGen, IndentingPrintWriter out) {
+    // Global classes are tuples of local classes of all lexical states.
+    TreeSet<Integer> boundSet = new TreeSet<Integer>();
+    for (Automaton automaton : automata) {
+      if (automaton != null) {
+        for (int bound : automaton.bounds) {
+          boundSet.add(bound);
+        }
+      }
+    }
+    Map<String, Integer> classes = new HashMap<String, Integer>();
+    List<int[]> classTuples = new ArrayList<int[]>();
+    char[] charClass = new char[0x10000];
+    Integer[] bounds = boundSet.toArray(new Integer[boundSet.size()]);
+    for (int k = 0; k < bounds.length; k++) {
+      int[] tuple = new int[automata.length];
+      for (int i = 0; i < automata.length; i++) {
+        if (automata[i] != null) {
+          int local = Arrays.binarySearch(automata[i].bounds, bounds[k]);
+          if (local < 0) {
+            local = -local - 2;
+          }
+          tuple[i] = automata[i].classOf[local];
+        }
+      }
+      String key = Arrays.toString(tuple);
+      Integer c = classes.get(key);
+      if (c == null) {
+        classes.put(key, c = classTuples.size());
+        classTuples.add(tuple);
+      }
+      Arrays.fill(charClass, bounds[k],
+          k + 1 < bounds.length ? bounds[k + 1] : 0x10000, (char) (int) c);
+    }
+    int classCount = classTuples.size();
+
+    // The class map is split into blocks of 256 chars, and blocks with
+    // the same classes are stored once, so that the map of most grammars
+    // is only a few blocks long.
+    Map<String, Integer> blocks = new HashMap<String, Integer>();
+    List<Integer> blockOffsets = new ArrayList<Integer>();
+    List<Integer> blockClasses = new ArrayList<Integer>();
+    for (int hi = 0; hi < 0x100; hi++) {
+      String key = new String(charClass, hi << 8, 0x100);
+      Integer offset = blocks.get(key);
+      if (offset == null) {
+        blocks.put(key, offset = blocks.size() << 8);
+        for (int lo = 0; lo < 0x100; lo++) {
+          addRun(blockClasses, charClass[hi << 8 | lo]);
+        }
+      }
+      addRun(blockOffsets, offset);
+    }
+
+    out.println("/** Offsets of the blocks of 256 chars in the class map, by high byte. */");
+    out.print("private static final char[] jjCharBlock = jjUnpack(256, ");
+    printPacked(out, blockOffsets);
+    out.println(");");
+    out.println("/** Equivalence classes of characters, for the DFA transition tables. */");
+    out.print("private static final char[] jjCharClass = jjUnpack("
+        + (blocks.size() << 8) + ", ");
+    printPacked(out, blockClasses);
+    out.println(");");
+    out.println();
+
+    for (int i = 0; i < automata.length; i++) {
+      Automaton automaton = automata[i];
+      if (automaton == null) {
+        continue;
+      }
+      if (automaton.next.length > 0xffff) {
+        JavaCCErrors.semanticError("Too many DFA states in lexical state "
+            + scannerGen.lexStateName[i] + ": " + automaton.next.length);
+        return;
+      }
+      List<Integer> next = new ArrayList<Integer>();
+      for (int[] row : automaton.next) {
+        for (int[] tuple : classTuples) {
+          addRun(next, row[tuple[i]]);
+        }
+      }
+      out.println("/** Next states of lexical state " + scannerGen.lexStateName[i]
+          + ", " + classCount + " per state. */");
+      out.print("private static final char[] jjDfaNext_" + i
+          + " = jjUnpack(" + automaton.next.length * classCount + ", ");
+      printPacked(out, next);
+      out.println(");");
+
+      // Kinds are shifted left, the low bit marks states without
+      // transitions, where the matcher stops without reading another char.
+      List<Integer> kinds = new ArrayList<Integer>();
+      for (int state = 0; state < automaton.next.length; state++) {
+        int kind = automaton.kinds[state];
+        int value = NO_KIND;
+        if (kind != Integer.MAX_VALUE) {
+          if (kind >= NO_KIND >> 1) {
+            JavaCCErrors.semanticError("Too many tokens for the DFA scanner backend.");
+            return;
+          }
+          value = kind << 1 | 1;
+          for (int to : automaton.next[state]) {
+            if (to != DEAD) {
+              value = kind << 1;
+              break;
+            }
+          }
+        }
+        addRun(kinds, value);
+      }
+      out.println("/** Kinds matched on entering states of lexical state "
+          + scannerGen.lexStateName[i] + ". */");
+      out.print("private static final char[] jjDfaKind_" + i
+          + " = jjUnpack(" + automaton.next.length + ", ");
+      printPacked(out, kinds);
+      out.println(");");
+      out.println();
+    }
+
+    out.println("private static char[] jjUnpack(int length, String[] packed) {")
+        .indent()
+        .println("char[] result = new char[length];")
+        .println("int offset = 0;")
+        .println("for (String s : packed) {")
+        .indent()
+        .println("for (int i = 0; i < s.length(); i += 2) {")
+        .indent()
+        .println("int count = s.charAt(i);")
+        .println("java.util.Arrays.fill(result, offset, offset + count, s.charAt(i + 1));")
+        .println("offset += count;")
+        .unindent()
+        .println("}")
+        .unindent()
+        .println("}")
+        .println("return result;")
+        .unindent()
+        .println("}")
+        .println();
+
+    out.println("private int jjMoveDfa(char[] next, char[] kinds) throws java.io.IOException {")
+        .indent()
+        .println("int state = " + START + ";")
+        .println("int pos = 0;")
+        .println("while (true) {")
+        .indent()
+        .println("state = next[state * " + classCount
+            + " + jjCharClass[jjCharBlock[jjChar >> 8] + (jjChar & 0xff)]];")
+        .println("if (state == " + DEAD + ") {")
+        .indent()
+        .println("return pos + 1;")
+        .unindent()
+        .println("}")
+        .println("int kind = kinds[state];")
+        .println("if (kind != 0x" + Integer.toHexString(NO_KIND) + ") {")
+        .indent()
+        .println("jjMatchedKind = kind >> 1;")
+        .println("jjMatchedPos = pos;")
+        .println("if ((kind & 1) != 0) {")
+        .indent()
+        .println("return pos + 1;")
+        .unindent()
+        .println("}")
+        .unindent()
+        .println("}")
+        .println("pos++;")
+        // Like the NFA backend, leave -1 in jjChar at the end of input,
+        // so that errors are reported after the last char.
+        .println("jjChar = read();")
+        .println("if (jjChar == -1) {")
+        .indent()
+        .println("return pos;")
+        .unindent()
+        .println("}")
+        .unindent()
+        .println("}")
+        .unindent()
+        .println("}")
+        .println();
+  }
+
+  /** Append a value to pairs of run lengths and values. */
+  private static void addRun(List<Integer> runs, int value) {
+    int n = runs.size();
+    if (n > 0 && runs.get(n - 1) == value && runs.get(n - 2) < 0xffff) {
+      runs.set(n - 2, runs.get(n - 2) + 1);
+    }
+    else {
+      runs.add(1);
+      runs.add(value);
+    }
+  }
+
+  /** Print run-length encoded values as an array of string literals. */
+  private static void printPacked(IndentingPrintWriter out, List<Integer> values) {
+    out.println("new String[] {");
+    out.indent();
+    StringBuilder b = new StringBuilder();
+    int chars = 0;
+    for (int i = 0; i < values.size(); i++) {
+      escape(b, values.get(i));
+      if (++chars >= CHUNK && i % 2 == 1) {
+        out.println("\"" + b + "\",");
+        b.setLength(0);
+        chars = 0;
+      }
+    }
+    out.println("\"" + b + "\"");
+    out.unindent();
+    out.print("}");
+  }
+
+  /**
+   * Escape characters so that they are not affected by the translation
+   * of unicode escapes in Java sources, which happens before strings
+   * are parsed.
+   */
+  private static void escape(StringBuilder b, int c) {
+    if (c >= 0x20 && c < 0x7f && c != '"' && c != '\\') {
+      b.append((char) c);
+    }
+    else if (c < 0x100) {
+      b.append('\\').append((char) ('0' + (c >> 6)))
+          .append((char) ('0' + ((c >> 3) & 7)))
+          .append((char) ('0' + (c & 7)));
+    }
+    else {
+      String hex = Integer.toHexString(c);
+      b.append("\\u");
+      for (int i = hex.length(); i < 4; i++) {
+        b.append('0');
+      }
+      b.append(hex);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package org.javacc.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * The state of one run of JavaCC, JJTree or JJDoc: the option values, the
+ * error counts, and the global variables of the tools.
+ *
+ * <p>The static methods of {@link Options} and {@link JavaCCErrors} work on
+ * the context of the current thread.  The main programs run in a new
+ * context, so that one JVM can generate several grammars at the same time,
+ * each on its own thread.</p>
+ */
+public final class GenerationContext {
+  private static final ThreadLocal<GenerationContext> current =
+      new ThreadLocal<GenerationContext>() {
+        @Override protected GenerationContext initialValue() {
+          return new GenerationContext();
+        }
+      };
+
+  /**
+   * A variable that has a value in every context, created on its first use
+   * in the context.
+   */
+  public abstract static class Local<T> {
+    /** @return The value of the variable in a new context. */
+    protected abstract T initialValue();
+
+    /** @return The value of the variable in the context of the current thread. */
+    public final T get() {
+      return current().get(this);
+    }
+  }
+
+  Map<String, Object> optionValues;
+  Set<String> cmdLineSetting;
+  Set<String> inputFileSetting;
+
+  int parseErrorCount;
+  int semanticErrorCount;
+  int warningCount;
+
+  private final Map<Local<?>, Object> locals = new HashMap<Local<?>, Object>();
+
+  /** @return The context of the current thread. */
+  public static GenerationContext current() {
+    return current.get();
+  }
+
+  /**
+   * Run a task in this context on the current thread.
+   *
+   * @param task The task to run.
+   * @return The result of the task.
+   */
+  public <T> T call(Callable<T> task) throws Exception {
+    GenerationContext previous = current.get();
+    current.set(this);
+    try {
+      return task.call();
+    }
+    finally {
+      current.set(previous);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T get(Local<T> local) {
+    T value = (T) locals.get(local);
+    if (value == null) {
+      value = local.initialValue();
+      locals.put(local, value);
+    }
+    return value;
+  }
+}
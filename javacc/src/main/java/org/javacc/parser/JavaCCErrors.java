@@ -28,12 +28,11 @@
 
 package org.javacc.parser;
 
-/** Output error messages and keep track of totals. */
+/**
+ * Output error messages and keep track of totals, in the generation context
+ * of the current thread.
+ */
 public final class JavaCCErrors {
-  private static int parseErrorCount;
-  private static int semanticErrorCount;
-  private static int warningCount;
-
   private JavaCCErrors() {}
 
   private static void printLocationInfo(Object node) {
@@ -67,61 +66,71 @@ public final class JavaCCErrors {
     System.err.print("Error: ");
     printLocationInfo(node);
     System.err.println(msg);
-    parseErrorCount++;
+    GenerationContext.current().parseErrorCount++;
   }
 
   public static void parseError(String msg) {
     System.err.print("Error: ");
     System.err.println(msg);
-    parseErrorCount++;
+    GenerationContext.current().parseErrorCount++;
   }
 
   public static int getParseErrorCount() {
-    return parseErrorCount;
+    return GenerationContext.current().parseErrorCount;
   }
 
   public static void semanticError(Object node, String msg) {
     System.err.print("Error: ");
     printLocationInfo(node);
     System.err.println(msg);
-    semanticErrorCount++;
+    GenerationContext.current().semanticErrorCount++;
   }
 
   public static void semanticError(String msg) {
     System.err.print("Error: ");
     System.err.println(msg);
-    semanticErrorCount++;
+    GenerationContext.current().semanticErrorCount++;
   }
 
   public static int getSemanticErrorCount() {
-    return semanticErrorCount;
+    return GenerationContext.current().semanticErrorCount;
   }
 
   public static void warning(Object node, String msg) {
     System.err.print("Warning: ");
     printLocationInfo(node);
     System.err.println(msg);
-    warningCount++;
+    GenerationContext.current().warningCount++;
   }
 
   public static void warning(String msg) {
     System.err.print("Warning: ");
     System.err.println(msg);
-    warningCount++;
+    GenerationContext.current().warningCount++;
+  }
+
+  /**
+   * Print a message about the generated code, which is neither
+   * an error nor a warning.
+   */
+  public static void info(String msg) {
+    System.out.println(msg);
   }
 
   public static int getWarningCount() {
-    return warningCount;
+    return GenerationContext.current().warningCount;
   }
 
   public static int getErrorCount() {
-    return parseErrorCount + semanticErrorCount;
+    GenerationContext context = GenerationContext.current();
+    return context.parseErrorCount + context.semanticErrorCount;
   }
 
   @Deprecated
   public static void reInit() {
-    parseErrorCount = 0;
-    semanticErrorCount = 0;
-    warningCount = 0;
+    GenerationContext context = GenerationContext.current();
+    context.parseErrorCount = 0;
+    context.semanticErrorCount = 0;
+    context.warningCount = 0;
   }
 }
@@ -33,6 +33,7 @@ import org.javacc.utils.io.IndentingPrintWriter;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 
 /** Generate boilerplate java files. */
 public class JavaFiles implements FileGenerator {
@@ -46,6 +47,11 @@ public class JavaFiles implements FileGenerator {
   public void start() throws IOException {
     generateScanner();
     generateToken();
+    generateTokenBuffer();
+    generateScannerSnapshot();
+    if (!Options.getUserScanner() && Options.getBuildScanner()) {
+      generateParallelTokenizer();
+    }
     generateScannerException();
     generateParseException();
     generateCharStream();
@@ -59,6 +65,20 @@ public class JavaFiles implements FileGenerator {
     generate("/templates/Token.template", "Token.java");
   }
 
+  public void generateTokenBuffer() throws IOException {
+    generate("/templates/TokenBuffer.template", "TokenBuffer.java");
+  }
+
+  public void generateScannerSnapshot() throws IOException {
+    generate("/templates/ScannerSnapshot.template", "ScannerSnapshot.java");
+  }
+
+  public void generateParallelTokenizer() throws IOException {
+    Map<String, Object> options = Options.getOptions();
+    options.put("SCANNER_CLASS", state.scannerClass());
+    generate("/templates/ParallelTokenizer.template", "ParallelTokenizer.java", options);
+  }
+
   public void generateScannerException() throws IOException {
     generate("/templates/ScannerException.template", "ScannerException.java");
   }
@@ -72,6 +92,11 @@ public class JavaFiles implements FileGenerator {
   }
 
   private void generate(String templateName, String fileName) throws IOException {
+    generate(templateName, fileName, Options.getOptions());
+  }
+
+  private void generate(String templateName, String fileName, Map<String, Object> options)
+      throws IOException {
     File path = new File(Options.getOutputDirectory(), fileName);
     OutputFile outputFile = new OutputFile(path);
     IndentingPrintWriter out = outputFile.getPrintWriter();
@@ -79,7 +104,7 @@ public class JavaFiles implements FileGenerator {
       TokenPrinter tp = new TokenPrinter();
       tp.packageDeclaration(state.cuToInsertionPoint1, out);
       JavaFileGenerator generator = new JavaFileGenerator(
-          templateName, Options.getOptions());
+          templateName, options);
       generator.generate(out);
     }
     finally {
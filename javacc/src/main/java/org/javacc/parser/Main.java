@@ -36,14 +36,30 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.concurrent.Callable;
 
 public final class Main {
   public static void main(String[] args) throws Exception {
     System.exit(mainProgram(args));
   }
 
-  public static int mainProgram(String[] args) throws Exception {
-    reInitAll();
+  /**
+   * Run JavaCC in a new generation context, so that several threads can
+   * generate grammars at the same time.
+   *
+   * @param args The option settings and the grammar file.
+   * @return The exit code.
+   */
+  public static int mainProgram(final String[] args) throws Exception {
+    return new GenerationContext().call(new Callable<Integer>() {
+      @Override public Integer call() throws Exception {
+        return generate(args);
+      }
+    });
+  }
+
+  private static int generate(String[] args) throws Exception {
+    Options.init();
 
     Tools.bannerLine("Parser Generator", "");
 
@@ -214,6 +230,19 @@ public final class Main {
     System.out.println("    FORCE_LA_CHECK         (default false)");
     System.out.println("    CACHE_TOKENS           (default false)");
     System.out.println("    KEEP_LINE_COLUMN       (default true)");
+    System.out.println("    KEEP_IMAGE             (default true)");
+    System.out.println("    LINE_TABLE             (default false)");
+    System.out.println("    TOKEN_POOL             (default false)");
+    System.out.println("    MEMOIZE_LOOKAHEAD      (default false)");
+    System.out.println("    RETURN_CODE_LOOKAHEAD  (default false)");
+    System.out.println("    LOOKAHEAD_TABLES       (default false)");
+    System.out.println("    LAZY_ERROR_REPORTING   (default false)");
+    System.out.println("    INCREMENTAL_PARSING    (default false)");
+    System.out.println("    REPORT_METHOD_SIZES    (default false)");
+    System.out.println("");
+    System.out.println("With LAZY_ERROR_REPORTING, a parse error is reported by replaying the parse from");
+    System.out.println("the call of the public production without parameters.  The replay runs no");
+    System.out.println("actions, it only evaluates the lookaheads and consumes the tokens again.");
     System.out.println("");
     System.out.println("The string valued options are:");
     System.out.println("");
@@ -222,6 +251,7 @@ public final class Main {
     System.out.println("    TOKEN_FACTORY          (default none)");
     System.out.println("    JDK_VERSION            (default 1.5)");
     System.out.println("    GRAMMAR_ENCODING       (defaults to platform file encoding)");
+    System.out.println("    SCANNER_BACKEND        (default NFA)");
     System.out.println("");
     System.out.println("EXAMPLE:");
     System.out.println("    javacc -IGNORE_CASE=false -LOOKAHEAD:2 -debug_parser mygrammar.jj");
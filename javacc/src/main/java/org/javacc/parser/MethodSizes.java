@@ -0,0 +1,153 @@
+package org.javacc.parser;
+
+import org.javacc.utils.io.IndentingPrintWriter;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Estimated bytecode sizes of the largest generated scanner methods.
+ *
+ * <p>HotSpot does not compile methods longer than 8000 bytes of bytecode,
+ * so the generators of the NFA and string literal methods split the
+ * switch statements of such methods into chunks, each of them a method
+ * of its own.</p>
+ */
+final class MethodSizes {
+  /** Methods above this size are left to the interpreter by HotSpot. */
+  static final int JIT_LIMIT = 8000;
+  /** Maximal size of a chunk of a split method. */
+  static final int CHUNK_LIMIT = JIT_LIMIT / 2;
+  /** Estimated size of a line of generated code, measured with javap. */
+  private static final int BYTES_PER_LINE = 10;
+  /** Number of methods listed in the report. */
+  private static final int REPORTED = 5;
+
+  private static final Pattern CASE = Pattern.compile("^\\s*case (\\d+):", Pattern.MULTILINE);
+
+  private static final class Method {
+    final String name;
+    final int size;
+
+    Method(String name, int size) {
+      this.name = name;
+      this.size = size;
+    }
+  }
+
+  private final List<Method> methods = new ArrayList<Method>();
+
+  void reInit() {
+    methods.clear();
+  }
+
+  /** @return The estimated bytecode size of the code. */
+  static int estimate(String code) {
+    int lines = 0;
+    boolean blank = true;
+    for (int i = 0; i < code.length(); i++) {
+      char c = code.charAt(i);
+      if (c == '\n') {
+        if (!blank) {
+          lines++;
+        }
+        blank = true;
+      }
+      else if (c != ' ') {
+        blank = false;
+      }
+    }
+    if (!blank) {
+      lines++;
+    }
+    return lines * BYTES_PER_LINE;
+  }
+
+  /** @return A new writer to print code to a buffer, to estimate its size. */
+  static IndentingPrintWriter buffer(StringWriter buffer) {
+    return new IndentingPrintWriter(buffer, "\n");
+  }
+
+  /**
+   * Split code at cut positions, into chunks not larger than
+   * {@link #CHUNK_LIMIT}, unless a single piece between two cuts is.
+   *
+   * @param code The code to split.
+   * @param cuts Ascending positions in the code where it can be split.
+   * @return The chunks.
+   */
+  static List<String> split(String code, List<Integer> cuts) {
+    List<Integer> ends = new ArrayList<Integer>(cuts);
+    if (ends.isEmpty() || ends.get(ends.size() - 1) != code.length()) {
+      ends.add(code.length());
+    }
+    List<String> chunks = new ArrayList<String>();
+    int start = 0;
+    int end = 0;
+    for (int cut : ends) {
+      if (end > start && estimate(code.substring(start, cut)) > CHUNK_LIMIT) {
+        chunks.add(code.substring(start, end));
+        start = end;
+      }
+      end = cut;
+    }
+    if (start < code.length()) {
+      chunks.add(code.substring(start));
+    }
+    return chunks;
+  }
+
+  /** @return The numeric case labels in the code. */
+  static List<Integer> caseLabels(String code) {
+    List<Integer> labels = new ArrayList<Integer>();
+    Matcher matcher = CASE.matcher(code);
+    while (matcher.find()) {
+      labels.add(Integer.valueOf(matcher.group(1)));
+    }
+    return labels;
+  }
+
+  /**
+   * Record the estimated size of a generated method.
+   *
+   * @param name The name of the method.
+   * @param code The code of the method.
+   */
+  void add(String name, String code) {
+    methods.add(new Method(name, estimate(code)));
+  }
+
+  /**
+   * Warn about the largest methods, if any of them is too large for the JIT.
+   * With option REPORT_METHOD_SIZES, list the largest methods in any case.
+   */
+  void report() {
+    List<Method> sorted = new ArrayList<Method>(methods);
+    Collections.sort(sorted, new Comparator<Method>() {
+      @Override
+      public int compare(Method m1, Method m2) {
+        return m2.size - m1.size;
+      }
+    });
+    if (sorted.isEmpty()) {
+      return;
+    }
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < sorted.size() && i < REPORTED; i++) {
+      b.append("\n      ").append(sorted.get(i).name)
+          .append(" (about ").append(sorted.get(i).size).append(" bytes)");
+    }
+    if (sorted.get(0).size > JIT_LIMIT) {
+      JavaCCErrors.warning("Generated scanner methods larger than "
+          + JIT_LIMIT + " bytes are not compiled by the JIT. Largest methods:" + b);
+    }
+    else if (Options.getReportMethodSizes()) {
+      JavaCCErrors.info("Largest generated scanner methods:" + b);
+    }
+  }
+}
@@ -2,7 +2,9 @@ package org.javacc.parser;
 
 import org.javacc.utils.io.IndentingPrintWriter;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -368,6 +370,14 @@ final class NfaStates {
   }
 
   void dumpHeadForCase(IndentingPrintWriter out, int byteNum) {
+    dumpLocalsForCase(out, byteNum);
+    out.println("do {");
+    out.indent();
+    out.println("switch(jjStateSet[--i]) {");
+    out.indent();
+  }
+
+  private void dumpLocalsForCase(IndentingPrintWriter out, int byteNum) {
     if (byteNum == 0) {
       out.println("long l = 1L << jjChar;");
     }
@@ -385,11 +395,6 @@ final class NfaStates {
       out.println("int i2 = (jjChar & 0xff) >> 6;");
       out.println("long l2 = 1L << (jjChar & 63);");
     }
-
-    out.println("do {");
-    out.indent();
-    out.println("switch(jjStateSet[--i]) {");
-    out.indent();
   }
 
   Vector partitionStatesSetForAscii(int[] states, int byteNum) {
@@ -545,14 +550,14 @@ final class NfaStates {
     }
   }
 
-  void dumpAsciiMoves(ScannerGen scannerGen, IndentingPrintWriter out, int byteNum) {
+  void dumpAsciiMoves(ScannerGen scannerGen, IndentingPrintWriter out,
+                      StringWriter buffer, List<Integer> cuts, int byteNum) {
     boolean[] dumped = new boolean[Math.max(generatedStates, dummyStateIndex + 1)];
     Enumeration e = compositeStateTable.keys();
 
-    dumpHeadForCase(out, byteNum);
-
     while (e.hasMoreElements()) {
       dumpCompositeStatesAsciiMoves(out, (String) e.nextElement(), byteNum, dumped);
+      addCut(buffer, cuts);
     }
 
     for (int i = 0; i < allStates.size(); i++) {
@@ -597,13 +602,8 @@ final class NfaStates {
       dumped[temp.stateName] = true;
       out.println("case " + temp.stateName + ":");
       temp.dumpAsciiMove(out, byteNum, dumped);
+      addCut(buffer, cuts);
     }
-
-    out.println("default: break;");
-    out.unindent();
-    out.println("}");
-    out.unindent();
-    out.println("} while(i != startsAt);");
   }
 
   void dumpCompositeStatesNonAsciiMoves(IndentingPrintWriter out,
@@ -698,14 +698,21 @@ final class NfaStates {
   }
 
   public void dumpCharAndRangeMoves(ScannerGen scannerGen, IndentingPrintWriter out) {
+    StringWriter buffer = new StringWriter();
+    List<Integer> cuts = new ArrayList<Integer>();
+    dumpCharAndRangeMoves(scannerGen, MethodSizes.buffer(buffer), buffer, cuts);
+    dumpMoves(scannerGen, out, out, buffer.toString(), cuts, -1, false);
+  }
+
+  void dumpCharAndRangeMoves(ScannerGen scannerGen, IndentingPrintWriter out,
+                             StringWriter buffer, List<Integer> cuts) {
     boolean[] dumped = new boolean[Math.max(generatedStates, dummyStateIndex + 1)];
     Enumeration e = compositeStateTable.keys();
     int i;
 
-    dumpHeadForCase(out, -1);
-
     while (e.hasMoreElements()) {
       dumpCompositeStatesNonAsciiMoves(out, (String) e.nextElement(), dumped);
+      addCut(buffer, cuts);
     }
 
     for (i = 0; i < allStates.size(); i++) {
@@ -746,8 +753,107 @@ final class NfaStates {
       out.indent();
       temp.dumpNonAsciiMove(out, dumped);
       out.unindent();
+      addCut(buffer, cuts);
     }
+  }
 
+  /** Record the end of the cases printed so far, if they end with a break. */
+  private static void addCut(StringWriter buffer, List<Integer> cuts) {
+    StringBuffer code = buffer.getBuffer();
+    int end = code.length();
+    if (end > 0 && code.substring(code.lastIndexOf("\n", end - 2) + 1).trim().equals("break;")
+        && (cuts.isEmpty() || cuts.get(cuts.size() - 1) != end)) {
+      cuts.add(end);
+    }
+  }
+
+  /**
+   * Print the moves of the current lexical state for one of the char ranges,
+   * as a loop over the current state set.
+   *
+   * @param scannerGen The scanner generator.
+   * @param out        The writer to print the loop to.
+   * @param methods    The writer to print the chunks of split moves to.
+   * @param code       The cases of the moves.
+   * @param cuts       Positions in the code where it can be split.
+   * @param byteNum    0 for chars below 64, 1 for chars below 128,
+   *                   -1 for all other chars.
+   * @param split      Whether to split the moves into chunk methods.
+   */
+  private void dumpMoves(ScannerGen scannerGen, IndentingPrintWriter out,
+                         IndentingPrintWriter methods, String code, List<Integer> cuts,
+                         int byteNum, boolean split) {
+    if (!split) {
+      dumpHeadForCase(out, byteNum);
+      out.print(code);
+      out.println("default: break;");
+      out.unindent();
+      out.println("}");
+      out.unindent();
+      out.println("} while(i != startsAt);");
+      return;
+    }
+
+    // Every chunk is a method with a switch over some of the states,
+    // a table maps states to chunks.
+    String name = "jjMoveNfa" + scannerGen.lexStateSuffix
+        + (byteNum == 0 ? "_ascii0" : byteNum == 1 ? "_ascii1" : "_unicode");
+    String params;
+    if (byteNum >= 0) {
+      params = "int state, long l, int kind";
+    }
+    else if (Options.getJavaUnicodeEscape() || unicodeWarningGiven) {
+      params = "int state, int hiByte, int i1, long l1, int i2, long l2, int kind";
+    }
+    else {
+      params = "int state, int i2, long l2, int kind";
+    }
+    String args = params.replace("int ", "").replace("long ", "");
+
+    List<String> chunks = MethodSizes.split(code, cuts);
+    int[] chunkOf = new int[Math.max(generatedStates, dummyStateIndex + 1)];
+    Arrays.fill(chunkOf, -1);
+    for (int chunk = 0; chunk < chunks.size(); chunk++) {
+      for (int state : MethodSizes.caseLabels(chunks.get(chunk))) {
+        chunkOf[state] = chunk;
+      }
+      StringWriter method = new StringWriter();
+      MethodSizes.buffer(method)
+          .println("private int " + name + "_" + chunk + "(" + params + ") {")
+          .indent()
+          .println("switch(state) {")
+          .indent()
+          .print(chunks.get(chunk))
+          .println("default: break;")
+          .unindent()
+          .println("}")
+          .println("return kind;")
+          .unindent()
+          .println("}");
+      scannerGen.methodSizes.add(name + "_" + chunk, method.toString());
+      methods.print(method.toString());
+      methods.println();
+    }
+
+    methods.print("private static final int[] " + name + "Chunks = {");
+    methods.indent();
+    IndentingPrintWriter.ListPrinter list = methods.list(", ");
+    for (int chunk : chunkOf) {
+      list.item(chunk);
+    }
+    methods.unindent();
+    methods.println("};");
+    methods.println();
+
+    dumpLocalsForCase(out, byteNum);
+    out.println("do {");
+    out.indent();
+    out.println("int state = jjStateSet[--i];");
+    out.println("switch(" + name + "Chunks[state]) {");
+    out.indent();
+    for (int chunk = 0; chunk < chunks.size(); chunk++) {
+      out.println("case " + chunk + ": kind = " + name + "_" + chunk + "(" + args + "); break;");
+    }
     out.println("default: break;");
     out.unindent();
     out.println("}");
@@ -949,6 +1055,13 @@ final class NfaStates {
 
     kinds[scannerGen.lexStateIndex] = kindsForStates;
 
+    // Print the method to a buffer to estimate its size, and split
+    // the moves into chunk methods if it is too large for the JIT.
+    IndentingPrintWriter writer = out;
+    StringWriter method = new StringWriter();
+    StringWriter chunks = new StringWriter();
+    out = MethodSizes.buffer(method);
+
     out.println("private int " +
         "jjMoveNfa" + scannerGen.lexStateSuffix + "(int startState, int pos) throws java.io.IOException {");
     out.indent();
@@ -957,9 +1070,27 @@ final class NfaStates {
       out.println("return pos;");
       out.unindent();
       out.println("}");
+      writer.print(method.toString());
       return;
     }
 
+    String[] moves = new String[3];
+    List<Integer>[] cuts = new List[3];
+    int size = 0;
+    for (i = 0; i < 3; i++) {
+      StringWriter buffer = new StringWriter();
+      cuts[i] = new ArrayList<Integer>();
+      if (i < 2) {
+        dumpAsciiMoves(scannerGen, MethodSizes.buffer(buffer), buffer, cuts[i], i);
+      }
+      else {
+        dumpCharAndRangeMoves(scannerGen, MethodSizes.buffer(buffer), buffer, cuts[i]);
+      }
+      moves[i] = buffer.toString();
+      size += MethodSizes.estimate(moves[i]);
+    }
+    boolean split = size > MethodSizes.JIT_LIMIT;
+
     if (scannerGen.mixed[scannerGen.lexStateIndex]) {
       out.println("int strKind = jjMatchedKind;");
       out.println("int strPos = jjMatchedPos;");
@@ -995,19 +1126,20 @@ final class NfaStates {
     out.indent();
     out.println("reInitRounds();");
     out.unindent();
+    IndentingPrintWriter methods = MethodSizes.buffer(chunks);
     out.println("if (jjChar < 64) {");
     out.indent();
-    dumpAsciiMoves(scannerGen, out, 0);
+    dumpMoves(scannerGen, out, methods, moves[0], cuts[0], 0, split);
     out.unindent();
     out.println("}");
     out.println("else if (jjChar < 128) {");
     out.indent();
-    dumpAsciiMoves(scannerGen, out, 1);
+    dumpMoves(scannerGen, out, methods, moves[1], cuts[1], 1, split);
     out.unindent();
     out.println("}");
     out.println("else {");
     out.indent();
-    dumpCharAndRangeMoves(scannerGen, out);
+    dumpMoves(scannerGen, out, methods, moves[2], cuts[2], -1, split);
     out.unindent();
     out.println("}");
 
@@ -1090,6 +1222,9 @@ final class NfaStates {
 
     out.unindent();
     out.println("}");
+    scannerGen.methodSizes.add("jjMoveNfa" + scannerGen.lexStateSuffix, method.toString());
+    writer.print(chunks.toString());
+    writer.print(method.toString());
     allStates.clear();
   }
 
@@ -31,12 +31,16 @@ package org.javacc.parser;
 import java.io.File;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
 import static java.lang.Boolean.*;
 
-/** A class with static state that stores all option information. */
+/**
+ * Stores all option information, in the generation context of the current
+ * thread.
+ */
 public class Options {
   /** Limit subclassing to derived classes. */
   protected Options() {}
@@ -46,26 +50,30 @@ public class Options {
    * This table is initialized by the main program. Its contents defines the
    * set of legal options. Its initial values define the default option
    * values, and the option types can be determined from these values too.
+   *
+   * @return The table of the current generation context.
    */
-  protected static Map<String, Object> optionValues = null;
+  protected static Map<String, Object> optionValues() {
+    return GenerationContext.current().optionValues;
+  }
 
   /** Convenience method to retrieve integer options. */
   protected static int intValue(String option) {
-    return (Integer) optionValues.get(option);
+    return (Integer) optionValues().get(option);
   }
 
   /** Convenience method to retrieve boolean options. */
   protected static boolean booleanValue(String option) {
-    return (Boolean) optionValues.get(option);
+    return (Boolean) optionValues().get(option);
   }
 
   /** Convenience method to retrieve string options. */
   protected static String stringValue(String option) {
-    return (String) optionValues.get(option);
+    return (String) optionValues().get(option);
   }
 
   public static Map<String, Object> getOptions() {
-    return new HashMap<String, Object>(optionValues);
+    return new HashMap<String, Object>(optionValues());
   }
 
   /**
@@ -73,19 +81,26 @@ public class Options {
    * this to see if the options set from the command line and the ones set in
    * the input files clash in any way.
    */
-  private static Set cmdLineSetting = null;
+  private static Set<String> cmdLineSetting() {
+    return GenerationContext.current().cmdLineSetting;
+  }
+
   /**
    * Keep track of what options were set from the grammar file. We use this to
    * see if the options set from the command line and the ones set in the
    * input files clash in any way.
    */
-  private static Set inputFileSetting = null;
+  private static Set<String> inputFileSetting() {
+    return GenerationContext.current().inputFileSetting;
+  }
 
   /** Initialize for JavaCC */
   public static void init() {
-    optionValues = new HashMap<String, Object>();
-    cmdLineSetting = new HashSet();
-    inputFileSetting = new HashSet();
+    GenerationContext context = GenerationContext.current();
+    context.optionValues = new HashMap<String, Object>();
+    context.cmdLineSetting = new HashSet<String>();
+    context.inputFileSetting = new HashSet<String>();
+    Map<String, Object> optionValues = context.optionValues;
 
     optionValues.put("LOOKAHEAD", 1);
     optionValues.put("CHOICE_AMBIGUITY_CHECK", 2);
@@ -109,6 +124,14 @@ public class Options {
     optionValues.put("CACHE_TOKENS", FALSE);
     optionValues.put("KEEP_LINE_COLUMN", TRUE);
     optionValues.put("KEEP_IMAGE", TRUE);
+    optionValues.put("LINE_TABLE", FALSE);
+    optionValues.put("TOKEN_POOL", FALSE);
+    optionValues.put("MEMOIZE_LOOKAHEAD", FALSE);
+    optionValues.put("RETURN_CODE_LOOKAHEAD", FALSE);
+    optionValues.put("LOOKAHEAD_TABLES", FALSE);
+    optionValues.put("LAZY_ERROR_REPORTING", FALSE);
+    optionValues.put("INCREMENTAL_PARSING", FALSE);
+    optionValues.put("REPORT_METHOD_SIZES", FALSE);
 
     optionValues.put("GENERATE_GENERICS", TRUE);
     optionValues.put("GENERATE_ANNOTATIONS", TRUE);
@@ -118,6 +141,7 @@ public class Options {
     optionValues.put("TOKEN_EXTENDS", "");
     optionValues.put("TOKEN_FACTORY", "");
     optionValues.put("GRAMMAR_ENCODING", "");
+    optionValues.put("SCANNER_BACKEND", "NFA");
   }
 
   /**
@@ -155,12 +179,12 @@ public class Options {
   public static void setInputFileOption(Object nameloc, Object valueloc,
                                         String name, Object value) {
     String s = name.toUpperCase();
-    if (!optionValues.containsKey(s)) {
+    if (!optionValues().containsKey(s)) {
       JavaCCErrors.warning(nameloc, "Bad option name \"" + name
           + "\".  Option setting will be ignored.");
       return;
     }
-    Object existingValue = optionValues.get(s);
+    Object existingValue = optionValues().get(s);
 
     value = upgradeValue(name, value);
 
@@ -173,13 +197,13 @@ public class Options {
         return;
       }
 
-      if (inputFileSetting.contains(s)) {
+      if (inputFileSetting().contains(s)) {
         JavaCCErrors.warning(nameloc, "Duplicate option setting for \""
             + name + "\" will be ignored.");
         return;
       }
 
-      if (cmdLineSetting.contains(s)) {
+      if (cmdLineSetting().contains(s)) {
         if (!existingValue.equals(value)) {
           JavaCCErrors.warning(nameloc, "Command line setting of \""
               + name + "\" modifies option value in file.");
@@ -188,8 +212,8 @@ public class Options {
       }
     }
 
-    optionValues.put(s, value);
-    inputFileSetting.add(s);
+    optionValues().put(s, value);
+    inputFileSetting().add(s);
   }
 
   /**
@@ -222,7 +246,7 @@ public class Options {
 
     if (index < 0) {
       name = s.toUpperCase();
-      if (optionValues.containsKey(name)) {
+      if (optionValues().containsKey(name)) {
         Val = TRUE;
       }
       else if (name.length() > 2 && name.charAt(0) == 'N' && name.charAt(1) == 'O') {
@@ -267,18 +291,18 @@ public class Options {
       }
     }
 
-    if (!optionValues.containsKey(name)) {
+    if (!optionValues().containsKey(name)) {
       System.out.println("Warning: Bad option \"" + arg
           + "\" will be ignored.");
       return;
     }
-    Object valOrig = optionValues.get(name);
+    Object valOrig = optionValues().get(name);
     if (Val.getClass() != valOrig.getClass()) {
       System.out.println("Warning: Bad option value in \"" + arg
           + "\" will be ignored.");
       return;
     }
-    if (cmdLineSetting.contains(name)) {
+    if (cmdLineSetting().contains(name)) {
       System.out.println("Warning: Duplicate option setting \"" + arg
           + "\" will be ignored.");
       return;
@@ -286,27 +310,80 @@ public class Options {
 
     Val = upgradeValue(name, Val);
 
-    optionValues.put(name, Val);
-    cmdLineSetting.add(name);
+    optionValues().put(name, Val);
+    cmdLineSetting().add(name);
   }
 
   public static void normalize() {
     if (getDebugLookahead() && !getDebugParser()) {
-      if (cmdLineSetting.contains("DEBUG_PARSER")
-          || inputFileSetting.contains("DEBUG_PARSER")) {
+      if (cmdLineSetting().contains("DEBUG_PARSER")
+          || inputFileSetting().contains("DEBUG_PARSER")) {
         JavaCCErrors
             .warning("True setting of option DEBUG_LOOKAHEAD overrides " +
                 "false setting of option DEBUG_PARSER.");
       }
-      optionValues.put("DEBUG_PARSER", TRUE);
+      optionValues().put("DEBUG_PARSER", TRUE);
     }
 
     // Now set the "GENERATE" options from the supplied (or default) JDK version.
 
-    optionValues.put("GENERATE_CHAINED_EXCEPTION", jdkVersionAtLeast(1.4));
-    optionValues.put("GENERATE_GENERICS", jdkVersionAtLeast(1.5));
-    optionValues.put("GENERATE_STRING_BUILDER", jdkVersionAtLeast(1.5));
-    optionValues.put("GENERATE_ANNOTATIONS", jdkVersionAtLeast(1.5));
+    optionValues().put("GENERATE_CHAINED_EXCEPTION", jdkVersionAtLeast(1.4));
+    optionValues().put("GENERATE_GENERICS", jdkVersionAtLeast(1.5));
+    optionValues().put("GENERATE_STRING_BUILDER", jdkVersionAtLeast(1.5));
+    optionValues().put("GENERATE_ANNOTATIONS", jdkVersionAtLeast(1.5));
+
+    String backend = getScannerBackend().toUpperCase(Locale.ENGLISH);
+    if (!backend.equals("NFA") && !backend.equals("DFA")) {
+      JavaCCErrors.warning("Bad option value \"" + getScannerBackend()
+          + "\" for SCANNER_BACKEND.  Option setting will be ignored.");
+      backend = "NFA";
+    }
+    optionValues().put("SCANNER_BACKEND", backend);
+
+    // A released token keeps the class and the extra state given to it by the
+    // token factory or the token superclass, whatever kind it is reused for.
+    if (getTokenPool()) {
+      if (getTokenFactory().length() > 0) {
+        JavaCCErrors.warning("Setting of option TOKEN_FACTORY overrides " +
+            "true setting of option TOKEN_POOL.");
+        optionValues().put("TOKEN_POOL", FALSE);
+      }
+      else if (getTokenExtends().length() > 0) {
+        JavaCCErrors.warning("Setting of option TOKEN_EXTENDS overrides " +
+            "true setting of option TOKEN_POOL.");
+        optionValues().put("TOKEN_POOL", FALSE);
+      }
+    }
+
+    // Released tokens cannot be parsed again to report an error.
+    if (getLazyErrorReporting() && getTokenPool()) {
+      JavaCCErrors.warning("True setting of option TOKEN_POOL overrides " +
+          "true setting of option LAZY_ERROR_REPORTING.");
+      optionValues().put("LAZY_ERROR_REPORTING", FALSE);
+    }
+    if (!getErrorReporting()) {
+      optionValues().put("LAZY_ERROR_REPORTING", FALSE);
+    }
+
+    // Released tokens cannot be reused by the next parse, and the line table
+    // of the next scan does not cover the tokens it reuses.
+    if (getIncrementalParsing()) {
+      if (getTokenPool()) {
+        JavaCCErrors.warning("True setting of option TOKEN_POOL overrides " +
+            "true setting of option INCREMENTAL_PARSING.");
+        optionValues().put("INCREMENTAL_PARSING", FALSE);
+      }
+      else if (getUserScanner()) {
+        JavaCCErrors.warning("True setting of option USER_SCANNER overrides " +
+            "true setting of option INCREMENTAL_PARSING.");
+        optionValues().put("INCREMENTAL_PARSING", FALSE);
+      }
+      else if (getLineTable()) {
+        JavaCCErrors.warning("True setting of option INCREMENTAL_PARSING overrides " +
+            "true setting of option LINE_TABLE.");
+        optionValues().put("LINE_TABLE", FALSE);
+      }
+    }
   }
 
   /**
@@ -498,6 +575,92 @@ public class Options {
     return booleanValue("KEEP_IMAGE");
   }
 
+  /**
+   * Find the line table value.
+   *
+   * @return The requested line table value.
+   */
+  public static boolean getLineTable() {
+    return booleanValue("LINE_TABLE");
+  }
+
+  /**
+   * Find the token pool value.
+   *
+   * @return The requested token pool value.
+   */
+  public static boolean getTokenPool() {
+    return booleanValue("TOKEN_POOL");
+  }
+
+  /**
+   * Find the memoize lookahead value.
+   *
+   * @return The requested memoize lookahead value.
+   */
+  public static boolean getMemoizeLookahead() {
+    return booleanValue("MEMOIZE_LOOKAHEAD");
+  }
+
+  /**
+   * Find the return code lookahead value.
+   *
+   * @return The requested return code lookahead value.
+   */
+  public static boolean getReturnCodeLookahead() {
+    return booleanValue("RETURN_CODE_LOOKAHEAD");
+  }
+
+  /**
+   * Find the lookahead tables value.
+   *
+   * @return The requested lookahead tables value.
+   */
+  public static boolean getLookaheadTables() {
+    return booleanValue("LOOKAHEAD_TABLES");
+  }
+
+  /**
+   * Find the lazy error reporting value.  When true, a call of a public
+   * production without parameters does not record the failed choices and
+   * lookaheads.  To report a parse error, the parser consumes the tokens
+   * again from that call and records them, up to the same token.  This
+   * replay runs no actions, it only decides the choices, evaluating the
+   * lookaheads, and consumes the tokens.  If the actions changed the tokens
+   * or the semantic lookahead, so that the replay stops elsewhere, the error
+   * reports only the token the parse failed to consume.  Exceptions other than parse
+   * exceptions thrown by the replay are thrown by the parse.  A production
+   * is recorded as it parses if it reaches a JAVACODE production or a
+   * semantic lookahead that uses its parameters or declarations, after the
+   * first parse error, or after it parsed 10000 tokens, which are the most
+   * tokens kept for the replay.
+   *
+   * @return The requested lazy error reporting value.
+   */
+  public static boolean getLazyErrorReporting() {
+    return booleanValue("LAZY_ERROR_REPORTING");
+  }
+
+  /**
+   * Find the incremental parsing value.
+   *
+   * @return The requested incremental parsing value.
+   */
+  public static boolean getIncrementalParsing() {
+    return booleanValue("INCREMENTAL_PARSING");
+  }
+
+  /**
+   * Find the report method sizes value.  When true, the estimated bytecode
+   * sizes of the largest generated scanner methods are printed, even when
+   * none of them is too large for the JIT.
+   *
+   * @return The requested report method sizes value.
+   */
+  public static boolean getReportMethodSizes() {
+    return booleanValue("REPORT_METHOD_SIZES");
+  }
+
   /**
    * Find the JDK version.
    *
@@ -563,6 +726,17 @@ public class Options {
     }
   }
 
+  /**
+   * Find the scanner backend value, either <code>NFA</code> for the
+   * generated code of the automata, or <code>DFA</code> for
+   * a table driven scanner.
+   *
+   * @return The requested scanner backend value.
+   */
+  public static String getScannerBackend() {
+    return stringValue("SCANNER_BACKEND");
+  }
+
   /**
    * Find the output directory.
    *
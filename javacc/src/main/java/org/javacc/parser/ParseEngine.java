@@ -31,10 +31,15 @@ package org.javacc.parser;
 import org.javacc.utils.io.IndentingPrintWriter;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public final class ParseEngine {
   /** Constants used in the following method "buildLookaheadChecker". */
@@ -67,7 +72,7 @@ public final class ParseEngine {
   int maskIndex;
   int jj2index;
   boolean lookaheadNeeded;
-  List<int[]> maskValues = new ArrayList<int[]>();
+  List<long[]> maskValues = new ArrayList<long[]>();
   private int genSymIndex;
   private boolean jj2LA;
   /**
@@ -92,6 +97,48 @@ public final class ParseEngine {
   private final List<Lookahead> phase2list = new ArrayList<Lookahead>();
   private final List<Phase3Data> phase3list = new ArrayList<Phase3Data>();
   private final Map<Expansion, Phase3Data> phase3table = new HashMap<Expansion, Phase3Data>();
+  /**
+   * Whether some phase 3 routines are memoized, see
+   * {@link Options#getMemoizeLookahead()}.
+   */
+  boolean memoize;
+  /** Number of places every phase 3 routine is called from, while selecting the memoized ones. */
+  private Map<Expansion, Integer> callSites;
+  /** Identifiers of the memoized phase 3 routines in the memo table. */
+  private final Map<Expansion, Integer> memoIds = new HashMap<Expansion, Integer>();
+  /**
+   * Whether the phase 3 routines return a status instead of throwing
+   * LookaheadSuccess, see {@link Options#getReturnCodeLookahead()}.
+   * The status is 0 if the expansion matched, 1 if it failed, and 2 if
+   * the lookahead limit was reached, which ends the lookahead successfully.
+   */
+  private boolean returnCodes;
+  /** Methods deciding choice points with decision tables, see {@link DecisionTable}. */
+  private final List<String> decisionTables = new ArrayList<String>();
+  /**
+   * Whether the failed choices and lookaheads are only recorded while the
+   * parse is replayed to report an error, see {@link Options#getLazyErrorReporting()}.
+   */
+  boolean lazyErrorReporting;
+  /**
+   * The public productions without parameters, which a parse is replayed
+   * from, numbered from 1 in the generated code.
+   */
+  final List<BNFProduction> entries = new ArrayList<BNFProduction>();
+  /**
+   * The productions reached from the entries, which have a replay routine.
+   * It consumes the tokens and decides the choices like the phase 1 routine
+   * does, without the actions.
+   */
+  private final Set<NormalProduction> replayed = new HashSet<NormalProduction>();
+  /**
+   * The switch statement masks and decision tables allocated by the phase 1
+   * routine being built, in order, if it has a replay routine.  The replay
+   * routine is built from the same expansions and uses them again.
+   */
+  private List<Integer> allocations;
+  /** Number of the allocations used again while a replay routine is built, or -1. */
+  private int reused = -1;
 
   public ParseEngine(JavaCCState state, Semanticize semanticize) {
     this.state = state;
@@ -99,15 +146,27 @@ public final class ParseEngine {
   }
 
   void build(IndentingPrintWriter out) throws IOException {
+    returnCodes = Options.getReturnCodeLookahead();
+    lazyErrorReporting = Options.getLazyErrorReporting();
+    if (lazyErrorReporting) {
+      selectReplayedProductions();
+    }
     for (NormalProduction production : state.bnfProductions) {
       if (production instanceof JavaCodeProduction) {
         buildJavaCodeProduction(production, out);
       }
       else {
         buildPhase1Routine((BNFProduction) production, out);
+        if (replayed.contains(production)) {
+          buildReplayRoutine((BNFProduction) production, out);
+        }
       }
     }
 
+    for (String decisionTable : decisionTables) {
+      out.print(decisionTable);
+    }
+
     for (Lookahead lookahead : phase2list) {
       buildPhase2Routine(lookahead, out);
     }
@@ -120,11 +179,261 @@ public final class ParseEngine {
       }
     }
 
+    if (Options.getMemoizeLookahead()) {
+      selectMemoizedRoutines();
+    }
+
     for (Phase3Data phase3Data : phase3table.values()) {
       buildPhase3Routine(phase3Data, out);
     }
   }
 
+  /**
+   * Replay the public productions without parameters, unless they reach a
+   * JAVACODE production or a semantic lookahead that uses the parameters or
+   * the declarations of its production, which the replay routines do not
+   * have.  The others record the failed choices as they parse.
+   */
+  private void selectReplayedProductions() {
+    for (NormalProduction production : state.bnfProductions) {
+      if (production instanceof BNFProduction && production.getParameterListTokens().isEmpty()
+          && ("public".equals(production.getAccessModifier())
+              || "protected".equals(production.getAccessModifier()))) {
+        Set<NormalProduction> reached = new HashSet<NormalProduction>();
+        if (replayable(production, reached)) {
+          entries.add((BNFProduction) production);
+          replayed.addAll(reached);
+        }
+      }
+    }
+  }
+
+  private boolean replayable(NormalProduction production, Set<NormalProduction> reached) {
+    if (production instanceof JavaCodeProduction) {
+      return false;
+    }
+    if (!reached.add(production)) {
+      return true;
+    }
+    Set<String> locals = new HashSet<String>();
+    for (Token t : production.getParameterListTokens()) {
+      if (t.getKind() == JavaCCConstants.IDENTIFIER) {
+        locals.add(t.getImage());
+      }
+    }
+    for (Token t : ((BNFProduction) production).getTokens()) {
+      if (t.getKind() == JavaCCConstants.IDENTIFIER) {
+        locals.add(t.getImage());
+      }
+    }
+    return replayable(production.getExpansion(), locals, reached);
+  }
+
+  private boolean replayable(Expansion expansion, Set<String> locals, Set<NormalProduction> reached) {
+    if (expansion instanceof NonTerminal) {
+      return replayable(state.bnfProductionsTable.get(((NonTerminal) expansion).getName()), reached);
+    }
+    else if (expansion instanceof Sequence) {
+      for (Expansion unit : ((Sequence) expansion).units) {
+        if (unit instanceof Lookahead) {
+          for (Token t : ((Lookahead) unit).getActionTokens()) {
+            if (t.getKind() == JavaCCConstants.IDENTIFIER && locals.contains(t.getImage())) {
+              return false;
+            }
+          }
+        }
+        else if (!replayable(unit, locals, reached)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    else if (expansion instanceof Choice) {
+      for (Expansion choice : ((Choice) expansion).getChoices()) {
+        if (!replayable(choice, locals, reached)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    else if (expansion instanceof ZeroOrOne) {
+      return replayable(((ZeroOrOne) expansion).expansion, locals, reached);
+    }
+    else if (expansion instanceof ZeroOrMore) {
+      return replayable(((ZeroOrMore) expansion).expansion, locals, reached);
+    }
+    else if (expansion instanceof OneOrMore) {
+      return replayable(((OneOrMore) expansion).expansion, locals, reached);
+    }
+    else if (expansion instanceof TryBlock) {
+      return replayable(((TryBlock) expansion).expansion, locals, reached);
+    }
+    return true;
+  }
+
+  /**
+   * Memoize the phase 3 routines that are called from more than one place,
+   * and thus may scan the same tokens several times, unless they evaluate
+   * semantic lookahead or reach a JAVACODE production, whose results may
+   * depend on more than the tokens.  The memoized routines and the ones
+   * skipped are reported.
+   */
+  private void selectMemoizedRoutines() {
+    callSites = new HashMap<Expansion, Integer>();
+    for (Lookahead lookahead : phase2list) {
+      countCallSite(lookahead.getLaExpansion());
+    }
+    for (Phase3Data phase3Data : phase3table.values()) {
+      countCallSites(phase3Data.expansion, phase3Data.count);
+    }
+
+    List<Expansion> routines = new ArrayList<Expansion>();
+    for (Phase3Data phase3Data : phase3table.values()) {
+      Expansion expansion = phase3Data.expansion;
+      if (!expansion.internalName.startsWith("jj_scan_token")) {
+        routines.add(expansion);
+      }
+    }
+    Collections.sort(routines, new Comparator<Expansion>() {
+      @Override
+      public int compare(Expansion e1, Expansion e2) {
+        int c = callSites(e2) - callSites(e1);
+        return c != 0 ? c : e1.internalName.compareTo(e2.internalName);
+      }
+    });
+
+    StringBuilder memoized = new StringBuilder();
+    StringBuilder skipped = new StringBuilder();
+    for (Expansion expansion : routines) {
+      if (callSites(expansion) <= 1) {
+        continue;
+      }
+      StringBuilder report;
+      if (scansMoreThanTokens(expansion, new HashSet<NormalProduction>())) {
+        report = skipped;
+      }
+      else {
+        memoIds.put(expansion, memoIds.size() + 1);
+        report = memoized;
+      }
+      report.append("\n      jj_3").append(expansion.internalName)
+          .append(" (called from ").append(callSites(expansion)).append(" places)");
+    }
+    JavaCCErrors.info("Memoizing " + memoIds.size() + " of " + routines.size()
+        + " lookahead routines" + (memoIds.isEmpty() ? "." : ":" + memoized));
+    if (skipped.length() != 0) {
+      JavaCCErrors.info("Not memoizing lookahead routines with semantic lookahead or JAVACODE productions:"
+          + skipped);
+    }
+    callSites = null;
+    memoize = !memoIds.isEmpty();
+  }
+
+  /**
+   * Counts the calls the phase 3 routine of the expansion makes, following
+   * {@link #buildPhase3Statement(Phase3Data, IndentingPrintWriter)}.
+   */
+  private void countCallSites(Expansion expansion, int count) {
+    if (expansion.internalName.startsWith("jj_scan_token")) {
+      return;
+    }
+
+    if (expansion instanceof NonTerminal) {
+      NormalProduction production = state.bnfProductionsTable.get(((NonTerminal) expansion).getName());
+      if (!(production instanceof JavaCodeProduction)) {
+        countCallSite(production.getExpansion());
+      }
+    }
+    else if (expansion instanceof Sequence) {
+      Sequence sequence = (Sequence) expansion;
+      // The first unit is the Lookahead object.
+      int cnt = count;
+      for (int i = 1; i < sequence.units.size(); i++) {
+        Expansion unit = sequence.units.get(i);
+        countCallSites(unit, cnt);
+        cnt -= minimumSize(unit);
+        if (cnt <= 0) {
+          break;
+        }
+      }
+    }
+    else if (expansion instanceof Choice) {
+      for (Expansion choice : ((Choice) expansion).getChoices()) {
+        countCallSite(choice);
+      }
+    }
+    else if (expansion instanceof ZeroOrOne) {
+      countCallSite(((ZeroOrOne) expansion).expansion);
+    }
+    else if (expansion instanceof ZeroOrMore) {
+      countCallSite(((ZeroOrMore) expansion).expansion);
+    }
+    else if (expansion instanceof OneOrMore) {
+      // Called once before and once inside the loop.
+      countCallSite(((OneOrMore) expansion).expansion);
+      countCallSite(((OneOrMore) expansion).expansion);
+    }
+    else if (expansion instanceof TryBlock) {
+      countCallSites(((TryBlock) expansion).expansion, count);
+    }
+  }
+
+  private int callSites(Expansion expansion) {
+    Integer count = callSites.get(expansion);
+    return count != null ? count : 0;
+  }
+
+  private void countCallSite(Expansion expansion) {
+    callSites.put(expansion, callSites(expansion) + 1);
+  }
+
+  /**
+   * @return true if the phase 3 routine of the expansion may evaluate
+   *         semantic lookahead or reach a JAVACODE production.
+   */
+  private boolean scansMoreThanTokens(Expansion expansion, Set<NormalProduction> visited) {
+    if (expansion instanceof NonTerminal) {
+      NormalProduction production = state.bnfProductionsTable.get(((NonTerminal) expansion).getName());
+      if (production instanceof JavaCodeProduction) {
+        return true;
+      }
+      return visited.add(production)
+          && scansMoreThanTokens(production.getExpansion(), visited);
+    }
+    else if (expansion instanceof Sequence) {
+      for (Expansion unit : ((Sequence) expansion).units) {
+        if (scansMoreThanTokens(unit, visited)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    else if (expansion instanceof Choice) {
+      for (Expansion choice : ((Choice) expansion).getChoices()) {
+        Lookahead la = (Lookahead) ((Sequence) choice).units.get(0);
+        if (la.getActionTokens().size() != 0 || scansMoreThanTokens(choice, visited)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    else if (expansion instanceof ZeroOrOne) {
+      return scansMoreThanTokens(((ZeroOrOne) expansion).expansion, visited);
+    }
+    else if (expansion instanceof ZeroOrMore) {
+      return scansMoreThanTokens(((ZeroOrMore) expansion).expansion, visited);
+    }
+    else if (expansion instanceof OneOrMore) {
+      return scansMoreThanTokens(((OneOrMore) expansion).expansion, visited);
+    }
+    else if (expansion instanceof TryBlock) {
+      return scansMoreThanTokens(((TryBlock) expansion).expansion, visited);
+    }
+    else {
+      return false;
+    }
+  }
+
   /**
    * @return true if there is a JAVACODE production that the argument expansion
    *         may directly expand to (without consuming tokens or encountering lookahead).
@@ -343,6 +652,17 @@ public final class ParseEngine {
 
     out.indent();
 
+    // A call of an entry production while the failed choices are recorded
+    // stops recording them, the parse is replayed from it to report an error.
+    boolean entry = entries.contains(p);
+    if (entry) {
+      out.println();
+      out.println("boolean jj_lazy = jj_track;");
+      out.println("if (jj_lazy) { jj_track = false; jj_entry = " + (entries.indexOf(p) + 1)
+          + "; jj_checkpoint = token; jj_checkpointGen = jj_gen; }");
+      out.print("try {");
+    }
+
     if (Options.getDebugParser()) {
       out.println();
       out.println("trace_call(\"" + p.getLhs() + "\");");
@@ -359,6 +679,7 @@ public final class ParseEngine {
       tp.printTrailingComments(t);
     }
 
+    allocations = replayed.contains(p) ? new ArrayList<Integer>() : null;
     out.println(phase1ExpansionGen(p.getExpansion(), out));
 
     out.println();
@@ -373,11 +694,34 @@ public final class ParseEngine {
       out.println("}");
     }
 
+    if (entry) {
+      out.println("} finally {");
+      out.println("if (jj_lazy) { jj_track = true; jj_checkpoint = null; }");
+      out.println("}");
+    }
+
     out.unindent();
 
     out.println("}");
   }
 
+  /**
+   * The replay routine of a production consumes the tokens and decides the
+   * choices like the phase 1 routine, with the same switch statements and
+   * phase 2 routines, but it has no actions, parameters or return value.
+   */
+  private void buildReplayRoutine(BNFProduction p, IndentingPrintWriter out) {
+    out.println();
+    out.print("private void jj_replay_" + p.getLhs() + "() throws java.io.IOException, ParseException {");
+    out.indent();
+    reused = 0;
+    out.println(phase1ExpansionGen(p.getExpansion(), out));
+    reused = -1;
+    allocations = null;
+    out.unindent();
+    out.println("}");
+  }
+
   private String phase1ExpansionGen(Expansion expansion, IndentingPrintWriter out) {
     if (expansion instanceof NonTerminal) {
       return phase1_NonTerminal((NonTerminal) expansion, out);
@@ -412,6 +756,9 @@ public final class ParseEngine {
   }
 
   private String phase1_NonTerminal(NonTerminal expansion, IndentingPrintWriter out) {
+    if (reused >= 0) {
+      return "\njj_replay_" + expansion.getName() + "();";
+    }
     String s = "\n";
     if (expansion.getLhsTokens().size() != 0) {
       TokenPrinter tp = new TokenPrinter();
@@ -440,6 +787,9 @@ public final class ParseEngine {
   }
 
   private String phase1_Action(Action expansion, IndentingPrintWriter out) {
+    if (reused >= 0) {
+      return "";
+    }
     String s = "\n";
     if (expansion.getActionTokens().size() != 0) {
       TokenPrinter tp = new TokenPrinter();
@@ -457,7 +807,13 @@ public final class ParseEngine {
 
   private String phase1_RegularExpression(RegularExpression expansion, IndentingPrintWriter out) {
     String s = "\n";
-    if (expansion.lhsTokens.size() != 0) {
+    String call = "jj_consume_token(";
+    String tail = expansion.rhsToken == null ? ");" : ")." + expansion.rhsToken.getImage() + ";";
+    if (reused >= 0) {
+      call = "jj_consume_replayed(";
+      tail = ");";
+    }
+    else if (expansion.lhsTokens.size() != 0) {
       Token t = null;
       TokenPrinter tp = new TokenPrinter();
       tp.setup(expansion.lhsTokens.get(0));
@@ -468,18 +824,17 @@ public final class ParseEngine {
       s += tp.printTrailingComments(t);
       s += " = ";
     }
-    String tail = expansion.rhsToken == null ? ");" : ")." + expansion.rhsToken.getImage() + ";";
     if (expansion.label.equals("")) {
       String label = state.tokenNames.get(expansion.ordinal);
       if (label != null) {
-        s += "jj_consume_token(" + token(label) + tail;
+        s += call + token(label) + tail;
       }
       else {
-        s += "jj_consume_token(" + expansion.ordinal + tail;
+        s += call + expansion.ordinal + tail;
       }
     }
     else {
-      s += "jj_consume_token(" + token(expansion.label) + tail;
+      s += call + token(expansion.label) + tail;
     }
     return s;
   }
@@ -581,6 +936,9 @@ public final class ParseEngine {
   }
 
   private String phase1_TryBlock(TryBlock expansion, IndentingPrintWriter out) {
+    if (reused >= 0) {
+      return phase1ExpansionGen(expansion.expansion, out);
+    }
     String s = "\n";
     s += "try {";
     s += phase1ExpansionGen(expansion.expansion, out);
@@ -655,14 +1013,21 @@ public final class ParseEngine {
    * case, a noop is generated for that action.
    */
   private String buildLookaheadChecker(Lookahead[] lookaheads, String[] actions, IndentingPrintWriter out) {
+    if (Options.getLookaheadTables() && !Options.getDebugLookahead()) {
+      String retval = buildDecisionTable(lookaheads, actions);
+      if (retval != null) {
+        return retval;
+      }
+    }
+
     // The state variables.
     int state = NO_OPEN_STM;
     int indentAmt = 0;
     boolean[] casedValues = new boolean[this.state.tokenCount];
     String retval = "";
 
-    int tokenMaskSize = (this.state.tokenCount - 1) / 32 + 1;
-    int[] tokenMask = null;
+    int tokenMaskSize = (this.state.tokenCount - 1) / 64 + 1;
+    long[] tokenMask = null;
 
     // Iterate over all the conditions.
     int index = 0;
@@ -701,10 +1066,11 @@ public final class ParseEngine {
             case OPEN_SWITCH:
               retval += "\ndefault:";
               if (Options.getErrorReporting()) {
-                retval += "\njj_la1[" + maskIndex + "] = jj_gen;";
-                maskIndex++;
+                retval += "\n" + genFailedChoice(newMask(tokenMask));
+              }
+              else {
+                maskValues.add(tokenMask);
               }
-              maskValues.add(tokenMask);
               retval += "\nif (";
               indentAmt++;
           }
@@ -757,7 +1123,7 @@ public final class ParseEngine {
                 casedValues[i] = false;
               }
               indentAmt++;
-              tokenMask = new int[tokenMaskSize];
+              tokenMask = new long[tokenMaskSize];
               for (int i = 0; i < tokenMaskSize; i++) {
                 tokenMask[i] = 0;
               }
@@ -768,9 +1134,7 @@ public final class ParseEngine {
               if (!casedValues[i]) {
                 casedValues[i] = true;
                 retval += "\ncase ";
-                int j1 = i / 32;
-                int j2 = i % 32;
-                tokenMask[j1] |= 1 << j2;
+                tokenMask[i / 64] |= 1L << i;
                 String s = this.state.tokenNames.get(i);
                 if (s == null) {
                   retval += i;
@@ -807,18 +1171,15 @@ public final class ParseEngine {
           case OPEN_SWITCH:
             retval += "\ndefault:";
             if (Options.getErrorReporting()) {
-              retval += "\njj_la1[" + maskIndex + "] = jj_gen;";
-              maskIndex++;
+              retval += "\n" + genFailedChoice(newMask(tokenMask));
+            }
+            else {
+              maskValues.add(tokenMask);
             }
-            maskValues.add(tokenMask);
             retval += "\nif (";
             indentAmt++;
         }
-        jj2index++;
-        // At this point, la.la_expansion.internal_name must be "".
-        la.getLaExpansion().internalName = "_" + jj2index;
-        phase2list.add(la);
-        retval += "jj_2" + la.getLaExpansion().internalName + "(" + la.getAmount() + ")";
+        retval += "jj_2" + newPhase2Routine(la) + "(" + la.getAmount() + ")";
         if (la.getActionTokens().size() != 0) {
           // In addition, there is also a semantic lookahead.  So concatenate
           // the semantic check with the syntactic one.
@@ -853,9 +1214,7 @@ public final class ParseEngine {
       case OPEN_SWITCH:
         retval += "\ndefault:";
         if (Options.getErrorReporting()) {
-          retval += "\njj_la1[" + maskIndex + "] = jj_gen;";
-          maskValues.add(tokenMask);
-          maskIndex++;
+          retval += "\n" + genFailedChoice(newMask(tokenMask));
         }
         retval += actions[index];
     }
@@ -867,15 +1226,146 @@ public final class ParseEngine {
     return retval;
   }
 
+  /**
+   * Decide a choice point with a {@link DecisionTable}, if all its
+   * lookaheads are either of one token or of a few tokens, without
+   * semantic lookahead.  The code is the same as that of
+   * buildLookaheadChecker otherwise, except that the conditions are
+   * evaluated by a single method that returns the index of the action.
+   *
+   * @return The code of the choice point, or null if a table cannot be used.
+   */
+  private String buildDecisionTable(Lookahead[] lookaheads, String[] actions) {
+    List<Lookahead> conditions = new ArrayList<Lookahead>();
+    List<boolean[]> firstSets = new ArrayList<boolean[]>();
+    boolean syntactic = false;
+    for (Lookahead la : lookaheads) {
+      if (la.getActionTokens().size() != 0) {
+        return null;
+      }
+      if (la.getAmount() == 0
+          || semanticize.emptyExpansionExists(la.getLaExpansion())
+          || javaCodeCheck(la.getLaExpansion())) {
+        // The lookahead trivially succeeds, see buildLookaheadChecker.
+        break;
+      }
+      if (la.getAmount() == 1) {
+        boolean[] saved = firstSet;
+        firstSet = new boolean[state.tokenCount];
+        jj2LA = false;
+        genFirstSet(la.getLaExpansion());
+        firstSets.add(firstSet);
+        firstSet = saved;
+        if (jj2LA) {
+          return null;
+        }
+      }
+      else if (la.getAmount() <= DecisionTable.MAX_AMOUNT
+          && !scansMoreThanTokens(la.getLaExpansion(), new HashSet<NormalProduction>())) {
+        firstSets.add(null);
+        syntactic = true;
+      }
+      else {
+        return null;
+      }
+      conditions.add(la);
+    }
+    if (!syntactic) {
+      return null;
+    }
+    DecisionTable table = new DecisionTable(state, conditions, firstSets);
+    if (!table.build()) {
+      return null;
+    }
+
+    // Number the switch statements and the phase 2 routines in the
+    // same order as buildLookaheadChecker does, the phase 2 routines
+    // are still needed to rescan the lookaheads for error reporting.
+    int n = conditions.size();
+    int[] saveIndex = new int[n];
+    int[] tableMaskIndex = new int[n];
+    int tokenMaskSize = (state.tokenCount - 1) / 64 + 1;
+    long[] tokenMask = null;
+    for (int i = 0; i < n; i++) {
+      saveIndex[i] = -1;
+      tableMaskIndex[i] = -1;
+      boolean[] set = firstSets.get(i);
+      if (set != null) {
+        if (tokenMask == null) {
+          tokenMask = new long[tokenMaskSize];
+        }
+        for (int kind = 0; kind < state.tokenCount; kind++) {
+          if (set[kind]) {
+            tokenMask[kind / 64] |= 1L << kind;
+          }
+        }
+        if (i + 1 < n && firstSets.get(i + 1) == null) {
+          if (Options.getErrorReporting()) {
+            tableMaskIndex[i] = newMask(tokenMask);
+          }
+          else {
+            maskValues.add(tokenMask);
+          }
+          tokenMask = null;
+        }
+        else if (i + 1 == n && Options.getErrorReporting()) {
+          tableMaskIndex[i] = newMask(tokenMask);
+        }
+      }
+      else if (Options.getErrorReporting()) {
+        saveIndex[i] = Integer.parseInt(newPhase2Routine(conditions.get(i)).substring(1)) - 1;
+      }
+    }
+
+    // The replay routine calls the method of the phase 1 routine.
+    int number;
+    if (reused >= 0) {
+      number = allocations.get(reused++);
+    }
+    else {
+      number = decisionTables.size() + 1;
+      StringWriter buffer = new StringWriter();
+      IndentingPrintWriter out = MethodSizes.buffer(buffer);
+      table.print("jj_ll_" + number, saveIndex, tableMaskIndex,
+          Options.getCacheTokens() ? "jj_nt.getKind()" : "jj_ntk == -1 ? jj_ntk() : jj_ntk",
+          lazyErrorReporting, out);
+      out.flush();
+      decisionTables.add(buffer.toString());
+      if (allocations != null) {
+        allocations.add(number);
+      }
+    }
+    String name = "jj_ll_" + number;
+
+    String retval = "\nswitch (" + name + "()) {";
+    for (int i = 0; i < n; i++) {
+      retval += "\ncase " + i + ":" + actions[i] + "\nbreak;";
+    }
+    retval += "\ndefault:" + actions[n] + "\n}";
+    return retval;
+  }
+
   private void buildPhase2Routine(Lookahead la, IndentingPrintWriter out) {
     Expansion e = la.getLaExpansion();
     out.println("private boolean jj_2" + e.internalName + "(int xla) throws java.io.IOException {");
     out.indent();
     out.println("jj_la = xla; jj_lastPos = jj_scanPos = token;");
-    out.println("try { return !jj_3" + e.internalName + "(); }");
-    out.println("catch (LookaheadSuccess ls) { return true; }");
-    if (Options.getErrorReporting()) {
-      out.println("finally { jj_save(" + (Integer.parseInt(e.internalName.substring(1)) - 1) + ", xla); }");
+    if (returnCodes) {
+      if (Options.getErrorReporting()) {
+        out.println("boolean matched = jj_3" + e.internalName + "() != 1;");
+        out.println(genSave(e) + ";");
+        out.println("return matched;");
+      }
+      else {
+        out.println("return jj_3" + e.internalName + "() != 1;");
+      }
+    }
+    else {
+      out.println("try { return !jj_3" + e.internalName + "(); }");
+      out.println("catch (LookaheadSuccess ls) { return true; }");
+      if (Options.getErrorReporting()) {
+        out.println("finally { " + genSave(e) + "; }");
+      }
     }
     out.unindent();
     out.println("}");
@@ -885,21 +1375,102 @@ public final class ParseEngine {
     phase3table.put(e, p3d);
   }
 
+  /**
+   * @return The index of the mask of the tokens a switch statement expects,
+   *         the same as in the phase 1 routine for its replay routine.
+   */
+  private int newMask(long[] tokenMask) {
+    if (reused >= 0) {
+      return allocations.get(reused++);
+    }
+    maskValues.add(tokenMask);
+    if (allocations != null) {
+      allocations.add(maskIndex);
+    }
+    return maskIndex++;
+  }
+
+  /**
+   * @return The internal name of the phase 2 routine of the lookahead,
+   *         the same as in the phase 1 routine for its replay routine.
+   */
+  private String newPhase2Routine(Lookahead la) {
+    if (reused < 0) {
+      jj2index++;
+      // At this point, la.la_expansion.internal_name must be "".
+      la.getLaExpansion().internalName = "_" + jj2index;
+      phase2list.add(la);
+    }
+    return la.getLaExpansion().internalName;
+  }
+
+  /** @return The statement recording that the switch statement with the mask failed. */
+  private String genFailedChoice(int maskIndex) {
+    String s = "jj_la1[" + maskIndex + "] = jj_gen;";
+    return lazyErrorReporting ? "if (jj_track) " + s : s;
+  }
+
+  /** @return The statement recording the result of the phase 2 routine, without semicolon. */
+  private String genSave(Expansion e) {
+    String s = "jj_save(" + (Integer.parseInt(e.internalName.substring(1)) - 1) + ", xla)";
+    return lazyErrorReporting ? "if (jj_track) " + s : s;
+  }
+
   private boolean xspDeclared;
+  private boolean xstDeclared;
   private Expansion jj3_expansion;
 
   private String genReturn(boolean value) {
-    String s = value ? "true" : "false";
+    String s = returnCodes ? (value ? "1" : "0") : (value ? "true" : "false");
+    String tracecode = genTrace(value);
+    if (tracecode != null) {
+      return "{ " + tracecode + " return " + s + "; }";
+    }
+    else {
+      return "return " + s + ";";
+    }
+  }
+
+  private String genTrace(boolean value) {
     if (Options.getDebugLookahead() && jj3_expansion != null) {
       String tracecode = "trace_return(\"" + ((NormalProduction) jj3_expansion.parent).getLhs() +
           "(LOOKAHEAD " + (value ? "FAILED" : "SUCCEEDED") + ")\");";
       if (Options.getErrorReporting()) {
         tracecode = "if (!jj_rescan) " + tracecode;
       }
-      return "{ " + tracecode + " return " + s + "; }";
+      return tracecode;
     }
     else {
-      return "return " + s + ";";
+      return null;
+    }
+  }
+
+  /** Declare the status variable of a phase 3 routine, if not yet declared. */
+  private void declareStatus(IndentingPrintWriter out) {
+    if (!xstDeclared) {
+      xstDeclared = true;
+      out.println("int xst;");
+    }
+  }
+
+  /**
+   * Generate the statement testing the result of a phase 3 call, which
+   * returns from the current routine if the call did not match, or
+   * if it reached the lookahead limit.
+   */
+  private String genTest(String call) {
+    if (returnCodes) {
+      // Reaching the limit is not traced, as when LookaheadSuccess unwinds the routines.
+      String tracecode = genTrace(true);
+      if (tracecode != null) {
+        return "if ((xst = " + call + ") != 0) { if (xst == 1) " + tracecode + " return xst; }";
+      }
+      else {
+        return "if ((xst = " + call + ") != 0) return xst;";
+      }
+    }
+    else {
+      return "if (" + call + ") " + genReturn(true);
     }
   }
 
@@ -1010,9 +1581,42 @@ public final class ParseEngine {
       return;
     }
 
-    out.println("private boolean jj_3" + expansion.internalName + "() throws java.io.IOException {");
+    String type = returnCodes ? "int" : "boolean";
+    Integer memoId = memoIds.get(expansion);
+    if (memoId != null) {
+      out.println("private " + type + " jj_3" + expansion.internalName + "() throws java.io.IOException {");
+      out.indent();
+      out.println("int slot = jj_memo_find(" + memoId + ");");
+      if (returnCodes) {
+        out.println("if (slot >= 0) return jj_memo_replay(slot) ? 1 : 0;");
+      }
+      else {
+        out.println("if (slot >= 0) return jj_memo_replay(slot);");
+      }
+      out.println("int start = jj_scanPos.index, limit = jj_scanLimit;");
+      out.println("jj_scanLimit = start;");
+      if (returnCodes) {
+        // Reaching the lookahead limit ends the lookahead, there is no result to remember.
+        out.println("int status = jj_3" + expansion.internalName + "_scan();");
+        out.println("if (status != 2) jj_memo_put(" + memoId + ", start, status == 1 ? -1 : jj_scanPos.index);");
+      }
+      else {
+        out.println("boolean failed = jj_3" + expansion.internalName + "_scan();");
+        out.println("jj_memo_put(" + memoId + ", start, failed ? -1 : jj_scanPos.index);");
+      }
+      out.println("if (jj_scanLimit < limit) jj_scanLimit = limit;");
+      out.println(returnCodes ? "return status;" : "return failed;");
+      out.unindent();
+      out.println("}");
+      out.println();
+      out.println("private " + type + " jj_3" + expansion.internalName + "_scan() throws java.io.IOException {");
+    }
+    else {
+      out.println("private " + type + " jj_3" + expansion.internalName + "() throws java.io.IOException {");
+    }
     out.indent();
     xspDeclared = false;
+    xstDeclared = false;
     if (Options.getDebugLookahead() && expansion.parent instanceof NormalProduction) {
       if (Options.getErrorReporting()) {
         out.print("if (!jj_rescan) ");
@@ -1077,23 +1681,29 @@ public final class ParseEngine {
     else {
       Expansion nested = production.getExpansion();
       //out.println("if (jj_3" + nested.internal_name + "()) " + genReturn(true));
-      out.println("if (" + genjj_3Call(nested) + ") " + genReturn(true));
+      if (returnCodes) {
+        declareStatus(out);
+      }
+      out.println(genTest(genjj_3Call(nested)));
       //out.println("if (jj_la == 0 && jj_scanPos == jj_lastPos) " + genReturn(false));
     }
   }
 
   private void phase3_RegularExpression(RegularExpression expansion, IndentingPrintWriter out) {
+    if (returnCodes) {
+      declareStatus(out);
+    }
     if (expansion.label.equals("")) {
       String label = state.tokenNames.get(expansion.ordinal);
       if (label != null) {
-        out.println("if (jj_scan_token(" + token(label) + ")) " + genReturn(true));
+        out.println(genTest("jj_scan_token(" + token(label) + ")"));
       }
       else {
-        out.println("if (jj_scan_token(" + expansion.ordinal + ")) " + genReturn(true));
+        out.println(genTest("jj_scan_token(" + expansion.ordinal + ")"));
       }
     }
     else {
-      out.println("if (jj_scan_token(" + token(expansion.label) + ")) " + genReturn(true));
+      out.println(genTest("jj_scan_token(" + token(expansion.label) + ")"));
     }
     //out.println("if (jj_la == 0 && jj_scanPos == jj_lastPos) " + genReturn(false));
   }
@@ -1115,6 +1725,9 @@ public final class ParseEngine {
 
   private void phase3_Choice(Choice expansion, IndentingPrintWriter out)
       throws IOException {
+    if (returnCodes) {
+      declareStatus(out);
+    }
     if (expansion.getChoices().size() != 1) {
       if (!xspDeclared) {
         xspDeclared = true;
@@ -1141,6 +1754,20 @@ public final class ParseEngine {
         out.println(";");
         out.println("jj_lookingAhead = false;");
       }
+      if (returnCodes) {
+        String call = genjj_3Call(nested);
+        if (la.getActionTokens().size() != 0) {
+          call = "jj_semLA ? " + call + " : 1";
+        }
+        if (i != expansion.getChoices().size() - 1) {
+          out.println("if ((xst = " + call + ") == 1) {");
+          out.println("jj_scanPos = xsp;");
+        }
+        else {
+          out.println(genTest(call));
+        }
+        continue;
+      }
       out.print("if (");
       if (la.getActionTokens().size() != 0) {
         out.print("!jj_semLA || ");
@@ -1160,6 +1787,10 @@ public final class ParseEngine {
       //out.println("} else if (jj_la == 0 && jj_scanPos == jj_lastPos) " + genReturn(false));
       out.println("}");
     }
+    if (returnCodes && expansion.getChoices().size() != 1) {
+      // An alternative other than the last one may have reached the limit.
+      out.println("if (xst != 0) return xst;");
+    }
   }
 
   private void phase3_ZeroOrOne(ZeroOrOne expansion, IndentingPrintWriter out) {
@@ -1170,7 +1801,14 @@ public final class ParseEngine {
     Expansion nested = expansion.expansion;
     out.println("xsp = jj_scanPos;");
     //out.println("if (jj_3" + nested.internal_name + "()) jj_scanPos = xsp;");
-    out.println("if (" + genjj_3Call(nested) + ") jj_scanPos = xsp;");
+    if (returnCodes) {
+      declareStatus(out);
+      out.println("if ((xst = " + genjj_3Call(nested) + ") == 1) jj_scanPos = xsp;");
+      out.println("else if (xst != 0) return xst;");
+    }
+    else {
+      out.println("if (" + genjj_3Call(nested) + ") jj_scanPos = xsp;");
+    }
     //out.println("else if (jj_la == 0 && jj_scanPos == jj_lastPos) " + genReturn(false));
   }
 
@@ -1180,10 +1818,13 @@ public final class ParseEngine {
       out.println("Token xsp;");
     }
     Expansion nested = expansion.expansion;
+    if (returnCodes) {
+      declareStatus(out);
+    }
     out.println("while (true) {");
     out.println("xsp = jj_scanPos;");
     //out.println("if (jj_3" + nested.internal_name + "()) { jj_scanPos = xsp; break; }");
-    out.println("if (" + genjj_3Call(nested) + ") { jj_scanPos = xsp; break; }");
+    printLoopTest(nested, out);
     //out.println("if (jj_la == 0 && jj_scanPos == jj_lastPos) " + genReturn(false));
     out.println("}");
   }
@@ -1195,16 +1836,29 @@ public final class ParseEngine {
     }
     Expansion nested = expansion.expansion;
     //out.println("if (jj_3" + nested.internal_name + "()) " + genReturn(true));
-    out.println("if (" + genjj_3Call(nested) + ") " + genReturn(true));
+    if (returnCodes) {
+      declareStatus(out);
+    }
+    out.println(genTest(genjj_3Call(nested)));
     //out.println("if (jj_la == 0 && jj_scanPos == jj_lastPos) " + genReturn(false));
     out.println("while (true) {");
     out.println("xsp = jj_scanPos;");
     //out.println("if (jj_3" + nested.internal_name + "()) { jj_scanPos = xsp; break; }");
-    out.println("if (" + genjj_3Call(nested) + ") { jj_scanPos = xsp; break; }");
+    printLoopTest(nested, out);
     //out.println("if (jj_la == 0 && jj_scanPos == jj_lastPos) " + genReturn(false));
     out.println("}");
   }
 
+  private void printLoopTest(Expansion nested, IndentingPrintWriter out) {
+    if (returnCodes) {
+      out.println("if ((xst = " + genjj_3Call(nested) + ") == 1) { jj_scanPos = xsp; break; }");
+      out.println("if (xst != 0) return xst;");
+    }
+    else {
+      out.println("if (" + genjj_3Call(nested) + ") { jj_scanPos = xsp; break; }");
+    }
+  }
+
   private int minimumSize(Expansion expansion) {
     return minimumSize(expansion, Integer.MAX_VALUE);
   }
@@ -36,8 +36,17 @@ import java.util.List;
 
 /** Generate the parser. */
 final class ParserGen implements FileGenerator {
+  /**
+   * Number of tokens after which an entry production stops keeping the
+   * tokens to replay and records the failed choices itself, see
+   * {@link Options#getLazyErrorReporting()}.
+   */
+  static final int REPLAYED_TOKENS = 10000;
+
   private final JavaCCState state;
   private final Semanticize semanticize;
+  /** Whether the parser memoizes lookahead, and needs token indices. */
+  private boolean memoize;
 
   ParserGen(JavaCCState state, Semanticize semanticize) {
     this.state = state;
@@ -73,6 +82,7 @@ final class ParserGen implements FileGenerator {
 
     ParseEngine parseEngine = new ParseEngine(state, semanticize);
     parseEngine.build(out);
+    memoize = parseEngine.memoize;
 
     printBoilerplate(parseEngine, out);
 
@@ -105,6 +115,130 @@ final class ParserGen implements FileGenerator {
     out.println();
   }
 
+  /**
+   * @param t Code of a token.
+   * @return Code that links the next token from the scanner to the token.
+   */
+  private String nextToken(String t) {
+    return memoize ? "jj_next(" + t + ")" : t + ".next = " + scanToken();
+  }
+
+  /** @return Code that gets the next token from the scanner. */
+  private static String scanToken() {
+    return Options.getIncrementalParsing() ? "jj_scan()" : "scanner.getNextToken()";
+  }
+
+  /**
+   * Print the table of memoized lookahead results. Lookahead routines
+   * are identified by number, tokens by their index in the token stream.
+   * A result stays valid as long as the routine does not look at the
+   * tokens that end the current lookahead, since reaching them ends the
+   * lookahead with success.
+   */
+  private void printMemo(IndentingPrintWriter out) {
+    out.println("/** Memoized lookahead results, keyed by token index and routine. */");
+    out.println("private long[] jj_memoKeys = new long[256];");
+    out.println("/** Index of the token ending the match, or -1 if the routine failed. */");
+    out.println("private int[] jj_memoEnds = new int[256];");
+    out.println("/** Index of the furthest token the routine looked at. */");
+    out.println("private int[] jj_memoLimits = new int[256];");
+    out.println("private int jj_memoSize;");
+    out.println("/** Index of the furthest token looked at by the current lookahead routine. */");
+    out.println("private int jj_scanLimit;");
+    out.println();
+    out.println("private Token jj_next(Token t) throws java.io.IOException {");
+    out.indent();
+    out.println("Token next = t.next = " + scanToken() + ";");
+    out.println("next.index = t.index + 1;");
+    out.println("return next;");
+    out.unindent();
+    out.println("}");
+    out.println();
+    out.println("private int jj_memo_slot(long key) {");
+    out.indent();
+    out.println("int mask = jj_memoKeys.length - 1;");
+    out.println("int h = (int) (key ^ (key >>> 32)) * 0x9e3779b9;");
+    out.println("int slot = (h ^ (h >>> 16)) & mask;");
+    out.println("while (jj_memoKeys[slot] != 0 && jj_memoKeys[slot] != key) {");
+    out.indent();
+    out.println("slot = (slot + 1) & mask;");
+    out.unindent();
+    out.println("}");
+    out.println("return slot;");
+    out.unindent();
+    out.println("}");
+    out.println();
+    out.println("private int jj_memo_find(int routine) {");
+    out.indent();
+    if (Options.getErrorReporting()) {
+      out.println("if (jj_rescan) return -1;");
+    }
+    out.println("int slot = jj_memo_slot(((long) jj_scanPos.index << 32) | routine);");
+    out.println("if (jj_memoKeys[slot] == 0 || jj_memoLimits[slot] - jj_lastPos.index >= jj_la) return -1;");
+    out.println("return slot;");
+    out.unindent();
+    out.println("}");
+    out.println();
+    out.println("private boolean jj_memo_replay(int slot) {");
+    out.indent();
+    out.println("int limit = jj_memoLimits[slot];");
+    out.println("if (limit > jj_scanLimit) jj_scanLimit = limit;");
+    out.println("while (jj_lastPos.index < limit) { jj_la--; jj_lastPos = jj_lastPos.next; }");
+    if (Options.getIncrementalParsing()) {
+      out.println("jj_look(jj_lastPos);");
+    }
+    out.println("int end = jj_memoEnds[slot];");
+    out.println("if (end < 0) return true;");
+    out.println("while (jj_scanPos.index < end) jj_scanPos = jj_scanPos.next;");
+    out.println("return false;");
+    out.unindent();
+    out.println("}");
+    out.println();
+    out.println("private void jj_memo_put(int routine, int start, int end) {");
+    out.indent();
+    out.println("if ((jj_memoSize + 1) * 4 > jj_memoKeys.length * 3) jj_memo_rehash();");
+    out.println("long key = ((long) start << 32) | routine;");
+    out.println("int slot = jj_memo_slot(key);");
+    out.println("if (jj_memoKeys[slot] == 0) { jj_memoKeys[slot] = key; jj_memoSize++; }");
+    out.println("jj_memoEnds[slot] = end;");
+    out.println("jj_memoLimits[slot] = jj_scanLimit;");
+    out.unindent();
+    out.println("}");
+    out.println();
+    out.println("/** Drop the results for tokens before the current one, lookahead never goes back there. */");
+    out.println("private void jj_memo_rehash() {");
+    out.indent();
+    out.println("long[] keys = jj_memoKeys;");
+    out.println("int[] ends = jj_memoEnds;");
+    out.println("int[] limits = jj_memoLimits;");
+    out.println("int size = 0;");
+    out.println("for (int i = 0; i < keys.length; i++) {");
+    out.indent();
+    out.println("if (keys[i] != 0 && (int) (keys[i] >>> 32) >= token.index) size++;");
+    out.unindent();
+    out.println("}");
+    out.println("int capacity = size * 2 > keys.length ? keys.length * 2 : keys.length;");
+    out.println("jj_memoKeys = new long[capacity];");
+    out.println("jj_memoEnds = new int[capacity];");
+    out.println("jj_memoLimits = new int[capacity];");
+    out.println("jj_memoSize = size;");
+    out.println("for (int i = 0; i < keys.length; i++) {");
+    out.indent();
+    out.println("if (keys[i] != 0 && (int) (keys[i] >>> 32) >= token.index) {");
+    out.indent();
+    out.println("int slot = jj_memo_slot(keys[i]);");
+    out.println("jj_memoKeys[slot] = keys[i];");
+    out.println("jj_memoEnds[slot] = ends[i];");
+    out.println("jj_memoLimits[slot] = limits[i];");
+    out.unindent();
+    out.println("}");
+    out.unindent();
+    out.println("}");
+    out.unindent();
+    out.println("}");
+    out.println();
+  }
+
   private void printFooter(IndentingPrintWriter out)
       throws IOException {
     TokenPrinter tp = new TokenPrinter();
@@ -121,6 +255,361 @@ final class ParserGen implements FileGenerator {
     }
   }
 
+  /**
+   * Consumed tokens are released to the scanner only once no lookahead may
+   * be rescanned from them to report an error, see jj_rescan_token.
+   */
+  private static boolean releasesLater(ParseEngine parseEngine) {
+    return Options.getTokenPool() && Options.getErrorReporting() && parseEngine.jj2index != 0;
+  }
+
+  private void printFirstToken(IndentingPrintWriter out) {
+    if (Options.getTokenPool()) {
+      // The first token is released to the scanner as well,
+      // so it must be created by the same factory.
+      if (Options.getKeepImage()) {
+        out.println("token = Token.newToken(0, 0, 0, null);");
+      }
+      else {
+        out.println("token = Token.newToken(0, 0, 0);");
+      }
+    }
+    else if (Options.getKeepImage()) {
+      out.println("token = new Token(0, 0, 0, null);");
+    }
+    else {
+      out.println("token = new Token(0, 0, 0);");
+    }
+  }
+
+  private void printNextTokenInit(IndentingPrintWriter out) {
+    if (Options.getCacheTokens()) {
+      if (Options.getIncrementalParsing()) {
+        out.println("if ((jj_nt = token.next) == null) jj_nt = " + nextToken("token") + ";");
+        out.println("jj_look(jj_nt);");
+      }
+      else if (memoize) {
+        out.println("jj_nt = jj_next(token);");
+      }
+      else {
+        out.println("token.next = jj_nt = scanner.getNextToken();");
+      }
+    }
+    else {
+      out.println("jj_ntk = -1;");
+    }
+  }
+
+  private void printErrorReportingInit(ParseEngine parseEngine, IndentingPrintWriter out) {
+    out.println("jj_gen = 0;");
+    out.println("for (int i = 0; i < " + parseEngine.maskIndex + "; i++) jj_la1[i] = -1;");
+    if (parseEngine.jj2index != 0) {
+      out.println("for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+    }
+  }
+
+  /**
+   * Print the replay of a parse with lazy error reporting.  The parser does
+   * not record the failed choices and lookaheads after it calls an entry
+   * production, so when it generates a parse exception, it parses the
+   * tokens again from that call with the replay routines, which record
+   * them, up to the same token.  The replay routines have no actions, so
+   * the replay changes nothing but the records.  The parser records the
+   * choices after the exception, in case it recovers from it.
+   */
+  private void printReplay(ParseEngine parseEngine, IndentingPrintWriter out) {
+    out.println("/** Consume the token while the parse is replayed, up to the token the parse stopped after. */");
+    out.println("private void jj_consume_replayed(int kind) throws java.io.IOException, ParseException {");
+    out.indent();
+    out.println("Token oldToken = token;");
+    out.println("jj_consume_token(kind);");
+    out.println("if (oldToken == jj_stop) {");
+    out.indent();
+    out.println("// An action generated the exception before this token.");
+    out.println("token = oldToken;");
+    out.println("throw generateParseException();");
+    out.unindent();
+    out.println("}");
+    out.unindent();
+    out.println("}");
+    out.println();
+    out.println("/** @return The exception generated by the replay, or null if the replay stopped at another token. */");
+    out.println("private ParseException jj_replay() throws java.io.IOException {");
+    out.indent();
+    out.println("Token last = token;");
+    if (Options.getCacheTokens()) {
+      out.println("Token next = jj_nt;");
+    }
+    else {
+      out.println("int next = jj_ntk;");
+    }
+    out.println("int gen = jj_gen, kind = jj_kind;");
+    if (Options.getDebugParser()) {
+      out.println("boolean trace = trace_enabled;");
+      out.println("trace_enabled = false;");
+    }
+    out.println("jj_track = true;");
+    out.println("token = jj_checkpoint;");
+    out.println("jj_checkpoint = null;");
+    if (Options.getCacheTokens()) {
+      out.println("jj_nt = token.next;");
+    }
+    else {
+      out.println("jj_ntk = -1;");
+    }
+    out.println("jj_gen = jj_checkpointGen;");
+    out.println("jj_stop = last;");
+    out.println("ParseException replayed = null;");
+    out.println("try {");
+    out.indent();
+    out.println("switch (jj_entry) {");
+    for (int i = 0; i < parseEngine.entries.size(); i++) {
+      out.println("case " + (i + 1) + ": jj_replay_" + parseEngine.entries.get(i).getLhs() + "(); break;");
+    }
+    out.println("}");
+    out.unindent();
+    out.println("}");
+    out.println("catch (ParseException e) {");
+    out.indent();
+    out.println("// If it stopped elsewhere, the actions of the parse changed the tokens or the decisions.");
+    out.println("if (token == last) replayed = e;");
+    out.unindent();
+    out.println("}");
+    out.println("finally {");
+    out.indent();
+    out.println("jj_stop = null;");
+    out.println("token = last;");
+    out.println(Options.getCacheTokens() ? "jj_nt = next;" : "jj_ntk = next;");
+    out.println("jj_gen = gen;");
+    if (Options.getDebugParser()) {
+      out.println("trace_enabled = trace;");
+    }
+    out.unindent();
+    out.println("}");
+    out.println("if (replayed == null) {");
+    out.indent();
+    out.println("jj_kind = kind;");
+    out.println("for (int i = 0; i < " + parseEngine.maskIndex + "; i++) jj_la1[i] = -1;");
+    if (parseEngine.jj2index != 0) {
+      out.println("for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+    }
+    out.unindent();
+    out.println("}");
+    out.println("return replayed;");
+    out.unindent();
+    out.println("}");
+    out.println();
+  }
+
+  /**
+   * Print the parse of the input after an edit.  The new parser takes over
+   * the tokens of the previous one, scanning again from the last token
+   * the scanner started before reading the edited characters, up to the
+   * first token after the edit that it scans as before.  The tokens after
+   * it are moved by the length difference of the edit.  Node scopes of
+   * JJTree reuse the nodes of the previous parse over tokens the edit did
+   * not change, see {@link #jj_unchanged}, and continue after their
+   * last token with {@link #jj_skip}.
+   */
+  private void printReparse(ParseEngine parseEngine, IndentingPrintWriter out) {
+    String parserClass = state.parserClass();
+    out.println("/**");
+    out.println(" * Create a parser of the input after an edit, which takes over the tokens");
+    out.println(" * of this parser and scans again only those the edit may have changed.");
+    out.println(" * This parser and its tokens must not be used afterwards.  A lexical error");
+    out.println(" * in the edited characters is thrown by the parse, when it reaches them.");
+    out.println(" * The expected tokens of a parse error do not include those of productions");
+    out.println(" * reused from the parse of this parser.");
+    out.println(" *");
+    out.println(" * @param s        A new scanner of the edited input.");
+    out.println(" * @param offset   Index of the first character the edit changed.");
+    out.println(" * @param removed  Number of characters the edit removed.");
+    out.println(" * @param inserted Number of characters the edit inserted.");
+    out.println(" * @return A parser of the edited input, ready to parse from the start.");
+    out.println(" */");
+    out.println("public " + parserClass + " reparse(Scanner s, int offset, int removed, int inserted) throws java.io.IOException {");
+    out.indent();
+    out.println("return new " + parserClass + "(this, s, offset, removed, inserted);");
+    out.unindent();
+    out.println("}");
+    out.println();
+    out.println("private " + parserClass + "(" + parserClass + " previous, Scanner s, int offset, int removed, int inserted) throws java.io.IOException {");
+    out.indent();
+    out.println("scanner = s;");
+    printFirstToken(out);
+    out.println("jj_head = jj_reach = token;");
+    out.println("jj_previous = previous;");
+    out.println("previous.jj_previous = null;");
+    out.println("jj_rescan(previous.jj_head, offset, removed, inserted);");
+    printNextTokenInit(out);
+    if (Options.getErrorReporting()) {
+      printErrorReportingInit(parseEngine, out);
+    }
+    out.unindent();
+    out.println("}");
+    out.println();
+
+    out.println("private void jj_rescan(Token head, int offset, int removed, int inserted) throws java.io.IOException {");
+    out.indent();
+    out.println("int delta = inserted - removed;");
+    out.println("Token t = token, restart = null;");
+    out.println("for (Token next = head.next; next != null && next.getBegin() <= offset && next.getReach() <= offset; next = next.next) {");
+    out.indent();
+    out.println("if (restart != null) t = restart;");
+    out.println("restart = next;");
+    out.unindent();
+    out.println("}");
+    out.println("Token old = head.next, specials = null;");
+    out.println("if (restart != null) {");
+    out.indent();
+    out.println("token.next = head.next;");
+    out.println("old = restart;");
+    out.println("specials = restart.specialToken;");
+    out.println("jj_dirtyBegin = restart.getBegin();");
+    out.println("scanner.skipTo(restart);");
+    out.unindent();
+    out.println("}");
+    out.println("while (true) {");
+    out.indent();
+    out.println("Token n;");
+    out.println("try {");
+    out.indent();
+    out.println("n = scanner.getNextToken();");
+    out.unindent();
+    out.println("}");
+    out.println("catch (ScannerException e) {");
+    out.indent();
+    out.println("// Like a fresh parse, fail only when the parser reaches the token.");
+    out.println("t.next = null;");
+    out.println("jj_scanError = e;");
+    out.println("return;");
+    out.unindent();
+    out.println("}");
+    out.println("if (specials != null) {");
+    out.indent();
+    out.println("// The special tokens before the restart are not scanned again.");
+    out.println("Token first = n;");
+    out.println("while (first.specialToken != null) first = first.specialToken;");
+    out.println("if (first != n) specials.next = first;");
+    out.println("first.specialToken = specials;");
+    out.println("specials = null;");
+    out.unindent();
+    out.println("}");
+    out.println("while (old != null && (old.getBegin() < offset + removed || old.getBegin() + delta < n.getBegin())) old = old.next;");
+    out.println("if (old != null && old.getBegin() + delta == n.getBegin() && old.getEnd() + delta == n.getEnd()");
+    out.println("    && old.getKind() == n.getKind() && old.getLexicalState() == n.getLexicalState()) {");
+    out.indent();
+    out.println("// The scan continues from here as before the edit.");
+    out.println("t.next = old;");
+    out.println("old.specialToken = n.specialToken;");
+    out.println("jj_dirtyEnd = n.getBegin();");
+    if (memoize) {
+      out.println("old.index = t.index + 1;");
+    }
+    out.println("jj_shift(old, n, delta);");
+    out.println("return;");
+    out.unindent();
+    out.println("}");
+    if (memoize) {
+      out.println("n.index = t.index + 1;");
+    }
+    out.println("t = t.next = n;");
+    out.println("if (old == null || n.getKind() == 0) return;");
+    out.unindent();
+    out.println("}");
+    out.unindent();
+    out.println("}");
+    out.println();
+
+    out.println("/** Move the tokens from the first one the scanner matched again, and let the scanner continue after them. */");
+    out.println("private void jj_shift(Token first, Token scanned, int delta) throws java.io.IOException {");
+    out.indent();
+    if (Options.getKeepLineColumn()) {
+      out.println("int line = first.getLine();");
+      out.println("int lines = scanned.getLine() - line, columns = scanned.getColumn() - first.getColumn();");
+    }
+    out.println("int reach = scanned.getReach();");
+    out.println("Token last = first;");
+    out.println("for (Token t = first; t != null; t = t.next) {");
+    out.indent();
+    out.println("for (Token special = t == first ? null : t.specialToken; special != null; special = special.specialToken) {");
+    out.indent();
+    printShift("special", out);
+    out.unindent();
+    out.println("}");
+    printShift("t", out);
+    out.println("if (t.getReach() < reach) t.setScanState(t.getLexicalState(), reach);");
+    if (memoize) {
+      out.println("if (t != first) t.index = last.index + 1;");
+    }
+    out.println("last = t;");
+    out.unindent();
+    out.println("}");
+    out.println("if (last != first && last.getKind() != 0) {");
+    out.indent();
+    out.println("scanner.skipTo(last);");
+    out.println("scanner.getNextToken();");
+    out.unindent();
+    out.println("}");
+    out.unindent();
+    out.println("}");
+    out.println();
+
+    out.println("private Token jj_scan() throws java.io.IOException {");
+    out.indent();
+    out.println("if (jj_scanError != null) throw jj_scanError;");
+    out.println("return scanner.getNextToken();");
+    out.unindent();
+    out.println("}");
+    out.println();
+
+    out.println("private Token jj_look(Token t) {");
+    out.indent();
+    out.println("if (t.getBegin() >= jj_reach.getBegin()) jj_reach = t;");
+    out.println("return t;");
+    out.unindent();
+    out.println("}");
+    out.println();
+
+    out.println("/**");
+    out.println(" * @param first The first token a production looked at in the previous parse.");
+    out.println(" * @param reach The furthest token it looked at.");
+    out.println(" * @return Whether the edit changed none of the tokens between them.");
+    out.println(" */");
+    out.println("private boolean jj_unchanged(Token first, Token reach) {");
+    out.indent();
+    out.println("return reach.getBegin() < jj_dirtyBegin || first.getBegin() >= jj_dirtyEnd;");
+    out.unindent();
+    out.println("}");
+    out.println();
+
+    out.println("/** Continue the parse after the last token of a production reused from the previous parse. */");
+    out.println("private void jj_skip(Token last, Token reach) throws java.io.IOException {");
+    out.indent();
+    out.println("token = last;");
+    if (Options.getCacheTokens()) {
+      out.println("if ((jj_nt = token.next) == null) jj_nt = " + nextToken("token") + ";");
+    }
+    else {
+      out.println("jj_ntk = -1;");
+    }
+    out.println("jj_look(reach);");
+    if (Options.getErrorReporting()) {
+      out.println("jj_gen++;");
+    }
+    out.unindent();
+    out.println("}");
+    out.println();
+  }
+
+  private void printShift(String t, IndentingPrintWriter out) {
+    out.println(t + ".shift(delta);");
+    if (Options.getKeepLineColumn()) {
+      out.println("if (" + t + ".getLine() == line) " + t + ".setLineColumn(line + lines, " + t + ".getColumn() + columns);");
+      out.println("else " + t + ".setLineColumn(" + t + ".getLine() + lines, " + t + ".getColumn());");
+    }
+  }
+
   private void printBoilerplate(ParseEngine parseEngine, IndentingPrintWriter out) {
     out.println("/** Either generated or user defined scanner. */");
     out.println("protected final Scanner scanner;");
@@ -145,13 +634,13 @@ final class ParserGen implements FileGenerator {
     if (Options.getErrorReporting()) {
       out.println("private int jj_gen;");
       out.println("private final int[] jj_la1 = new int[" + parseEngine.maskIndex + "];");
-      int tokenMaskSize = (state.tokenCount - 1) / 32 + 1;
+      int tokenMaskSize = (state.tokenCount - 1) / 64 + 1;
       for (int i = 0; i < tokenMaskSize; i++) {
-        out.print("private static final int[] jj_la1_" + i + " = new int[] {");
+        out.print("private static final long[] jj_la1_" + i + " = new long[] {");
         out.indent();
         IndentingPrintWriter.ListPrinter list = out.list(", ");
-        for (int[] tokenMask : parseEngine.maskValues) {
-          list.item("0x" + Integer.toHexString(tokenMask[i]));
+        for (long[] tokenMask : parseEngine.maskValues) {
+          list.item("0x" + Long.toHexString(tokenMask[i]) + "L");
         }
         out.println("};");
         out.unindent();
@@ -161,49 +650,87 @@ final class ParserGen implements FileGenerator {
       out.println("private final JJCalls[] jj_2_rtns = new JJCalls[" + parseEngine.jj2index + "];");
       out.println("private boolean jj_rescan = false;");
       out.println("private int jj_gc = 0;");
+      if (Options.getTokenPool()) {
+        out.println("/** The oldest consumed token that is not released yet. */");
+        out.println("private Token jj_unreleased;");
+      }
+    }
+    if (parseEngine.lazyErrorReporting) {
+      out.println("/** Whether the failed choices and lookaheads are recorded, except in an entry production that can be replayed. */");
+      out.println("private boolean jj_track = true;");
+      out.println("/** The entry production called, and the token and generation before it, where the parse is replayed from. */");
+      out.println("private int jj_entry;");
+      out.println("private Token jj_checkpoint;");
+      out.println("private int jj_checkpointGen;");
+      out.println("/** The token the replayed parse stopped after. */");
+      out.println("private Token jj_stop;");
+    }
+    if (Options.getIncrementalParsing()) {
+      out.println("/** The token before the first one, and the furthest token looked at. */");
+      out.println("private final Token jj_head;");
+      out.println("private Token jj_reach;");
+      out.println("/** The parser of the input before the edit, see reparse. */");
+      out.println("private " + state.parserClass() + " jj_previous;");
+      out.println("/** The tokens the edit did not change end before the first index and start at the second. */");
+      out.println("private int jj_dirtyBegin, jj_dirtyEnd = Integer.MAX_VALUE;");
+      out.println("/** The lexical error the scan of the edit ended with, thrown when the parse reaches it. */");
+      out.println("private ScannerException jj_scanError;");
     }
     out.println();
 
     out.println("public " + state.parserClass() + "(Scanner s) throws java.io.IOException, ParseException {");
     out.indent();
     out.println("scanner = s;");
-    if (Options.getKeepImage()) {
-      out.println("token = new Token(0, 0, 0, null);");
-    }
-    else {
-      out.println("token = new Token(0, 0, 0);");
-    }
-    if (Options.getCacheTokens()) {
-      out.println("token.next = jj_nt = scanner.getNextToken();");
+    printFirstToken(out);
+    if (Options.getIncrementalParsing()) {
+      out.println("jj_head = jj_reach = token;");
     }
-    else {
-      out.println("jj_ntk = -1;");
+    if (releasesLater(parseEngine)) {
+      out.println("jj_unreleased = token;");
     }
+    printNextTokenInit(out);
     if (Options.getErrorReporting()) {
-      out.println("jj_gen = 0;");
-      out.println("for (int i = 0; i < " + parseEngine.maskIndex + "; i++) jj_la1[i] = -1;");
-      if (parseEngine.jj2index != 0) {
-        out.println("for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
-      }
+      printErrorReportingInit(parseEngine, out);
     }
     out.unindent();
     out.println("}");
     out.println();
+    if (Options.getIncrementalParsing()) {
+      printReparse(parseEngine, out);
+    }
     out.println("private Token jj_consume_token(int kind) throws java.io.IOException, ParseException {");
     if (Options.getCacheTokens()) {
       out.println("Token oldToken = token;");
       out.println("if ((token = jj_nt).next != null) { jj_nt = jj_nt.next; }");
-      out.println("else { jj_nt = jj_nt.next = scanner.getNextToken(); }");
+      out.println("else { jj_nt = " + nextToken("jj_nt") + "; }");
+      if (Options.getIncrementalParsing()) {
+        out.println("jj_look(jj_nt);");
+      }
     }
     else {
       out.println("Token oldToken = token;");
       out.println("if (token.next != null) { token = token.next; }");
-      out.println("else { token = token.next = scanner.getNextToken(); }");
+      out.println("else { token = " + nextToken("token") + "; }");
       out.println("jj_ntk = -1;");
+      if (Options.getIncrementalParsing()) {
+        out.println("jj_look(token);");
+      }
     }
     out.println("if (token.getKind() == kind) {");
+    if (Options.getTokenPool() && !releasesLater(parseEngine)) {
+      out.println("scanner.release(oldToken);");
+    }
     if (Options.getErrorReporting()) {
       out.println("jj_gen++;");
+      if (parseEngine.lazyErrorReporting) {
+        // The tokens after the checkpoint are kept for the replay up to a limit.
+        out.println("if (!jj_track) {");
+        out.println("if (jj_gen - jj_checkpointGen > " + REPLAYED_TOKENS + ") { jj_track = true; jj_checkpoint = null; }");
+        out.println("}");
+        if (parseEngine.jj2index != 0) {
+          out.print("else ");
+        }
+      }
       if (parseEngine.jj2index != 0) {
         out.println("if (++jj_gc > 100) {");
         out.println("jj_gc = 0;");
@@ -214,6 +741,9 @@ final class ParserGen implements FileGenerator {
         out.println("c = c.next;");
         out.println("}");
         out.println("}");
+        if (Options.getTokenPool()) {
+          out.println("jj_release();");
+        }
         out.println("}");
       }
     }
@@ -233,24 +763,36 @@ final class ParserGen implements FileGenerator {
     out.println("}");
     out.println();
     if (parseEngine.jj2index != 0) {
-      out.println("@SuppressWarnings(\"serial\")");
-      out.println("private static final class LookaheadSuccess extends Error {");
-      out.println("public Throwable fillInStackTrace() { return null; }");
-      out.println("public StackTraceElement[] getStackTrace() { return null; }");
-      out.println("public void setStackTrace(StackTraceElement[] stackTrace) {}");
-      out.println("}");
-      out.println("private final LookaheadSuccess jj_ls = new LookaheadSuccess();");
-      out.println("private boolean jj_scan_token(int kind) throws java.io.IOException {");
+      if (Options.getReturnCodeLookahead()) {
+        out.println("/** @return 0 if the token matched, 1 if it did not, 2 if it matched and ended the lookahead. */");
+        out.println("private int jj_scan_token(int kind) throws java.io.IOException {");
+      }
+      else {
+        out.println("@SuppressWarnings(\"serial\")");
+        out.println("private static final class LookaheadSuccess extends Error {");
+        out.println("public Throwable fillInStackTrace() { return null; }");
+        out.println("public StackTraceElement[] getStackTrace() { return null; }");
+        out.println("public void setStackTrace(StackTraceElement[] stackTrace) {}");
+        out.println("}");
+        out.println("private final LookaheadSuccess jj_ls = new LookaheadSuccess();");
+        out.println("private boolean jj_scan_token(int kind) throws java.io.IOException {");
+      }
       out.println("if (jj_scanPos == jj_lastPos) {");
       out.println("jj_la--;");
       out.println("if (jj_scanPos.next == null) {");
-      out.println("jj_lastPos = jj_scanPos = jj_scanPos.next = scanner.getNextToken();");
+      out.println("jj_lastPos = jj_scanPos = " + nextToken("jj_scanPos") + ";");
       out.println("} else {");
       out.println("jj_lastPos = jj_scanPos = jj_scanPos.next;");
       out.println("}");
       out.println("} else {");
       out.println("jj_scanPos = jj_scanPos.next;");
       out.println("}");
+      if (memoize) {
+        out.println("if (jj_scanPos.index > jj_scanLimit) jj_scanLimit = jj_scanPos.index;");
+      }
+      if (Options.getIncrementalParsing()) {
+        out.println("jj_look(jj_scanPos);");
+      }
       if (Options.getErrorReporting()) {
         out.println("if (jj_rescan) {");
         out.println("int i = 0; Token t = token;");
@@ -265,23 +807,45 @@ final class ParserGen implements FileGenerator {
       else if (Options.getDebugLookahead()) {
         out.println("trace_scan(jj_scanPos, kind);");
       }
-      out.println("if (jj_scanPos.getKind() != kind) return true;");
-      out.println("if (jj_la == 0 && jj_scanPos == jj_lastPos) throw jj_ls;");
-      out.println("return false;");
+      if (Options.getReturnCodeLookahead()) {
+        out.println("if (jj_scanPos.getKind() != kind) return 1;");
+        out.println("if (jj_la == 0 && jj_scanPos == jj_lastPos) return 2;");
+        out.println("return 0;");
+      }
+      else {
+        out.println("if (jj_scanPos.getKind() != kind) return true;");
+        out.println("if (jj_la == 0 && jj_scanPos == jj_lastPos) throw jj_ls;");
+        out.println("return false;");
+      }
       out.println("}");
       out.println();
+      if (memoize) {
+        printMemo(out);
+      }
     }
     out.println();
     out.println("/** Get the next Token. */");
     out.println("protected final Token getNextToken() throws java.io.IOException {");
+    if (Options.getTokenPool() && !releasesLater(parseEngine)) {
+      out.println("Token oldToken = token;");
+    }
     if (Options.getCacheTokens()) {
       out.println("if ((token = jj_nt).next != null) jj_nt = jj_nt.next;");
-      out.println("else jj_nt = jj_nt.next = scanner.getNextToken();");
+      out.println("else jj_nt = " + nextToken("jj_nt") + ";");
+      if (Options.getIncrementalParsing()) {
+        out.println("jj_look(jj_nt);");
+      }
     }
     else {
       out.println("if (token.next != null) token = token.next;");
-      out.println("else token = token.next = scanner.getNextToken();");
+      out.println("else token = " + nextToken("token") + ";");
       out.println("jj_ntk = -1;");
+      if (Options.getIncrementalParsing()) {
+        out.println("jj_look(token);");
+      }
+    }
+    if (Options.getTokenPool() && !releasesLater(parseEngine)) {
+      out.println("scanner.release(oldToken);");
     }
     if (Options.getErrorReporting()) {
       out.println("jj_gen++;");
@@ -302,29 +866,90 @@ final class ParserGen implements FileGenerator {
     }
     out.println("for (int i = 0; i < index; i++) {");
     out.println("if (t.next != null) t = t.next;");
-    out.println("else t = t.next = scanner.getNextToken();");
+    out.println("else t = " + nextToken("t") + ";");
     out.println("}");
-    out.println("return t;");
+    out.println(Options.getIncrementalParsing() ? "return jj_look(t);" : "return t;");
     out.println("}");
     out.println();
     if (!Options.getCacheTokens()) {
       out.println("private int jj_ntk() throws java.io.IOException {");
-      out.println("if ((jj_nt = token.next) == null)");
-      out.println("return (jj_ntk = (token.next = scanner.getNextToken()).getKind());");
-      out.println("else");
-      out.println("return (jj_ntk = jj_nt.getKind());");
+      if (Options.getIncrementalParsing()) {
+        out.println("if ((jj_nt = token.next) == null) jj_nt = " + nextToken("token") + ";");
+        out.println("return (jj_ntk = jj_look(jj_nt).getKind());");
+      }
+      else {
+        out.println("if ((jj_nt = token.next) == null)");
+        out.println("return (jj_ntk = (" + nextToken("token") + ").getKind());");
+        out.println("else");
+        out.println("return (jj_ntk = jj_nt.getKind());");
+      }
       out.println("}");
       out.println();
     }
     if (Options.getErrorReporting()) {
       if (!Options.getGenerateGenerics()) {
-        out.println("private java.util.List jj_expentries = new java.util.ArrayList();");
+        out.println("private final java.util.List jj_expentries = new java.util.ArrayList();");
       }
       else {
         out.println("private final java.util.List<int[]> jj_expentries = new java.util.ArrayList<int[]>();");
       }
-      out.println("private int[] jj_expentry;");
+      out.println("/** Hash table of the indexes of the expected token sequences plus one, 0 for empty slots. */");
+      out.println("private int[] jj_expslots = new int[32];");
       out.println("private int jj_kind = -1;");
+      out.println();
+      out.println("/**");
+      out.println(" * Add an expected token sequence unless it is already there.  The tokens");
+      out.println(" * are copied unless the array has the length of the sequence.");
+      out.println(" */");
+      out.println("private void jj_add_expentry(int[] tokens, int length) {");
+      out.indent();
+      out.println("if ((jj_expentries.size() + 1) * 2 > jj_expslots.length) {");
+      out.indent();
+      out.println("jj_expslots = new int[jj_expslots.length * 2];");
+      out.println("for (int i = 0; i < jj_expentries.size(); i++) {");
+      out.indent();
+      out.println("int[] entry = (int[]) jj_expentries.get(i);");
+      out.println("jj_expslots[jj_expslot(entry, entry.length)] = i + 1;");
+      out.unindent();
+      out.println("}");
+      out.unindent();
+      out.println("}");
+      out.println("int slot = jj_expslot(tokens, length);");
+      out.println("if (jj_expslots[slot] == 0) {");
+      out.indent();
+      out.println("int[] entry = tokens;");
+      out.println("if (tokens.length != length) {");
+      out.indent();
+      out.println("entry = new int[length];");
+      out.println("System.arraycopy(tokens, 0, entry, 0, length);");
+      out.unindent();
+      out.println("}");
+      out.println("jj_expentries.add(entry);");
+      out.println("jj_expslots[slot] = jj_expentries.size();");
+      out.unindent();
+      out.println("}");
+      out.unindent();
+      out.println("}");
+      out.println();
+      out.println("/** @return The slot of the equal sequence, or the empty slot to put the sequence in. */");
+      out.println("private int jj_expslot(int[] tokens, int length) {");
+      out.indent();
+      out.println("int h = length;");
+      out.println("for (int i = 0; i < length; i++) h = h * 31 + tokens[i];");
+      out.println("int mask = jj_expslots.length - 1;");
+      out.println("int slot = (h * 0x9e3779b9 >>> 16) & mask;");
+      out.println("for (int index; (index = jj_expslots[slot]) != 0; slot = (slot + 1) & mask) {");
+      out.indent();
+      out.println("int[] entry = (int[]) jj_expentries.get(index - 1);");
+      out.println("if (entry.length != length) continue;");
+      out.println("int i = 0;");
+      out.println("while (i < length && entry[i] == tokens[i]) i++;");
+      out.println("if (i == length) break;");
+      out.unindent();
+      out.println("}");
+      out.println("return slot;");
+      out.unindent();
+      out.println("}");
       if (parseEngine.jj2index != 0) {
         out.println("private int[] jj_lasttokens = new int[100];");
         out.println("private int jj_endpos;");
@@ -334,60 +959,41 @@ final class ParserGen implements FileGenerator {
         out.println("if (pos == jj_endpos + 1) {");
         out.println("jj_lasttokens[jj_endpos++] = kind;");
         out.println("} else if (jj_endpos != 0) {");
-        out.println("jj_expentry = new int[jj_endpos];");
-        out.println("for (int i = 0; i < jj_endpos; i++) {");
-        out.println("jj_expentry[i] = jj_lasttokens[i];");
-        out.println("}");
-        if (!Options.getGenerateGenerics()) {
-          out.println("jj_entries_loop: for (java.util.Iterator it = jj_expentries.iterator(); it.hasNext();) {");
-        }
-        else {
-          out.println("jj_entries_loop: for (java.util.Iterator<?> it = jj_expentries.iterator(); it.hasNext();) {");
-        }
-        out.println("int[] oldentry = (int[])(it.next());");
-        out.println("if (oldentry.length == jj_expentry.length) {");
-        out.println("for (int i = 0; i < jj_expentry.length; i++) {");
-        out.println("if (oldentry[i] != jj_expentry[i]) {");
-        out.println("continue jj_entries_loop;");
-        out.println("}");
-        out.println("}");
-        out.println("jj_expentries.add(jj_expentry);");
-        out.println("break jj_entries_loop;");
-        out.println("}");
-        out.println("}");
+        out.println("jj_add_expentry(jj_lasttokens, jj_endpos);");
         out.println("if (pos != 0) jj_lasttokens[(jj_endpos = pos) - 1] = kind;");
         out.println("}");
         out.println("}");
       }
       out.println();
+      if (parseEngine.lazyErrorReporting) {
+        printReplay(parseEngine, out);
+      }
       out.println("/** Generate ParseException. */");
       out.println("public ParseException generateParseException() throws java.io.IOException {");
+      if (parseEngine.lazyErrorReporting) {
+        out.println("if (!jj_track) {");
+        out.println("ParseException replayed = jj_replay();");
+        out.println("if (replayed != null) return replayed;");
+        out.println("}");
+      }
+      int tokenMaskSize = (state.tokenCount - 1) / 64 + 1;
       out.println("jj_expentries.clear();");
-      out.println("boolean[] la1tokens = new boolean[" + state.tokenCount + "];");
+      out.println("java.util.Arrays.fill(jj_expslots, 0);");
+      out.println("long[] expected = new long[" + tokenMaskSize + "];");
       out.println("if (jj_kind >= 0) {");
-      out.println("la1tokens[jj_kind] = true;");
+      out.println("expected[jj_kind >>> 6] |= 1L << jj_kind;");
       out.println("jj_kind = -1;");
       out.println("}");
       out.println("for (int i = 0; i < " + parseEngine.maskIndex + "; i++) {");
       out.println("if (jj_la1[i] == jj_gen) {");
-      out.println("for (int j = 0; j < 32; j++) {");
-      for (int i = 0; i < (state.tokenCount - 1) / 32 + 1; i++) {
-        out.println("if ((jj_la1_" + i + "[i] & (1<<j)) != 0) {");
-        out.print("la1tokens[");
-        if (i != 0) {
-          out.print((32 * i) + "+");
-        }
-        out.println("j] = true;");
-        out.println("}");
+      for (int i = 0; i < tokenMaskSize; i++) {
+        out.println("expected[" + i + "] |= jj_la1_" + i + "[i];");
       }
       out.println("}");
       out.println("}");
-      out.println("}");
-      out.println("for (int i = 0; i < " + state.tokenCount + "; i++) {");
-      out.println("if (la1tokens[i]) {");
-      out.println("jj_expentry = new int[1];");
-      out.println("jj_expentry[0] = i;");
-      out.println("jj_expentries.add(jj_expentry);");
+      out.println("for (int i = 0; i < " + tokenMaskSize + "; i++) {");
+      out.println("for (long bits = expected[i]; bits != 0; bits &= bits - 1) {");
+      out.println("jj_add_expentry(new int[] {(i << 6) + Long.numberOfTrailingZeros(bits)}, 1);");
       out.println("}");
       out.println("}");
       if (parseEngine.jj2index != 0) {
@@ -496,24 +1102,58 @@ final class ParserGen implements FileGenerator {
       out.println("private void jj_rescan_token() throws java.io.IOException {");
       out.println("jj_rescan = true;");
       out.println("for (int i = 0; i < " + parseEngine.jj2index + "; i++) {");
-      out.println("try {");
+      if (!Options.getReturnCodeLookahead()) {
+        out.println("try {");
+      }
       out.println("JJCalls p = jj_2_rtns[i];");
       out.println("do {");
       out.println("if (p.gen > jj_gen) {");
       out.println("jj_la = p.arg; jj_lastPos = jj_scanPos = p.first;");
-      out.println("switch (i) {");
-      for (int i = 0; i < parseEngine.jj2index; i++) {
-        out.println("case " + i + ": jj_3_" + (i + 1) + "(); break;");
+      if (Options.getReturnCodeLookahead()) {
+        out.println("int status = 0;");
+        out.println("switch (i) {");
+        for (int i = 0; i < parseEngine.jj2index; i++) {
+          out.println("case " + i + ": status = jj_3_" + (i + 1) + "(); break;");
+        }
+        out.println("}");
+        // Stop at the same point as when LookaheadSuccess is thrown.
+        out.println("if (status == 2) break;");
+      }
+      else {
+        out.println("switch (i) {");
+        for (int i = 0; i < parseEngine.jj2index; i++) {
+          out.println("case " + i + ": jj_3_" + (i + 1) + "(); break;");
+        }
+        out.println("}");
       }
-      out.println("}");
       out.println("}");
       out.println("p = p.next;");
       out.println("} while (p != null);");
-      out.println("} catch(LookaheadSuccess ls) {}");
+      if (!Options.getReturnCodeLookahead()) {
+        out.println("} catch(LookaheadSuccess ls) {}");
+      }
       out.println("}");
       out.println("jj_rescan = false;");
       out.println("}");
       out.println();
+      if (Options.getTokenPool()) {
+        out.println("/** Release the consumed tokens up to the first one a lookahead may be rescanned from. */");
+        out.println("private void jj_release() {");
+        out.indent();
+        out.println("while (jj_unreleased != token) {");
+        out.println("for (int i = 0; i < jj_2_rtns.length; i++) {");
+        out.println("for (JJCalls c = jj_2_rtns[i]; c != null; c = c.next) {");
+        out.println("if (c.first == jj_unreleased) return;");
+        out.println("}");
+        out.println("}");
+        out.println("Token t = jj_unreleased;");
+        out.println("jj_unreleased = t.next;");
+        out.println("scanner.release(t);");
+        out.println("}");
+        out.unindent();
+        out.println("}");
+        out.println();
+      }
       out.println("private void jj_save(int index, int xla) throws java.io.IOException {");
       out.indent();
       out.println("JJCalls p = jj_2_rtns[index];");
@@ -76,6 +76,7 @@ final class ScannerGen implements FileGenerator {
   NfaState initialState;
   int curKind;
   boolean hasSkipActions;
+  boolean hasSpecialActions;
   boolean hasMoreActions;
   boolean hasTokenActions;
   boolean hasSpecial;
@@ -83,9 +84,15 @@ final class ScannerGen implements FileGenerator {
   boolean hasMore;
   RegularExpression curRE;
   boolean keepLineCol;
-  public static boolean keepImage;
+  boolean lineTable;
+  boolean tokenPool;
+  boolean incremental;
+  boolean dfa;
+  boolean keepImage;
   final NfaStates nfaStates = new NfaStates();
   final StringLiterals stringLiterals = new StringLiterals();
+  final DfaStates dfaStates = new DfaStates();
+  final MethodSizes methodSizes = new MethodSizes();
 
   ScannerGen(JavaCCState state) {
     this.state = state;
@@ -115,7 +122,12 @@ final class ScannerGen implements FileGenerator {
 
   private void generate(IndentingPrintWriter out) throws IOException {
     keepLineCol = Options.getKeepLineColumn();
+    lineTable = keepLineCol && Options.getLineTable();
+    tokenPool = Options.getTokenPool();
+    incremental = Options.getIncrementalParsing();
+    dfa = Options.getScannerBackend().equals("DFA");
     keepImage = Options.getKeepImage();
+    methodSizes.reInit();
     ArrayList choices = new ArrayList();
 
     printClassHead(out);
@@ -171,6 +183,14 @@ final class ScannerGen implements FileGenerator {
             if (i != 0 && !mixed[lexStateIndex] && ignoring != ignore) {
               mixed[lexStateIndex] = true;
             }
+            if (dfa) {
+              // The DFA backend matches string literals together with
+              // all other regular expressions of the lexical state.
+              Nfa temp = curRE.generateNfa(this, ignore);
+              temp.end.isFinal = true;
+              temp.end.kind = curRE.ordinal;
+              initialState.addMove(temp.start);
+            }
           }
           else if (curRE.canMatchAnyChar()) {
             if (canMatchAnyChar[lexStateIndex] == -1
@@ -215,6 +235,7 @@ final class ScannerGen implements FileGenerator {
               hasSkipActions |= (actions[curRE.ordinal] != null) ||
                   (newLexState[curRE.ordinal] != null);
               hasSpecial = true;
+              hasSpecialActions |= (actions[curRE.ordinal] != null);
               toSpecial[curRE.ordinal / 64] |= 1L << (curRE.ordinal % 64);
               curRE.toSpecial = true;
               toSkip[curRE.ordinal / 64] |= 1L << (curRE.ordinal % 64);
@@ -252,13 +273,15 @@ final class ScannerGen implements FileGenerator {
       // Generate a static block for initializing the nfa transitions
       nfaStates.computeClosures();
 
-      for (int i = 0; i < initialState.epsilonMoves.size(); i++) {
-        ((NfaState) initialState.epsilonMoves.elementAt(i)).generateCode();
-      }
+      if (!dfa) {
+        for (int i = 0; i < initialState.epsilonMoves.size(); i++) {
+          ((NfaState) initialState.epsilonMoves.elementAt(i)).generateCode();
+        }
 
-      if (hasNfa[lexStateIndex] = (nfaStates.generatedStates != 0)) {
-        initialState.generateCode();
-        initialState.generateInitMoves(out);
+        if (hasNfa[lexStateIndex] = (nfaStates.generatedStates != 0)) {
+          initialState.generateCode();
+          initialState.generateInitMoves(out);
+        }
       }
 
       if (initialState.kind != Integer.MAX_VALUE && initialState.kind != 0) {
@@ -283,6 +306,11 @@ final class ScannerGen implements FileGenerator {
         initMatch[lexStateIndex] = Integer.MAX_VALUE;
       }
 
+      if (dfa) {
+        dfaStates.build(this, initialState);
+        continue;
+      }
+
       stringLiterals.FillSubString(this);
 
       if (hasNfa[lexStateIndex] && !mixed[lexStateIndex]) {
@@ -304,15 +332,20 @@ final class ScannerGen implements FileGenerator {
       ((RChoice) choice).checkUnmatchability(this);
     }
 
-    nfaStates.dumpStateSets(out);
     checkEmptyStringMatch();
-    nfaStates.dumpNonAsciiMoveMethods(out);
+    if (dfa) {
+      dfaStates.dump(this, out);
+    }
+    else {
+      nfaStates.dumpStateSets(out);
+      nfaStates.dumpNonAsciiMoveMethods(out);
+    }
     stringLiterals.dumpStrLiteralImages(this, out);
     dumpStaticVarDeclarations(out);
     dumpMakeToken(out);
     dumpGetNextToken(out);
 
-    if (Options.getDebugScanner()) {
+    if (Options.getDebugScanner() && !dfa) {
       nfaStates.dumpStatesForKind(out);
       dumpDebugMethods(out);
     }
@@ -333,8 +366,11 @@ final class ScannerGen implements FileGenerator {
       dumpTokenActions(out);
     }
 
-    nfaStates.printBoilerPlate(out);
+    if (!dfa) {
+      nfaStates.printBoilerPlate(out);
+    }
     out.unindent();
+    methodSizes.report();
     out.println("}");
   }
 
@@ -531,6 +567,7 @@ final class ScannerGen implements FileGenerator {
     actions[0] = state.eofAction;
     hasTokenActions = state.eofAction != null;
     initStates = new Hashtable<String, NfaState>();
+    dfaStates.reInit(maxLexStates);
     canMatchAnyChar = new int[maxLexStates];
     canLoop = new boolean[maxLexStates];
     stateHasActions = new boolean[maxLexStates];
@@ -730,10 +767,12 @@ final class ScannerGen implements FileGenerator {
 
     out.println("protected final CharStream charStream;");
 
-    out.println("private final int[] jjRounds = " +
-        "new int[" + stateSetSize + "];");
-    out.println("private final int[] jjStateSet = " +
-        "new int[" + (2 * stateSetSize) + "];");
+    if (!dfa) {
+      out.println("private final int[] jjRounds = " +
+          "new int[" + stateSetSize + "];");
+      out.println("private final int[] jjStateSet = " +
+          "new int[" + (2 * stateSetSize) + "];");
+    }
 
     if (hasMoreActions || hasSkipActions || hasTokenActions) {
       if (keepImage) {
@@ -746,17 +785,25 @@ final class ScannerGen implements FileGenerator {
     out.println("protected int jjChar;");
     out.println("private char[] buffer = new char[256];");
     out.println("private int[] position = new int[buffer.length];");
-    if (keepLineCol) {
+    if (lineTable) {
+      out.println("private final CharStream.LineTable lineTable;");
+    }
+    else if (keepLineCol) {
       out.println("private int[] line = new int[buffer.length];");
       out.println("private int[] column = new int[buffer.length];");
     }
     out.println();
-    out.println("private int offset, length;");
+    out.println("private int start, offset, length;");
+    if (incremental) {
+      out.println("/** Index after the last character read, and the state and reach the current token started with. */");
+      out.println("private int jjReach;");
+      out.println("private int jjTokenState, jjTokenReach;");
+    }
     out.println();
 
     out.println("protected int getBegin() {");
     out.indent();
-    out.println("return position[0];");
+    out.println("return position[start];");
     out.unindent();
     out.println("}");
     out.println();
@@ -768,40 +815,58 @@ final class ScannerGen implements FileGenerator {
     out.println("}");
     out.println();
 
-    if (keepLineCol) {
+    if (lineTable) {
+      out.println("protected int getLine() {");
+      out.indent();
+      out.println("return lineTable.line(position[start]);");
+      out.unindent();
+      out.println("}");
+      out.println();
+
+      out.println("protected int getColumn() {");
+      out.indent();
+      out.println("return lineTable.column(position[start]);");
+      out.unindent();
+      out.println("}");
+      out.println();
+    }
+    else if (keepLineCol) {
       out.println("protected int getLine() {");
       out.indent();
-      out.println("return line[0];");
+      out.println("return line[start];");
       out.unindent();
       out.println("}");
       out.println();
 
       out.println("protected int getColumn() {");
       out.indent();
-      out.println("return column[0];");
+      out.println("return column[start];");
       out.unindent();
       out.println("}");
       out.println();
     }
 
+    // Characters of the current token are kept in the buffer between
+    // start and offset, characters read ahead are kept between offset
+    // and length. Positions are kept up to and including length, the
+    // last one being the position of the next character in the stream.
+    // Beginning a new token only moves the start index, and the buffer
+    // is compacted only when it runs out of space.
     out.println("protected final void beginToken() {");
     out.indent();
     out.println("if (offset == length) {");
     out.indent();
-    out.println("offset = length = 0;");
-    out.println("buffer();");
+    out.println("position[0] = position[length];");
+    if (keepLineCol && !lineTable) {
+      out.println("line[0] = line[length];");
+      out.println("column[0] = column[length];");
+    }
+    out.println("start = offset = length = 0;");
     out.unindent();
     out.println("}");
     out.println("else {");
     out.indent();
-    out.println("System.arraycopy(buffer, offset, buffer, 0, length - offset);");
-    out.println("System.arraycopy(position, offset, position, 0, length - offset);");
-    if (keepLineCol) {
-      out.println("System.arraycopy(line, offset, line, 0, length - offset);");
-      out.println("System.arraycopy(column, offset, column, 0, length - offset);");
-    }
-    out.println("length = length - offset;");
-    out.println("offset = 0;");
+    out.println("start = offset;");
     out.unindent();
     out.println("}");
     out.unindent();
@@ -810,61 +875,119 @@ final class ScannerGen implements FileGenerator {
 
     out.println("protected final int read() throws java.io.IOException {");
     out.indent();
-    out.println("if (offset < length) {");
-    out.indent();
-    out.println("char c = buffer[offset++];");
-    out.println("if (offset == length) {");
+    out.println("if (offset == length && !fill()) {");
     out.indent();
-    out.println("buffer();");
+    if (incremental) {
+      // Reading the end of input depends on what follows, like reading a character.
+      out.println("jjReach = position[length] + 1;");
+    }
+    out.println("return -1;");
     out.unindent();
     out.println("}");
-    out.println("return c;");
+    if (incremental) {
+      out.println("int c = buffer[offset++];");
+      out.println("if (position[offset] > jjReach) {");
+      out.indent();
+      out.println("jjReach = position[offset];");
+      out.unindent();
+      out.println("}");
+      out.println("return c;");
+    }
+    else {
+      out.println("return buffer[offset++];");
+    }
     out.unindent();
     out.println("}");
-    out.println("int c = charStream.read();");
-    out.println("if (c != -1) {");
+    out.println();
+
+    // Characters are read from the stream in chunks. All characters of
+    // a chunk but the last occupy one position each, so their positions
+    // (and lines and columns) are computed here instead of asking the
+    // stream for every character.
+    out.println("private boolean fill() throws java.io.IOException {");
+    out.indent();
+    out.println("if (length >= buffer.length - 1) {");
     out.indent();
-    out.println("ensureCapacity(offset);");
-    out.println("buffer[offset] = (char) c;");
+    out.println("compact();");
     out.unindent();
     out.println("}");
-    out.println("length = ++offset;");
-    out.println("buffer();");
-    out.println("return c;");
+    out.println("int n = charStream.read(buffer, length, buffer.length - 1 - length);");
+    out.println("if (n <= 0) {");
+    out.indent();
+    out.println("return false;");
     out.unindent();
     out.println("}");
-    out.println();
-
-    out.println("private void buffer() {");
+    out.println("int p = position[length];");
+    if (keepLineCol && !lineTable) {
+      out.println("int l = line[length];");
+      out.println("int c = column[length];");
+    }
+    out.println("for (int i = length + 1, end = length + n; i < end; i++) {");
     out.indent();
-    out.println("ensureCapacity(offset);");
-    out.println("position[offset] = charStream.position();");
-    if (keepLineCol) {
-      out.println("line[offset] = ((CharStream.LineColumnInfo) charStream).line();");
-      out.println("column[offset] = ((CharStream.LineColumnInfo) charStream).column();");
+    out.println("position[i] = ++p;");
+    if (keepLineCol && !lineTable) {
+      out.println("char ch = buffer[i - 1];");
+      out.println("if (ch == '\\n') {");
+      out.indent();
+      out.println("l++;");
+      out.println("c = 0;");
+      out.unindent();
+      out.println("}");
+      out.println("else if (ch != '\\r') {");
+      out.indent();
+      out.println("c++;");
+      out.unindent();
+      out.println("}");
+      out.println("line[i] = l;");
+      out.println("column[i] = c;");
     }
     out.unindent();
     out.println("}");
+    out.println("length += n;");
+    out.println("position[length] = charStream.position();");
+    if (keepLineCol && !lineTable) {
+      out.println("line[length] = ((CharStream.LineColumnInfo) charStream).line();");
+      out.println("column[length] = ((CharStream.LineColumnInfo) charStream).column();");
+    }
+    out.println("return true;");
+    out.unindent();
+    out.println("}");
     out.println();
 
-    out.println("private void ensureCapacity(int capacity) {");
+    out.println("private void compact() {");
     out.indent();
-    out.println("if (capacity >= buffer.length) {");
+    out.println("if (start > 0) {");
     out.indent();
-    out.println("buffer = java.util.Arrays.copyOf(buffer, capacity * 2);");
-    out.println("position = java.util.Arrays.copyOf(position, capacity * 2);");
-    if (keepLineCol) {
-      out.println("line = java.util.Arrays.copyOf(line, capacity * 2);");
-      out.println("column = java.util.Arrays.copyOf(column, capacity * 2);");
+    out.println("int n = length - start;");
+    out.println("System.arraycopy(buffer, start, buffer, 0, n);");
+    out.println("System.arraycopy(position, start, position, 0, n + 1);");
+    if (keepLineCol && !lineTable) {
+      out.println("System.arraycopy(line, start, line, 0, n + 1);");
+      out.println("System.arraycopy(column, start, column, 0, n + 1);");
+    }
+    out.println("offset -= start;");
+    out.println("length -= start;");
+    out.println("start = 0;");
+    out.unindent();
+    out.println("}");
+    out.println("if (length >= buffer.length / 2) {");
+    out.indent();
+    out.println("int capacity = buffer.length * 2;");
+    out.println("buffer = java.util.Arrays.copyOf(buffer, capacity);");
+    out.println("position = java.util.Arrays.copyOf(position, capacity);");
+    if (keepLineCol && !lineTable) {
+      out.println("line = java.util.Arrays.copyOf(line, capacity);");
+      out.println("column = java.util.Arrays.copyOf(column, capacity);");
     }
-    out.println("}\n");
+    out.unindent();
+    out.println("}");
     out.unindent();
     out.println("}");
     out.println();
 
     out.println("protected final void backup(int n) {");
     out.indent();
-    out.println("if (n > offset) {");
+    out.println("if (n > offset - start) {");
     out.indent();
     out.println("throw new IllegalArgumentException();");
     out.unindent();
@@ -890,7 +1013,7 @@ final class ScannerGen implements FileGenerator {
       out.println("return literal;");
       out.unindent();
       out.println("}");
-      out.println("return new String(buffer, 0, offset);");
+      out.println("return new String(buffer, start, offset - start);");
       out.unindent();
       out.println("}");
       out.println();
@@ -898,7 +1021,7 @@ final class ScannerGen implements FileGenerator {
       if (hasMoreActions || hasSkipActions || hasTokenActions) {
         out.println("private void appendImage(int length) {");
         out.indent();
-        out.println("jjImage.append(buffer, 0, length);");
+        out.println("jjImage.append(buffer, start, length);");
         out.unindent();
         out.println("}");
         out.println();
@@ -915,6 +1038,14 @@ final class ScannerGen implements FileGenerator {
       out.indent();
     }
     out.println("this.charStream = charStream;");
+    out.println("position[0] = charStream.position();");
+    if (lineTable) {
+      out.println("lineTable = ((CharStream.LineTableInfo) charStream).lineTable();");
+    }
+    else if (keepLineCol) {
+      out.println("line[0] = ((CharStream.LineColumnInfo) charStream).line();");
+      out.println("column[0] = ((CharStream.LineColumnInfo) charStream).column();");
+    }
     out.unindent();
     out.println("}");
     out.println();
@@ -934,27 +1065,117 @@ final class ScannerGen implements FileGenerator {
     out.println("}");
     out.println();
 
-    out.println("private void reInitRounds() {");
+    if (!dfa) {
+      out.println("private void reInitRounds() {");
+      out.indent();
+      out.println("jjRound = 0x" + Integer.toHexString(Integer.MIN_VALUE + 1) + ";");
+      out.println("for (int i = 0; i < " + stateSetSize + "; i++) {");
+      out.indent();
+      out.println("jjRounds[i] = 0x" + Integer.toHexString(Integer.MIN_VALUE) + ";");
+      out.unindent();
+      out.println("}");
+      out.unindent();
+      out.println("}");
+      out.println();
+    }
+
+    out.println("/** Switch to specified lexical state. */");
+    out.println("public void switchTo(int state) {");
     out.indent();
-    out.println("jjRound = 0x" + Integer.toHexString(Integer.MIN_VALUE + 1) + ";");
-    out.println("for (int i = 0; i < " + stateSetSize + "; i++) {");
+    out.println("if (state < 0 || state >= " + lexStateName.length + ") {");
     out.indent();
-    out.println("jjRounds[i] = 0x" + Integer.toHexString(Integer.MIN_VALUE) + ";");
+    out.println("throw new IllegalArgumentException(\"Invalid lexical state: \" + state + \"\");");
     out.unindent();
     out.println("}");
+    out.println("jjState = state;");
     out.unindent();
     out.println("}");
     out.println();
 
-    out.println("/** Switch to specified lexical state. */");
-    out.println("public void switchTo(int state) {");
+    dumpSnapshot(out);
+
+    if (incremental) {
+      out.println("@Override public void skipTo(Token token) throws java.io.IOException {");
+      out.indent();
+      out.println("if (charStream instanceof CharStream.Seekable && token.getBegin() > getEnd()) {");
+      out.indent();
+      if (keepLineCol) {
+        out.println("restoreState(new ScannerSnapshot(token.getLexicalState(), token.getBegin(),");
+        out.println("    token.getLine(), token.getColumn()));");
+      }
+      else {
+        out.println("restoreState(new ScannerSnapshot(token.getLexicalState(), token.getBegin(), -1, -1));");
+      }
+      out.unindent();
+      out.println("}");
+      out.println("else {");
+      out.indent();
+      out.println("beginToken();");
+      out.println("while (getEnd() < token.getBegin() && read() != -1) {");
+      out.indent();
+      out.println("beginToken();");
+      out.unindent();
+      out.println("}");
+      out.println("switchTo(token.getLexicalState());");
+      out.unindent();
+      out.println("}");
+      out.println("if (token.getReach() > jjReach) {");
+      out.indent();
+      out.println("jjReach = token.getReach();");
+      out.unindent();
+      out.println("}");
+      out.unindent();
+      out.println("}");
+      out.println();
+    }
+  }
+
+  /**
+   * A snapshot holds the lexical state and the position of the next
+   * character, with its line and column for the streams that compute
+   * them.  Restoring it seeks the char stream and drops the characters
+   * read ahead.
+   */
+  private void dumpSnapshot(IndentingPrintWriter out) {
+    out.println("/** @return The state of the scanner before the next token it returns, see restoreState. */");
+    out.println("public ScannerSnapshot saveState() {");
     out.indent();
-    out.println("if (state < 0 || state >= " + lexStateName.length + ") {");
+    if (lineTable) {
+      out.println("int p = position[offset];");
+      out.println("return new ScannerSnapshot(jjState, p, lineTable.line(p), lineTable.column(p));");
+    }
+    else if (keepLineCol) {
+      out.println("return new ScannerSnapshot(jjState, position[offset], line[offset], column[offset]);");
+    }
+    else {
+      out.println("return new ScannerSnapshot(jjState, position[offset], -1, -1);");
+    }
+    out.unindent();
+    out.println("}");
+    out.println();
+
+    out.println("/**");
+    out.println(" * Continue scanning from a state saved by a scanner of the same input,");
+    out.println(" * before or after the current position.  Lexical actions are not undone.");
+    out.println(" *");
+    out.println(" * @param snapshot The saved state.");
+    out.println(" * @throws UnsupportedOperationException If the char stream is not seekable.");
+    out.println(" */");
+    out.println("public void restoreState(ScannerSnapshot snapshot) throws java.io.IOException {");
     out.indent();
-    out.println("throw new IllegalArgumentException(\"Invalid lexical state: \" + state + \"\");");
+    out.println("if (!(charStream instanceof CharStream.Seekable)) {");
+    out.indent();
+    out.println("throw new UnsupportedOperationException(\"Char stream is not seekable\");");
     out.unindent();
     out.println("}");
-    out.println("jjState = state;");
+    out.println("((CharStream.Seekable) charStream).seek(snapshot.getPosition(), snapshot.getLine(), snapshot.getColumn());");
+    out.println("start = offset = length = 0;");
+    out.println("position[0] = charStream.position();");
+    if (keepLineCol && !lineTable) {
+      out.println("line[0] = ((CharStream.LineColumnInfo) charStream).line();");
+      out.println("column[0] = ((CharStream.LineColumnInfo) charStream).column();");
+    }
+    out.println("switchTo(snapshot.getLexicalState());");
     out.unindent();
     out.println("}");
     out.println();
@@ -971,7 +1192,39 @@ final class ScannerGen implements FileGenerator {
   }
 
   private void dumpMakeToken(IndentingPrintWriter out) {
-    if (keepLineCol) {
+    if (tokenPool) {
+      out.println("/** Released tokens, linked through their next field. */");
+      out.println("private Token jjFreeTokens;");
+      out.println();
+      out.println("@Override public void release(Token token) {");
+      out.indent();
+      out.println("Token special = token.specialToken;");
+      out.println("while (special != null) {");
+      out.indent();
+      out.println("Token previous = special.specialToken;");
+      out.println("special.specialToken = null;");
+      out.println("special.next = jjFreeTokens;");
+      out.println("jjFreeTokens = special;");
+      out.println("special = previous;");
+      out.unindent();
+      out.println("}");
+      out.println("token.specialToken = null;");
+      out.println("token.next = jjFreeTokens;");
+      out.println("jjFreeTokens = token;");
+      out.unindent();
+      out.println("}");
+      out.println();
+    }
+
+    if (lineTable) {
+      if (keepImage) {
+        out.println("protected Token newToken(int kind, int begin, int end, String image) {");
+      }
+      else {
+        out.println("protected Token newToken(int kind, int begin, int end) {");
+      }
+    }
+    else if (keepLineCol) {
       if (keepImage) {
         out.println("protected Token newToken(int kind, int begin, int end,");
         out.println("                         int line, int column, String image) {");
@@ -992,24 +1245,48 @@ final class ScannerGen implements FileGenerator {
 
     out.indent();
 
+    if (tokenPool) {
+      out.println("Token token = jjFreeTokens;");
+      out.println("if (token != null) {");
+      out.indent();
+      out.println("jjFreeTokens = token.next;");
+      out.println("token.next = null;");
+      out.println(keepImage
+          ? "token.reset(kind, begin, end, image);"
+          : "token.reset(kind, begin, end);");
+      out.unindent();
+      out.println("}");
+      out.println("else {");
+      out.indent();
+    }
+
+    String declaration = tokenPool ? "token = " : "Token token = ";
     if (keepImage) {
       if (Options.getTokenFactory().length() > 0) {
-        out.println("Token token = " + Options.getTokenFactory() + ".newToken(kind, begin, end, image);");
+        out.println(declaration + Options.getTokenFactory() + ".newToken(kind, begin, end, image);");
       }
       else {
-        out.println("Token token = Token.newToken(kind, begin, end, image);");
+        out.println(declaration + "Token.newToken(kind, begin, end, image);");
       }
     }
     else {
       if (Options.getTokenFactory().length() > 0) {
-        out.println("Token token = " + Options.getTokenFactory() + ".newToken(kind, begin, end);");
+        out.println(declaration + Options.getTokenFactory() + ".newToken(kind, begin, end);");
       }
       else {
-        out.println("Token token = Token.newToken(kind, begin, end);");
+        out.println(declaration + "Token.newToken(kind, begin, end);");
       }
     }
 
-    if (keepLineCol) {
+    if (tokenPool) {
+      out.unindent();
+      out.println("}");
+    }
+
+    if (lineTable) {
+      out.println("token.setLineTable(lineTable);");
+    }
+    else if (keepLineCol) {
       if (hasEmptyMatch) {
         out.println("if (jjMatchedPos < 0) {");
         out.indent();
@@ -1035,8 +1312,10 @@ final class ScannerGen implements FileGenerator {
 
   private void dumpGetNextToken(IndentingPrintWriter out) {
     out.println("private int jjState = " + defaultLexState + ";");
-    out.println("private int jjNewStateCount;");
-    out.println("private int jjRound;");
+    if (!dfa) {
+      out.println("private int jjNewStateCount;");
+      out.println("private int jjRound;");
+    }
     out.println("private int jjMatchedPos;");
     out.println("private int jjMatchedKind;");
     out.println();
@@ -1073,15 +1352,115 @@ final class ScannerGen implements FileGenerator {
     out.println("}");
     out.println();
 
-    out.println("/** Get the next normal or special, but not skip token. */");
-    out.println("public Token getAnyNextToken() throws java.io.IOException {");
+    dumpAnyNextToken(out, false);
+    dumpTokenize(out);
+
+    if (hasMore || hasSkip || hasSpecial) {
+      out.println("/**")
+          .println(" * Verify whether the specified is a normal token kind.")
+          .println(" *")
+          .println(" * @param kind A token kind.")
+          .println(" * @return <code>true</code> if a normal token, </code>false</code> otherwise.")
+          .println(" */")
+          .println("public static boolean isToken(int kind) {")
+          .indent()
+          .println("return (jjToToken[kind >> 6] & (1L << (kind & 63))) != 0L;")
+          .unindent()
+          .println("}")
+          .println();
+    }
+
+    if (hasSkip || hasSpecial) {
+      out.println("/**")
+          .println(" * Verify whether to ignore the specified token.")
+          .println(" *")
+          .println(" * @param kind A token kind.")
+          .println(" * @return <code>true</code> if ignore token, </code>false</code> otherwise.")
+          .println(" */")
+          .println("public static boolean isSkip(int kind) {")
+          .indent()
+          .println("return (jjToSkip[kind >> 6] & (1L << (kind & 63))) != 0L;")
+          .unindent()
+          .println("}")
+          .println();
+    }
+
+    if (hasSpecial) {
+      out.println("/**")
+          .println(" * Verify whether to ignore the specified special token.")
+          .println(" *")
+          .println(" * @param kind A token kind.")
+          .println(" * @return <code>true</code> if ignore special token, </code>false</code> otherwise.")
+          .println(" */")
+          .println("public static boolean isSpecial(int kind) {")
+          .indent()
+          .println("return (jjToSpecial[kind >> 6] & (1L << (kind & 63))) != 0L;")
+          .unindent()
+          .println("}")
+          .println();
+    }
+
+    if (keepLineCol) {
+      out.println("protected void reportError(int state, int pos, int line, int column, int character) {");
+    }
+    else {
+      out.println("protected void reportError(int state, int pos, int character) {");
+    }
     out.indent();
-    out.println("Token token;");
+    if (keepLineCol) {
+      out.println("throw new ScannerException(state, ScannerException.LEXICAL_ERROR,");
+      out.println("  pos, line, column, character);");
+    }
+    else {
+      out.println("throw new ScannerException(state, ScannerException.LEXICAL_ERROR,");
+      out.println("  pos, character);");
+    }
+    out.unindent();
+    out.println("}");
+    out.println();
+  }
+
+  /**
+   * Print the scanning loop, either as getAnyNextToken,
+   * or as tokenize that appends tokens to a TokenBuffer.
+   */
+  private void dumpAnyNextToken(IndentingPrintWriter out, boolean buffered) {
+    if (buffered) {
+      dumpTokenizeAll(out);
+      out.println("/**");
+      out.println(" * Scan normal and special tokens into a buffer, without creating token");
+      out.println(" * objects, up to the <EOF> token or the first position between two");
+      out.println(" * tokens at or after the limit.  Scanning continues from there on the");
+      out.println(" * next call.");
+      out.println(" *");
+      out.println(" * @param buffer The buffer to append the tokens to.");
+      out.println(" * @param limit  Index of the character to stop at, or after.");
+      out.println(" */");
+      out.println("public void tokenize(TokenBuffer buffer, int limit) throws java.io.IOException {");
+      out.indent();
+    }
+    else {
+      out.println("/** Get the next normal or special, but not skip token. */");
+      out.println("public Token getAnyNextToken() throws java.io.IOException {");
+      out.indent();
+      out.println("Token token;");
+    }
     out.println("int pos = 0;");
     out.println();
     out.println("loop:\nwhile (true) {");
     out.indent();
+    if (buffered) {
+      out.println("if (getEnd() >= limit) {");
+      out.indent();
+      out.println("return;");
+      out.unindent();
+      out.println("}");
+    }
     out.println("beginToken();");
+    if (incremental && !buffered) {
+      out.println("jjTokenState = jjState;");
+      out.println("jjTokenReach = jjReach;");
+    }
     out.println("jjChar = read();");
     out.println("if (jjChar == -1) {");
     out.indent();
@@ -1091,17 +1470,23 @@ final class ScannerGen implements FileGenerator {
     }
 
     out.println("jjMatchedKind = 0;");
-    newTokenFragment(out);
-
-    if (state.eofNextState != null || state.eofAction != null) {
-      out.println("tokenLexicalActions(token);");
+    if (buffered) {
+      bufferTokenFragment(out);
+      out.println("return;");
     }
+    else {
+      newTokenFragment(out);
 
-    if (Options.getCommonTokenAction()) {
-      out.println("commonTokenAction(token);");
-    }
+      if (state.eofNextState != null || state.eofAction != null) {
+        out.println("tokenLexicalActions(token);");
+      }
 
-    out.println("return token;");
+      if (Options.getCommonTokenAction()) {
+        out.println("commonTokenAction(token);");
+      }
+
+      out.println("return token;");
+    }
     out.unindent();
     out.println("}"); // if (jjChar == -1)
 
@@ -1194,7 +1579,12 @@ final class ScannerGen implements FileGenerator {
             "at line \" + getLine() + \" column \" + getColumn());");
       }
 
-      out.println("pos = jjMoveStringLiteralDfa0_" + i + "();");
+      if (dfa) {
+        out.println("pos = jjMoveDfa(jjDfaNext_" + i + ", jjDfaKind_" + i + ");");
+      }
+      else {
+        out.println("pos = jjMoveStringLiteralDfa0_" + i + "();");
+      }
 
       if (canMatchAnyChar[i] != -1) {
         if (initMatch[i] != Integer.MAX_VALUE && initMatch[i] != 0) {
@@ -1262,7 +1652,7 @@ final class ScannerGen implements FileGenerator {
       if (Options.getDebugScanner()) {
         out.println("debugPrinter.println(" +
             "\"****** FOUND A \" + tokenImage[jjMatchedKind] + \" MATCH " +
-            "(\" + ScannerException.escape(new String(buffer, 0, jjMatchedPos + 1))) + " +
+            "(\" + ScannerException.escape(new String(buffer, start, jjMatchedPos + 1))) + " +
             "\") ******\\n\");");
       }
 
@@ -1271,7 +1661,12 @@ final class ScannerGen implements FileGenerator {
         out.indent();
       }
 
-      newTokenFragment(out);
+      if (buffered) {
+        bufferTokenFragment(out);
+      }
+      else {
+        newTokenFragment(out);
+      }
 
       if (hasTokenActions) {
         out.println("tokenLexicalActions(token);");
@@ -1288,7 +1683,7 @@ final class ScannerGen implements FileGenerator {
         out.println("commonTokenAction(token);");
       }
 
-      out.println("return token;");
+      out.println(buffered ? "continue loop;" : "return token;");
 
       if (hasSkip || hasMore || hasSpecial) {
         out.unindent();
@@ -1308,10 +1703,15 @@ final class ScannerGen implements FileGenerator {
           if (hasSpecial) {
             out.println("if (isSpecial(jjMatchedKind)) {");
             out.indent();
-            newTokenFragment(out);
+            if (buffered) {
+              bufferTokenFragment(out);
+            }
+            else {
+              newTokenFragment(out);
 
-            if (hasSkipActions) {
-              out.println("skipLexicalActions(token);");
+              if (hasSkipActions) {
+                out.println("skipLexicalActions(token);");
+              }
             }
 
             if (maxLexStates > 1) {
@@ -1321,7 +1721,7 @@ final class ScannerGen implements FileGenerator {
                   .unindent();
             }
 
-            out.println("return token;");
+            out.println(buffered ? "continue loop;" : "return token;");
             out.unindent();
             out.println("}");
 
@@ -1383,11 +1783,17 @@ final class ScannerGen implements FileGenerator {
       out.unindent();
       out.println("}");
 
-      if (keepLineCol) {
-        out.println("reportError(jjState, position[offset - 1], line[offset - 1], column[offset - 1], jjChar);");
+      // The offending character is the last one read, or the end of input.
+      out.println("int error = jjChar == -1 ? offset : offset - 1;");
+      if (lineTable) {
+        out.println("reportError(jjState, position[error],");
+        out.println("  lineTable.line(position[error]), lineTable.column(position[error]), jjChar);");
+      }
+      else if (keepLineCol) {
+        out.println("reportError(jjState, position[error], line[error], column[error], jjChar);");
       }
       else {
-        out.println("reportError(jjState, position[offset - 1], jjChar);");
+        out.println("reportError(jjState, position[error], jjChar);");
       }
     }
 
@@ -1402,74 +1808,10 @@ final class ScannerGen implements FileGenerator {
     out.unindent();
     out.println("}");
     out.println();
-
-    if (hasMore || hasSkip || hasSpecial) {
-      out.println("/**")
-          .println(" * Verify whether the specified is a normal token kind.")
-          .println(" *")
-          .println(" * @param kind A token kind.")
-          .println(" * @return <code>true</code> if a normal token, </code>false</code> otherwise.")
-          .println(" */")
-          .println("public static boolean isToken(int kind) {")
-          .indent()
-          .println("return (jjToToken[kind >> 6] & (1L << (kind & 63))) != 0L;")
-          .unindent()
-          .println("}")
-          .println();
-    }
-
-    if (hasSkip || hasSpecial) {
-      out.println("/**")
-          .println(" * Verify whether to ignore the specified token.")
-          .println(" *")
-          .println(" * @param kind A token kind.")
-          .println(" * @return <code>true</code> if ignore token, </code>false</code> otherwise.")
-          .println(" */")
-          .println("public static boolean isSkip(int kind) {")
-          .indent()
-          .println("return (jjToSkip[kind >> 6] & (1L << (kind & 63))) != 0L;")
-          .unindent()
-          .println("}")
-          .println();
-    }
-
-    if (hasSpecial) {
-      out.println("/**")
-          .println(" * Verify whether to ignore the specified special token.")
-          .println(" *")
-          .println(" * @param kind A token kind.")
-          .println(" * @return <code>true</code> if ignore special token, </code>false</code> otherwise.")
-          .println(" */")
-          .println("public static boolean isSpecial(int kind) {")
-          .indent()
-          .println("return (jjToSpecial[kind >> 6] & (1L << (kind & 63))) != 0L;")
-          .unindent()
-          .println("}")
-          .println();
-    }
-
-    if (keepLineCol) {
-      out.println("protected void reportError(int state, int pos, int line, int column, int character) {");
-    }
-    else {
-      out.println("protected void reportError(int state, int pos, int character) {");
-    }
-    out.indent();
-    if (keepLineCol) {
-      out.println("throw new ScannerException(state, ScannerException.LEXICAL_ERROR,");
-      out.println("  pos, line, column, character);");
-    }
-    else {
-      out.println("throw new ScannerException(state, ScannerException.LEXICAL_ERROR,");
-      out.println("  pos, character);");
-    }
-    out.unindent();
-    out.println("}");
-    out.println();
   }
 
   private void newTokenFragment(IndentingPrintWriter out) {
-    if (keepLineCol) {
+    if (keepLineCol && !lineTable) {
       if (keepImage) {
         out.println("token = newToken(jjMatchedKind, getBegin(), getEnd(),");
         out.println("    getLine(), getColumn(), getImage());");
@@ -1487,7 +1829,84 @@ final class ScannerGen implements FileGenerator {
         out.println("token = newToken(jjMatchedKind, getBegin(), getEnd());");
       }
     }
+    if (incremental) {
+      out.println("token.setScanState(jjTokenState, jjTokenReach);");
+    }
   }
+  private void bufferTokenFragment(IndentingPrintWriter out) {
+    if (keepLineCol) {
+      out.println("buffer.add(jjMatchedKind, getBegin(), getEnd(), getLine(), getColumn());");
+    }
+    else {
+      out.println("buffer.add(jjMatchedKind, getBegin(), getEnd());");
+    }
+  }
+
+  /**
+   * Print the tokenize method. Lexical actions may access the matched
+   * token, so with such actions tokenize creates tokens and copies them
+   * to the buffer.
+   */
+  private void dumpTokenize(IndentingPrintWriter out) {
+    if (!hasTokenActions && !hasSpecialActions
+        && state.eofNextState == null && state.eofAction == null
+        && !Options.getCommonTokenAction()) {
+      dumpAnyNextToken(out, true);
+      return;
+    }
+
+    dumpTokenizeAll(out);
+    out.println("/**");
+    out.println(" * Scan normal and special tokens into a buffer, up to the <EOF> token or");
+    out.println(" * the first position between two tokens at or after the limit.  Scanning");
+    out.println(" * continues from there on the next call.");
+    out.println(" *");
+    out.println(" * @param buffer The buffer to append the tokens to.");
+    out.println(" * @param limit  Index of the character to stop at, or after.");
+    out.println(" */");
+    out.println("public void tokenize(TokenBuffer buffer, int limit) throws java.io.IOException {");
+    out.indent();
+    out.println("while (getEnd() < limit) {");
+    out.indent();
+    out.println("Token token = getAnyNextToken();");
+    out.println("int kind = token.getKind();");
+    if (keepLineCol) {
+      out.println("buffer.add(kind, token.getBegin(), token.getEnd(),");
+      out.println("    token.getLine(), token.getColumn());");
+    }
+    else {
+      out.println("buffer.add(kind, token.getBegin(), token.getEnd());");
+    }
+    if (tokenPool) {
+      out.println("release(token);");
+    }
+    out.println("if (kind == 0) {");
+    out.indent();
+    out.println("return;");
+    out.unindent();
+    out.println("}");
+    out.unindent();
+    out.println("}");
+    out.unindent();
+    out.println("}");
+    out.println();
+  }
+
+  private void dumpTokenizeAll(IndentingPrintWriter out) {
+    out.println("/**");
+    out.println(" * Scan all normal and special tokens up to and including the <EOF> token");
+    out.println(" * into a buffer.");
+    out.println(" *");
+    out.println(" * @param buffer The buffer to append the tokens to.");
+    out.println(" */");
+    out.println("public void tokenize(TokenBuffer buffer) throws java.io.IOException {");
+    out.indent();
+    out.println("tokenize(buffer, Integer.MAX_VALUE);");
+    out.unindent();
+    out.println("}");
+    out.println();
+  }
+
 
   public void dumpSkipActions(IndentingPrintWriter out)
       throws IOException {
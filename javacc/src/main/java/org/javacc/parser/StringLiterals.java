@@ -3,6 +3,7 @@ package org.javacc.parser;
 import org.javacc.utils.Parsers;
 import org.javacc.utils.io.IndentingPrintWriter;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -268,7 +269,19 @@ final class StringLiterals {
     return ret;
   }
 
-  void dumpDfaCode(ScannerGen scannerGen, IndentingPrintWriter out) {
+  /** Record the end of the cases printed so far, if they end with a return or a break. */
+  private static void addCut(StringWriter buffer, List<Integer> cuts) {
+    StringBuffer code = buffer.getBuffer();
+    int end = code.length();
+    String last = code.substring(code.lastIndexOf("\n", end - 2) + 1).trim();
+    if (end > 0 && (last.startsWith("return ") || last.equals("break;"))
+        && (cuts.isEmpty() || cuts.get(cuts.size() - 1) != end)) {
+      cuts.add(end);
+    }
+  }
+
+  void dumpDfaCode(ScannerGen scannerGen, IndentingPrintWriter writer) {
+    IndentingPrintWriter out = writer;
     Hashtable tab;
     String key;
     KindInfo info;
@@ -300,6 +313,13 @@ final class StringLiterals {
       tab = (Hashtable) charPosKind.get(i);
       String[] keys = reArrange(tab);
 
+      // Print the method to a buffer to estimate its size, and split
+      // the cases into chunk methods if it is too large for the JIT.
+      String name = "jjMoveStringLiteralDfa" + i + scannerGen.lexStateSuffix;
+      StringWriter method = new StringWriter();
+      StringWriter chunks = new StringWriter();
+      out = MethodSizes.buffer(method);
+
       out.print("private int " +
           "jjMoveStringLiteralDfa" + i + scannerGen.lexStateSuffix + "(");
 
@@ -433,8 +453,10 @@ final class StringLiterals {
             "at line \" + charStream.getLine() + \" column \" + charStream.getColumn());");
       }
 
-      out.println("switch(jjChar) {");
-      out.indent();
+      IndentingPrintWriter methodOut = out;
+      StringWriter caseBuffer = new StringWriter();
+      List<Integer> cuts = new ArrayList<Integer>();
+      out = MethodSizes.buffer(caseBuffer);
 
       CaseLoop:
       for (int q = 0; q < keys.length; q++) {
@@ -642,11 +664,61 @@ final class StringLiterals {
         }
 
         out.unindent();
+        addCut(caseBuffer, cuts);
       }
 
-      /* default means that the current character is not in any of the
-  strings at this position. */
-      out.println("default:");
+      out = methodOut;
+      String cases = caseBuffer.toString();
+      boolean split = MethodSizes.estimate(method.toString())
+          + MethodSizes.estimate(cases) > MethodSizes.JIT_LIMIT;
+      if (split) {
+        // Chunks return -1 for chars they do not have a case for,
+        // or where a case breaks out of the switch.
+        String params = method.toString();
+        params = params.substring(params.indexOf('(') + 1, params.indexOf(')'));
+        String args = params.replace("long ", "");
+        List<String> chunkCases = MethodSizes.split(cases, cuts);
+        IndentingPrintWriter chunkOut = MethodSizes.buffer(chunks);
+        out.println("int result;");
+        out.print("if (");
+        out.indent();
+        for (int chunk = 0; chunk < chunkCases.size(); chunk++) {
+          StringWriter chunkMethod = new StringWriter();
+          MethodSizes.buffer(chunkMethod)
+              .println("private int " + name + "_" + chunk + "(" + params
+                  + ") throws java.io.IOException {")
+              .indent()
+              .println("switch(jjChar) {")
+              .indent()
+              .print(chunkCases.get(chunk))
+              .unindent()
+              .println("}")
+              .println("return -1;")
+              .unindent()
+              .println("}");
+          scannerGen.methodSizes.add(name + "_" + chunk, chunkMethod.toString());
+          chunkOut.print(chunkMethod.toString());
+          chunkOut.println();
+          if (chunk > 0) {
+            out.println();
+            out.print("|| ");
+          }
+          out.print("(result = " + name + "_" + chunk + "(" + args + ")) != -1");
+        }
+        out.println(") {");
+        out.println("return result;");
+        out.unindent();
+        out.println("}");
+      }
+      else {
+        out.println("switch(jjChar) {");
+        out.indent();
+        out.print(cases);
+
+        /* default means that the current character is not in any of the
+    strings at this position. */
+        out.println("default:");
+      }
 
       if (Options.getDebugScanner()) {
         out.println("debugPrinter.println(\"   No string literal matches possible.\");");
@@ -660,7 +732,9 @@ final class StringLiterals {
               "(" + scannerGen.nfaStates.initStateName(scannerGen) + ", 0);");
         }
         else {
-          out.println("break;");
+          if (!split) {
+            out.println("break;");
+          }
           //out.unindent();
           startNfaNeeded = true;
         }
@@ -669,10 +743,14 @@ final class StringLiterals {
         out.println("return " + (i + 1) + ";");
       }
 
-      out.unindent();
-      out.println("}");
+      if (!split) {
+        out.unindent();
+        out.println("}");
+      }
 
-      if (i != 0) {
+      // Without the switch, the default case may have returned already.
+      boolean returned = split && (i == 0 || scannerGen.nfaStates.generatedStates == 0);
+      if (i != 0 && !returned) {
         if (startNfaNeeded) {
           if (!scannerGen.mixed[scannerGen.lexStateIndex] && scannerGen.nfaStates.generatedStates != 0) {
             /* Here, a string literal is successfully matched and no more
@@ -698,6 +776,10 @@ final class StringLiterals {
       out.unindent();
       out.println("}");
       out.println();
+      scannerGen.methodSizes.add(name, method.toString());
+      out = writer;
+      out.print(chunks.toString());
+      out.print(method.toString());
     }
 
     if (!scannerGen.mixed[scannerGen.lexStateIndex] && scannerGen.nfaStates.generatedStates != 0 && createStartNfa) {
@@ -13,9 +13,170 @@ public interface CharStream extends java.io.Closeable {
     int column();
   }
 
+  /**
+   * Provides access to the table of line starts of the stream, which
+   * allows to compute line and column numbers for any position that
+   * has already been read.
+   */
+  interface LineTableInfo {
+    /**
+     * The table is created on the first call, so that streams whose line
+     * table is never asked for do not record it, and lines before the
+     * position of the stream at that call are not known.
+     *
+     * @return The line table of this stream, updated as characters are read.
+     */
+    LineTable lineTable();
+  }
+
+  /**
+   * Allows to continue reading from any position of the stream, so that a
+   * scanner can restart in the middle of the input, see ScannerSnapshot.
+   * Positions must be those this stream reports for the characters, and
+   * line and column numbers those it reports at the positions, or -1 if
+   * they are unknown.
+   */
+  interface Seekable {
+    /**
+     * Continue reading at the specified position, which may be before or
+     * after the next character to read.
+     *
+     * @param position Index of the next character to read within the stream, 0-based.
+     * @param line     Line number of that character, 0-based.
+     * @param column   Column number of that character, 0-based.
+     */
+    void seek(int position, int line, int column) throws java.io.IOException;
+  }
+
+  /**
+   * Records positions of line starts and carriage returns, as the characters
+   * are read from a stream. Line and column numbers are computed on demand
+   * with the same rules as in {@link LineColumnInfo}: a new line starts after
+   * each line feed character, and carriage returns do not advance column.
+   */
+  final class LineTable implements java.io.Serializable {
+    private int[] lines = new int[64];
+    private int lineCount = 1;
+    private int[] returns = new int[16];
+    private int returnCount;
+    private int lastLine;
+
+    /**
+     * Record a character read from the stream.
+     *
+     * @param position Index of the character within the stream.
+     * @param c        The character.
+     */
+    public void translate(int position, int c) {
+      if (c == '\n') {
+        if (lineCount == lines.length) {
+          lines = java.util.Arrays.copyOf(lines, lineCount * 2);
+        }
+        lines[lineCount++] = position + 1;
+      }
+      else if (c == '\r') {
+        if (returnCount == returns.length) {
+          returns = java.util.Arrays.copyOf(returns, returnCount * 2);
+        }
+        returns[returnCount++] = position;
+      }
+    }
+
+    /**
+     * Continue recording from a position the stream seeks to.  Line starts
+     * and carriage returns recorded after the position are dropped.  If the
+     * stream skips characters up to the position, the line of the position
+     * is assumed to start at the position less the column, and the lines
+     * before it are not known.
+     *
+     * @param position Index of the next character to read within the stream.
+     * @param line     Line number of that character, 0-based.
+     * @param column   Column number of that character, 0-based.
+     */
+    public void seek(int position, int line, int column) {
+      while (lineCount > 1 && lines[lineCount - 1] > position) {
+        lineCount--;
+      }
+      while (returnCount > 0 && returns[returnCount - 1] >= position) {
+        returnCount--;
+      }
+      while (lineCount <= line) {
+        if (lineCount == lines.length) {
+          lines = java.util.Arrays.copyOf(lines, lineCount * 2);
+        }
+        lines[lineCount++] = position - column;
+      }
+      lastLine = 0;
+    }
+
+    /**
+     * @param position Index of a character within the stream.
+     * @return Line number of the character, 0-based.
+     */
+    public int line(int position) {
+      // Positions are looked up mostly in increasing order, so first
+      // try the line of the previous lookup and the one following it.
+      int i = lastLine;
+      if (lines[i] <= position) {
+        if (i + 1 == lineCount || position < lines[i + 1]) {
+          return i;
+        }
+        if (i + 2 == lineCount || position < lines[i + 2]) {
+          return lastLine = i + 1;
+        }
+      }
+      return lastLine = search(lines, lineCount, position + 1) - 1;
+    }
+
+    /**
+     * @param position Index of a character within the stream.
+     * @return Column number of the character, 0-based.
+     */
+    public int column(int position) {
+      int start = lines[line(position)];
+      int column = position - start;
+      if (returnCount > 0 && returns[returnCount - 1] >= start) {
+        column -= search(returns, returnCount, position)
+            - search(returns, returnCount, start);
+      }
+      return column;
+    }
+
+    /** @return Number of elements in the sorted array that are less than the key. */
+    private static int search(int[] a, int length, int key) {
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (a[mid] < key) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
   /** @return The next character from the input. */
   int read() throws java.io.IOException;
 
+  /**
+   * Read characters into a portion of an array.
+   *
+   * <p>Either every returned character occupies exactly one position in the
+   * stream, so that the i-th character is at {@link #position()} before the
+   * call plus i, or only one character is returned. Callers can then
+   * compute positions of the read characters without asking the stream.</p>
+   *
+   * @param cbuf Destination buffer.
+   * @param off  Offset at which to start storing characters.
+   * @param len  Maximum number of characters to read.
+   * @return The number of characters read, or -1 at the end of the stream.
+   */
+  int read(char[] cbuf, int off, int len) throws java.io.IOException;
+
   /** @return Index of the next character to read within the stream, 0-based. */
   int position();
 
@@ -26,11 +187,12 @@ public interface CharStream extends java.io.Closeable {
    * <p>This implementation does not process java-like unicode escapes.</p>
    */
   final class ForCharSequence
-      implements CharStream, LineColumnInfo {
+      implements CharStream, LineColumnInfo, LineTableInfo, Seekable {
     private final CharSequence chars;
     private int begin, end;
     private int pos;
     private int line, column;
+    private LineTable lineTable;
 
     /**
      * Create new char stream instance.
@@ -77,10 +239,45 @@ public interface CharStream extends java.io.Closeable {
       return c;
     }
 
+    @Override public int read(char[] cbuf, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (pos >= end) {
+        return -1;
+      }
+      int n = Math.min(len, end - pos);
+      if (chars instanceof String) {
+        ((String) chars).getChars(pos, pos + n, cbuf, off);
+      }
+      else {
+        for (int i = 0; i < n; i++) {
+          cbuf[off + i] = chars.charAt(pos + i);
+        }
+      }
+      for (int i = 0; i < n; i++) {
+        pos++;
+        translate(cbuf[off + i]);
+      }
+      return n;
+    }
+
     @Override public int position() {
       return pos - begin;
     }
 
+    @Override public void seek(int position, int line, int column) {
+      if (position < 0 || position > end - begin) {
+        throw new StringIndexOutOfBoundsException(position);
+      }
+      pos = begin + position;
+      this.line = line;
+      this.column = column;
+      if (lineTable != null) {
+        lineTable.seek(position, line, column);
+      }
+    }
+
     @Override public int line() {
       return line;
     }
@@ -89,15 +286,29 @@ public interface CharStream extends java.io.Closeable {
       return column;
     }
 
+    @Override public LineTable lineTable() {
+      if (lineTable == null) {
+        lineTable = new LineTable();
+        lineTable.seek(position(), line, column);
+      }
+      return lineTable;
+    }
+
     private void translate(int c) {
       if (c == '\n') {
         line++;
         column = 0;
+        if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
       }
       else {
         if (c != '\r') {
           column++;
         }
+        else if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
       }
     }
 
@@ -109,11 +320,12 @@ public interface CharStream extends java.io.Closeable {
    * arbitrary {@link Readable}.
    */
   final class ForReadable
-      implements CharStream, LineColumnInfo {
+      implements CharStream, LineColumnInfo, LineTableInfo {
     private final Readable readable;
     private final java.nio.CharBuffer buffer;
     private int pos;
     private int line, column;
+    private LineTable lineTable;
 
     /**
      * Create new char stream instance.
@@ -154,6 +366,27 @@ public interface CharStream extends java.io.Closeable {
       return c;
     }
 
+    @Override public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (buffer.position() == buffer.limit()) {
+        buffer.position(0);
+        readable.read(buffer);
+        buffer.flip();
+      }
+      if (buffer.position() == buffer.limit()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(cbuf, off, n);
+      for (int i = 0; i < n; i++) {
+        pos++;
+        translate(cbuf[off + i]);
+      }
+      return n;
+    }
+
     @Override public int position() {
       return pos;
     }
@@ -166,15 +399,29 @@ public interface CharStream extends java.io.Closeable {
       return column;
     }
 
+    @Override public LineTable lineTable() {
+      if (lineTable == null) {
+        lineTable = new LineTable();
+        lineTable.seek(position(), line, column);
+      }
+      return lineTable;
+    }
+
     private void translate(int c) {
       if (c == '\n') {
         line++;
         column = 0;
+        if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
       }
       else {
         if (c != '\r') {
           column++;
         }
+        else if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
       }
     }
 
@@ -190,10 +437,11 @@ public interface CharStream extends java.io.Closeable {
    * arbitrary {@link java.io.Reader}.
    */
   final class ForReader
-      implements CharStream, LineColumnInfo {
+      implements CharStream, LineColumnInfo, LineTableInfo {
     private final java.io.Reader reader;
     private int pos;
     private int line, column;
+    private LineTable lineTable;
 
     /**
      * Create new char stream instance.
@@ -216,6 +464,22 @@ public interface CharStream extends java.io.Closeable {
       return c;
     }
 
+    @Override public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int n;
+      do {
+        n = reader.read(cbuf, off, len);
+      }
+      while (n == 0);
+      for (int i = 0; i < n; i++) {
+        pos++;
+        translate(cbuf[off + i]);
+      }
+      return n;
+    }
+
     @Override public int position() {
       return pos;
     }
@@ -228,15 +492,29 @@ public interface CharStream extends java.io.Closeable {
       return column;
     }
 
+    @Override public LineTable lineTable() {
+      if (lineTable == null) {
+        lineTable = new LineTable();
+        lineTable.seek(position(), line, column);
+      }
+      return lineTable;
+    }
+
     private void translate(int c) {
       if (c == '\n') {
         line++;
         column = 0;
+        if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
       }
       else {
         if (c != '\r') {
           column++;
         }
+        else if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
       }
     }
 
@@ -245,16 +523,691 @@ public interface CharStream extends java.io.Closeable {
     }
   }
 
+  /**
+   * A {@link CharStream} implementation that another thread feeds with
+   * characters as they arrive, such as the body of a request read by
+   * non-blocking network code.
+   *
+   * <p>{@link #feed} and {@link #endOfInput} never wait: fed characters
+   * are copied to a buffer that grows as needed.  The thread reading the
+   * stream waits for characters in {@link #read()} and
+   * {@link #read(char[], int, int)}, with a
+   * {@link java.util.concurrent.locks.Condition} rather than a monitor,
+   * so that a virtual thread parsing the stream does not pin its carrier
+   * thread while it waits.  An interrupted reading thread gets an
+   * {@link java.io.InterruptedIOException}.  Closing the stream from the
+   * feeding thread makes a waiting or later read throw an
+   * {@link java.io.IOException}, to abandon the parse of an input that
+   * will not be complete.</p>
+   *
+   * <p>Characters are handed over in batches: the reading thread takes
+   * all characters fed so far at once, and reads them without locking.</p>
+   */
+  final class ForFeed
+      implements CharStream, LineColumnInfo, LineTableInfo {
+    private final java.util.concurrent.locks.ReentrantLock lock =
+        new java.util.concurrent.locks.ReentrantLock();
+    private final java.util.concurrent.locks.Condition fed = lock.newCondition();
+    /** Characters fed and not taken yet, guarded by the lock. */
+    private char[] pending;
+    private int pendingLength;
+    private boolean ended;
+    private boolean closed;
+    /** Characters taken by the reading thread. */
+    private char[] buffer;
+    private int offset, length;
+    private int pos;
+    private int line, column;
+    private LineTable lineTable;
+
+    /** Create new char stream instance. */
+    public ForFeed() {
+      this(1024);
+    }
+
+    /**
+     * Create new char stream instance.
+     *
+     * @param capacity Initial internal buffer capacity.
+     */
+    public ForFeed(int capacity) {
+      if (capacity < 1) {
+        throw new IllegalArgumentException();
+      }
+      pending = new char[capacity];
+      buffer = new char[capacity];
+    }
+
+    /**
+     * Append the remaining characters of a buffer to the stream, without
+     * waiting for the reading thread.
+     *
+     * @param chars The characters, the position of the buffer advances to its limit.
+     * @throws IllegalStateException If the end of input was signalled,
+     *                               or the stream is closed.
+     */
+    public void feed(java.nio.CharBuffer chars) {
+      lock.lock();
+      try {
+        if (ended || closed) {
+          throw new IllegalStateException(closed ? "Stream closed" : "End of input");
+        }
+        int n = chars.remaining();
+        if (n == 0) {
+          return;
+        }
+        if (pendingLength + n > pending.length) {
+          pending = java.util.Arrays.copyOf(pending,
+              Math.max(pending.length * 2, pendingLength + n));
+        }
+        chars.get(pending, pendingLength, n);
+        pendingLength += n;
+        fed.signal();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    /** Signal that no more characters will be fed, the reading thread reads -1 after the fed ones. */
+    public void endOfInput() {
+      lock.lock();
+      try {
+        ended = true;
+        fed.signal();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    @Override public int read() throws java.io.IOException {
+      if (offset == length && !take()) {
+        return -1;
+      }
+      char c = buffer[offset++];
+      pos++;
+      translate(c);
+      return c;
+    }
+
+    @Override public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (offset == length && !take()) {
+        return -1;
+      }
+      int n = Math.min(len, length - offset);
+      System.arraycopy(buffer, offset, cbuf, off, n);
+      offset += n;
+      for (int i = 0; i < n; i++) {
+        pos++;
+        translate(cbuf[off + i]);
+      }
+      return n;
+    }
+
+    /**
+     * Wait for characters to be fed and swap them with the empty buffer.
+     *
+     * @return false at the end of input.
+     */
+    private boolean take() throws java.io.IOException {
+      lock.lock();
+      try {
+        while (pendingLength == 0 && !ended && !closed) {
+          fed.await();
+        }
+        if (closed) {
+          throw new java.io.IOException("Stream closed");
+        }
+        if (pendingLength == 0) {
+          return false;
+        }
+        char[] chars = buffer;
+        buffer = pending;
+        length = pendingLength;
+        offset = 0;
+        pending = chars;
+        pendingLength = 0;
+        return true;
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new java.io.InterruptedIOException();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    @Override public int position() {
+      return pos;
+    }
+
+    @Override public int line() {
+      return line;
+    }
+
+    @Override public int column() {
+      return column;
+    }
+
+    @Override public LineTable lineTable() {
+      if (lineTable == null) {
+        lineTable = new LineTable();
+        lineTable.seek(position(), line, column);
+      }
+      return lineTable;
+    }
+
+    private void translate(int c) {
+      if (c == '\n') {
+        line++;
+        column = 0;
+        if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
+      }
+      else {
+        if (c != '\r') {
+          column++;
+        }
+        else if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
+      }
+    }
+
+    /** Discard the characters fed, a waiting or later read throws an exception. */
+    @Override public void close() {
+      lock.lock();
+      try {
+        closed = true;
+        pendingLength = 0;
+        fed.signal();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * A {@link CharStream} implementation that reads characters from a
+   * memory-mapped file.
+   *
+   * <p>ASCII, ISO-8859-1 and UTF-8 content is decoded directly from the
+   * mapped bytes, other encodings are decoded in chunks with a
+   * {@link java.nio.charset.CharsetDecoder}. Malformed input is replaced
+   * with the U+FFFD replacement character.</p>
+   *
+   * <p>Seeking in a single byte encoding goes straight to the byte at the
+   * position. Other encodings keep a checkpoint every few thousand
+   * characters, with the byte offset, line and column of the character
+   * there, and decode from the last checkpoint before the position.</p>
+   */
+  final class ForMappedFile
+      implements CharStream, LineColumnInfo, LineTableInfo, Seekable {
+    private static final int ASCII = 0, LATIN1 = 1, UTF8 = 2, OTHER = 3;
+    private static final char REPLACEMENT = '\uFFFD';
+    private static final int CHECKPOINT_INTERVAL = 4096;
+    private final java.io.RandomAccessFile file;
+    private final java.nio.ByteBuffer bytes;
+    private final int encoding;
+    private final java.nio.charset.CharsetDecoder decoder;
+    private final java.nio.CharBuffer chars;
+    private boolean flushed;
+    private int low = -1;
+    private int pos;
+    private int line, column;
+    private LineTable lineTable;
+    /** Byte offset, position, line and column of each checkpoint, in increasing order. */
+    private int[] checkpoints = new int[64];
+    private int checkpointCount;
+    private int nextCheckpoint = Integer.MAX_VALUE;
+
+    /**
+     * Create new char stream instance.
+     *
+     * @param file     The file to read characters from.
+     * @param encoding Name of the file encoding.
+     * @throws java.io.IOException If the file cannot be mapped.
+     */
+    public ForMappedFile(java.io.File file, String encoding) throws java.io.IOException {
+      this(file, java.nio.charset.Charset.forName(encoding));
+    }
+
+    /**
+     * Create new char stream instance.
+     *
+     * @param file    The file to read characters from.
+     * @param charset The file encoding.
+     * @throws java.io.IOException If the file cannot be mapped.
+     */
+    public ForMappedFile(java.io.File file, java.nio.charset.Charset charset) throws java.io.IOException {
+      if (file == null || charset == null) {
+        throw new IllegalArgumentException();
+      }
+      this.file = new java.io.RandomAccessFile(file, "r");
+      try {
+        java.nio.channels.FileChannel channel = this.file.getChannel();
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+          throw new java.io.IOException("File is too large: " + file);
+        }
+        bytes = channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      catch (java.io.IOException ex) {
+        this.file.close();
+        throw ex;
+      }
+      String name = charset.name();
+      if (name.equals("US-ASCII")) {
+        encoding = ASCII;
+      }
+      else if (name.equals("ISO-8859-1")) {
+        encoding = LATIN1;
+      }
+      else if (name.equals("UTF-8")) {
+        encoding = UTF8;
+      }
+      else {
+        encoding = OTHER;
+      }
+      if (encoding == OTHER) {
+        charset = skipByteOrderMark(charset);
+        decoder = charset.newDecoder()
+            .onMalformedInput(java.nio.charset.CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(java.nio.charset.CodingErrorAction.REPLACE);
+        chars = java.nio.CharBuffer.allocate(1024);
+        chars.position(chars.limit());
+      }
+      else {
+        decoder = null;
+        chars = null;
+      }
+      if (encoding == UTF8 || encoding == OTHER) {
+        checkpoint();
+        if (encoding == OTHER && charset.name().contains("2022")) {
+          // The decoder of a stateful encoding cannot restart in the
+          // middle of the input, so it always starts from the beginning.
+          nextCheckpoint = Integer.MAX_VALUE;
+        }
+      }
+    }
+
+    /**
+     * The decoders of UTF-16 and UTF-32 learn the byte order from a byte
+     * order mark at the start, so that they could not restart at a
+     * checkpoint.  The mark is skipped, and the byte order is fixed instead.
+     */
+    private java.nio.charset.Charset skipByteOrderMark(java.nio.charset.Charset charset) {
+      String name = charset.name();
+      if (name.equals("UTF-16")) {
+        if (startsWith(0xfe, 0xff)) {
+          bytes.position(2);
+        }
+        else if (startsWith(0xff, 0xfe)) {
+          bytes.position(2);
+          return java.nio.charset.Charset.forName("UTF-16LE");
+        }
+        return java.nio.charset.Charset.forName("UTF-16BE");
+      }
+      if (name.equals("UTF-32")) {
+        if (startsWith(0x00, 0x00, 0xfe, 0xff)) {
+          bytes.position(4);
+        }
+        else if (startsWith(0xff, 0xfe, 0x00, 0x00)) {
+          bytes.position(4);
+          return java.nio.charset.Charset.forName("UTF-32LE");
+        }
+        return java.nio.charset.Charset.forName("UTF-32BE");
+      }
+      return charset;
+    }
+
+    private boolean startsWith(int... prefix) {
+      if (bytes.limit() < prefix.length) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length; i++) {
+        if ((bytes.get(i) & 0xff) != prefix[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override public int read() throws java.io.IOException {
+      int c;
+      if (low != -1) {
+        c = low;
+        low = -1;
+      }
+      else {
+        if (pos >= nextCheckpoint && encoding == UTF8) {
+          checkpoint();
+        }
+        switch (encoding) {
+          case ASCII:
+            if (!bytes.hasRemaining()) {
+              return -1;
+            }
+            c = bytes.get();
+            if (c < 0) {
+              c = REPLACEMENT;
+            }
+            break;
+          case LATIN1:
+            if (!bytes.hasRemaining()) {
+              return -1;
+            }
+            c = bytes.get() & 0xff;
+            break;
+          case UTF8:
+            if (!bytes.hasRemaining()) {
+              return -1;
+            }
+            c = bytes.get();
+            if (c < 0) {
+              c = decodeUtf8(c);
+            }
+            break;
+          default:
+            if (!chars.hasRemaining() && !decode()) {
+              return -1;
+            }
+            c = chars.get();
+        }
+      }
+      pos++;
+      translate(c);
+      return c;
+    }
+
+    @Override public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int n;
+      if (encoding == OTHER) {
+        if (!chars.hasRemaining() && !decode()) {
+          return -1;
+        }
+        n = Math.min(len, chars.remaining());
+        chars.get(cbuf, off, n);
+      }
+      else {
+        if (low != -1 || pos >= nextCheckpoint) {
+          int c = read();
+          if (c == -1) {
+            return -1;
+          }
+          cbuf[off] = (char) c;
+          return 1;
+        }
+        // Stop at the next checkpoint, so that it is taken at its position.
+        len = Math.min(len, nextCheckpoint - pos);
+        n = decodeBulk(cbuf, off, len);
+        if (n == 0) {
+          return -1;
+        }
+      }
+      for (int i = 0; i < n; i++) {
+        pos++;
+        translate(cbuf[off + i]);
+      }
+      return n;
+    }
+
+    /**
+     * Decode the bytes of a single byte encoding or UTF-8, copying runs of
+     * ASCII bytes in a tight loop.  A supplementary character is decoded
+     * to both its surrogates only if there is room for them.
+     *
+     * @return The number of characters decoded.
+     */
+    private int decodeBulk(char[] cbuf, int off, int len) {
+      int n = 0;
+      int p = bytes.position();
+      int limit = bytes.limit();
+      while (n < len && p < limit) {
+        int b = bytes.get(p);
+        if (b >= 0) {
+          cbuf[off + n++] = (char) b;
+          p++;
+          continue;
+        }
+        if (encoding == ASCII) {
+          cbuf[off + n++] = REPLACEMENT;
+          p++;
+        }
+        else if (encoding == LATIN1) {
+          cbuf[off + n++] = (char) (b & 0xff);
+          p++;
+        }
+        else {
+          bytes.position(p + 1);
+          int c = decodeUtf8(b);
+          if (low != -1 && n + 1 == len) {
+            if (n > 0) {
+              // Leave the supplementary character to the next call.
+              low = -1;
+              break;
+            }
+            // Return the high surrogate alone, the low one follows.
+            cbuf[off + n++] = (char) c;
+            p = bytes.position();
+            break;
+          }
+          cbuf[off + n++] = (char) c;
+          if (low != -1) {
+            cbuf[off + n++] = (char) low;
+            low = -1;
+          }
+          p = bytes.position();
+        }
+      }
+      bytes.position(p);
+      return n;
+    }
+
+    private int decodeUtf8(int b) {
+      int n, c, min;
+      if ((b & 0xe0) == 0xc0) {
+        n = 1;
+        c = b & 0x1f;
+        min = 0x80;
+      }
+      else if ((b & 0xf0) == 0xe0) {
+        n = 2;
+        c = b & 0x0f;
+        min = 0x800;
+      }
+      else if ((b & 0xf8) == 0xf0) {
+        n = 3;
+        c = b & 0x07;
+        min = 0x10000;
+      }
+      else {
+        return REPLACEMENT;
+      }
+      for (int i = 0; i < n; i++) {
+        if (!bytes.hasRemaining()) {
+          return REPLACEMENT;
+        }
+        int x = bytes.get(bytes.position());
+        if ((x & 0xc0) != 0x80) {
+          return REPLACEMENT;
+        }
+        bytes.get();
+        c = (c << 6) | (x & 0x3f);
+      }
+      if (c < min || c > 0x10ffff || (c >= 0xd800 && c <= 0xdfff)) {
+        return REPLACEMENT;
+      }
+      if (c >= 0x10000) {
+        c -= 0x10000;
+        low = 0xdc00 + (c & 0x3ff);
+        return 0xd800 + (c >> 10);
+      }
+      return c;
+    }
+
+    private boolean decode() {
+      if (flushed) {
+        return false;
+      }
+      if (pos >= nextCheckpoint) {
+        checkpoint();
+      }
+      chars.clear();
+      if (decoder.decode(bytes, chars, true).isUnderflow()
+          && decoder.flush(chars).isUnderflow()) {
+        flushed = true;
+      }
+      chars.flip();
+      return chars.hasRemaining();
+    }
+
+    /** Record the byte offset, line and column of the next character to read. */
+    private void checkpoint() {
+      if (checkpointCount * 4 == checkpoints.length) {
+        checkpoints = java.util.Arrays.copyOf(checkpoints, checkpoints.length * 2);
+      }
+      int i = checkpointCount++ * 4;
+      checkpoints[i] = bytes.position();
+      checkpoints[i + 1] = pos;
+      checkpoints[i + 2] = line;
+      checkpoints[i + 3] = column;
+      nextCheckpoint = pos + CHECKPOINT_INTERVAL;
+    }
+
+    @Override public int position() {
+      return pos;
+    }
+
+    /**
+     * Single byte encodings seek to the byte at the position, other
+     * encodings decode the file from the last checkpoint before the
+     * position, or from the current position if it is closer, computing
+     * line and column numbers instead of using the given ones.
+     */
+    @Override public void seek(int position, int line, int column) throws java.io.IOException {
+      if (position < 0) {
+        throw new IndexOutOfBoundsException(String.valueOf(position));
+      }
+      if (encoding == ASCII || encoding == LATIN1) {
+        if (position > bytes.limit()) {
+          throw new IndexOutOfBoundsException(String.valueOf(position));
+        }
+        bytes.position(position);
+        pos = position;
+        this.line = line;
+        this.column = column;
+        if (lineTable != null) {
+          lineTable.seek(position, line, column);
+        }
+        return;
+      }
+      // Find the last checkpoint at or before the position.
+      int first = 0;
+      int last = checkpointCount - 1;
+      while (first < last) {
+        int mid = (first + last + 1) >>> 1;
+        if (checkpoints[mid * 4 + 1] <= position) {
+          first = mid;
+        }
+        else {
+          last = mid - 1;
+        }
+      }
+      int i = first * 4;
+      if (position < pos || checkpoints[i + 1] > pos) {
+        bytes.position(checkpoints[i]);
+        if (encoding == OTHER) {
+          decoder.reset();
+          chars.position(chars.limit());
+          flushed = false;
+        }
+        low = -1;
+        pos = checkpoints[i + 1];
+        this.line = checkpoints[i + 2];
+        this.column = checkpoints[i + 3];
+        if (lineTable != null) {
+          lineTable.seek(pos, this.line, this.column);
+        }
+      }
+      char[] skipped = new char[Math.min(1024, Math.max(position - pos, 1))];
+      while (pos < position) {
+        if (read(skipped, 0, Math.min(skipped.length, position - pos)) == -1) {
+          throw new IndexOutOfBoundsException(String.valueOf(position));
+        }
+      }
+    }
+
+    @Override public int line() {
+      return line;
+    }
+
+    @Override public int column() {
+      return column;
+    }
+
+    @Override public LineTable lineTable() {
+      if (lineTable == null) {
+        lineTable = new LineTable();
+        lineTable.seek(position(), line, column);
+      }
+      return lineTable;
+    }
+
+    private void translate(int c) {
+      if (c == '\n') {
+        line++;
+        column = 0;
+        if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
+      }
+      else {
+        if (c != '\r') {
+          column++;
+        }
+        else if (lineTable != null) {
+          lineTable.translate(position() - 1, c);
+        }
+      }
+    }
+
+    /**
+     * Closes the file. The mapping itself stays valid until the
+     * stream is garbage collected.
+     */
+    @Override public void close() throws java.io.IOException {
+      file.close();
+    }
+  }
+
   /**
    * An implementation of interface CharStream, where the stream is assumed to
    * contain only ASCII characters (with java-like unicode escape processing).
    */
   final class Escaping
-      implements CharStream, LineColumnInfo {
+      implements CharStream, LineColumnInfo, LineTableInfo, Seekable {
     private final CharStream stream;
+    /** Characters read from the underlying stream in bulk and not consumed yet. */
+    private final char[] block = new char[1024];
+    private int blockOffset, blockLength;
+    /** Position, line and column of the next character of the block. */
+    private int blockPosition, blockLine, blockColumn;
+    /** Characters consumed while looking for an escape sequence. */
     private char[] buffer;
     private int[] position, line, column;
     private int offset, length;
+    private LineTable lineTable;
 
     /**
      * Create new escaping char stream from the specified reader.
@@ -287,25 +1240,97 @@ public interface CharStream extends java.io.Closeable {
       return c;
     }
 
+    /**
+     * Copies the characters up to the next slash that may start an escape
+     * sequence, unless the slash is the first character, so that all
+     * characters but an escaped one occupy one position each.
+     */
+    @Override public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (offset < length) {
+        int n = Math.min(len, length - offset);
+        System.arraycopy(buffer, offset, cbuf, off, n);
+        offset += n;
+        return n;
+      }
+      if (blockOffset == blockLength && !fill()) {
+        return -1;
+      }
+      if (block[blockOffset] == '\\') {
+        cbuf[off] = (char) read();
+        return 1;
+      }
+      int end = Math.min(blockLength, blockOffset + len);
+      int i = blockOffset;
+      while (i < end && block[i] != '\\') {
+        advance(block[i]);
+        i++;
+      }
+      int n = i - blockOffset;
+      System.arraycopy(block, blockOffset, cbuf, off, n);
+      blockOffset = i;
+      return n;
+    }
+
     @Override public int position() {
       if (offset < length) {
         return position[offset];
       }
-      return stream.position();
+      return blockOffset < blockLength ? blockPosition : stream.position();
     }
 
     @Override public int line() {
       if (offset < length) {
         return line[offset];
       }
-      return streamLine();
+      return blockOffset < blockLength ? blockLine : streamLine();
     }
 
     @Override public int column() {
       if (offset < length) {
         return column[offset];
       }
-      return streamColumn();
+      return blockOffset < blockLength ? blockColumn : streamColumn();
+    }
+
+    /**
+     * Positions reported by this stream are positions in the underlying
+     * stream, so are the line and column numbers.
+     *
+     * @return Line table of the underlying stream, or <code>null</code>
+     *         if the underlying stream does not keep one.
+     */
+    @Override public LineTable lineTable() {
+      if (lineTable == null && stream instanceof LineTableInfo) {
+        lineTable = ((LineTableInfo) stream).lineTable();
+        // The underlying stream has read ahead of this one, so record the
+        // characters read ahead again from the position of this stream.
+        lineTable.seek(position(), line(), column());
+        for (int i = offset; i < length; i++) {
+          lineTable.translate(position[i], buffer[i]);
+        }
+        for (int i = blockOffset, p = blockPosition; i < blockLength; i++) {
+          lineTable.translate(p++, block[i]);
+        }
+      }
+      return lineTable;
+    }
+
+    /**
+     * Seeks the underlying stream, positions reported by this stream
+     * being positions in the underlying stream.
+     *
+     * @throws UnsupportedOperationException If the underlying stream is not seekable.
+     */
+    @Override public void seek(int position, int line, int column) throws java.io.IOException {
+      if (!(stream instanceof Seekable)) {
+        throw new UnsupportedOperationException("Underlying stream is not seekable");
+      }
+      ((Seekable) stream).seek(position, line, column);
+      clearBuffer();
+      blockOffset = blockLength = 0;
     }
 
     private int streamColumn() {
@@ -322,25 +1347,59 @@ public interface CharStream extends java.io.Closeable {
       return -1;
     }
 
+    /**
+     * Read the next block of characters from the underlying stream.  The
+     * characters of the block follow each other, so that their positions,
+     * lines and columns are computed from those of the first one.
+     *
+     * @return false at the end of the underlying stream.
+     */
+    private boolean fill() throws java.io.IOException {
+      blockPosition = stream.position();
+      blockLine = streamLine();
+      blockColumn = streamColumn();
+      int n = stream.read(block, 0, block.length);
+      if (n == -1) {
+        blockOffset = blockLength = 0;
+        return false;
+      }
+      blockOffset = 0;
+      blockLength = n;
+      return true;
+    }
+
+    /** Compute the position, line and column following a character of the block. */
+    private void advance(char c) {
+      blockPosition++;
+      if (blockLine != -1) {
+        if (c == '\n') {
+          blockLine++;
+          blockColumn = 0;
+        }
+        else if (c != '\r') {
+          blockColumn++;
+        }
+      }
+    }
+
     private int readToBuffer() throws java.io.IOException {
-      int xp = stream.position();
-      int xl = streamLine();
-      int xc = streamColumn();
-      int c = stream.read();
-      if (c != -1) {
-        if (length == buffer.length) {
-          int newLength = buffer.length * 2;
-          buffer = java.util.Arrays.copyOf(buffer, newLength);
-          position = java.util.Arrays.copyOf(position, newLength);
-          line = java.util.Arrays.copyOf(line, newLength);
-          column = java.util.Arrays.copyOf(column, newLength);
-        }
-        position[length] = xp;
-        line[length] = xl;
-        column[length] = xc;
-        buffer[length] = (char) c;
-        length++;
+      if (blockOffset == blockLength && !fill()) {
+        return -1;
+      }
+      if (length == buffer.length) {
+        int newLength = buffer.length * 2;
+        buffer = java.util.Arrays.copyOf(buffer, newLength);
+        position = java.util.Arrays.copyOf(position, newLength);
+        line = java.util.Arrays.copyOf(line, newLength);
+        column = java.util.Arrays.copyOf(column, newLength);
       }
+      char c = block[blockOffset++];
+      position[length] = blockPosition;
+      line[length] = blockLine;
+      column[length] = blockColumn;
+      buffer[length] = c;
+      length++;
+      advance(c);
       return c;
     }
 
@@ -0,0 +1,139 @@
+package org.javacc.parser;
+
+import org.javacc.jjtree.JJTree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs JavaCC, JJTree and JJDoc on two different grammars at the same time,
+ * and compares the generated files with those of runs one after the other,
+ * so that any state left global shows up as a difference.
+ */
+public class ConcurrentGenerationTest {
+  private static final String JAVACC_GRAMMAR = "src/main/javacc/JavaCC.jj";
+  private static final String JJTREE_GRAMMAR = "src/main/jjtree/JJTree.jjt";
+  private static final int RUNS = 2;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void concurrentRunsGenerateTheSameFiles() throws Exception {
+    File sequential = folder.newFolder("sequential");
+    new Generation(JAVACC_GRAMMAR, new File(sequential, "javacc"), null).run();
+    new Generation(JJTREE_GRAMMAR, new File(sequential, "jjtree"), null).run();
+    Map<String, String> javacc = readFiles(new File(sequential, "javacc"));
+    Map<String, String> jjtree = readFiles(new File(sequential, "jjtree"));
+    assertTrue(javacc.containsKey("JavaCCParser.java"));
+    assertTrue(jjtree.containsKey("JJTreeParser.java"));
+    assertTrue(jjtree.containsKey("ASTGrammar.java"));
+
+    File concurrent = folder.newFolder("concurrent");
+    CyclicBarrier start = new CyclicBarrier(2 * RUNS);
+    Generation[] generations = new Generation[2 * RUNS];
+    for (int i = 0; i < RUNS; i++) {
+      generations[2 * i] = new Generation(JAVACC_GRAMMAR, new File(concurrent, "javacc" + i), start);
+      generations[2 * i + 1] = new Generation(JJTREE_GRAMMAR, new File(concurrent, "jjtree" + i), start);
+    }
+    Thread[] threads = new Thread[generations.length];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(generations[i]);
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    for (int i = 0; i < RUNS; i++) {
+      generations[2 * i].check(javacc);
+      generations[2 * i + 1].check(jjtree);
+    }
+  }
+
+  /** A run of the tools on a grammar, in an output directory of its own. */
+  private static final class Generation implements Runnable {
+    private final String grammar;
+    private final File directory;
+    private final CyclicBarrier start;
+    private Throwable failure;
+
+    Generation(String grammar, File directory, CyclicBarrier start) {
+      this.grammar = grammar;
+      this.directory = directory;
+      this.start = start;
+    }
+
+    @Override public void run() {
+      try {
+        if (start != null) {
+          start.await();
+        }
+        String output = "-OUTPUT_DIRECTORY=" + directory.getPath();
+        String javacc = grammar;
+        if (grammar.endsWith(".jjt")) {
+          assertEquals(0, new JJTree().main(new String[]{output, grammar}));
+          String name = new File(grammar).getName();
+          javacc = new File(directory, name.substring(0, name.length() - 1)).getPath();
+        }
+        assertEquals(0, Main.mainProgram(new String[]{output, javacc}));
+        assertEquals(0, org.javacc.jjdoc.Main.mainProgram(new String[]{
+            "-OUTPUT_FILE=" + new File(directory, "grammar.html").getPath(), javacc}));
+      }
+      catch (Throwable ex) {
+        failure = ex;
+      }
+    }
+
+    void check(Map<String, String> expected) throws IOException {
+      if (failure != null) {
+        throw new AssertionError(failure);
+      }
+      Map<String, String> actual = readFiles(directory);
+      assertEquals(directory.getName(), expected.keySet(), actual.keySet());
+      for (Map.Entry<String, String> file : expected.entrySet()) {
+        assertEquals(directory.getName() + "/" + file.getKey(),
+            file.getValue(), actual.get(file.getKey()));
+      }
+    }
+  }
+
+  /** @return The content of every file of the directory, by name. */
+  private static Map<String, String> readFiles(File directory) throws IOException {
+    Map<String, String> files = new TreeMap<String, String>();
+    for (File file : directory.listFiles()) {
+      String content = read(file);
+      // The generated grammar names the directory it was generated into.
+      files.put(file.getName(), content.replace(directory.getPath(), "<directory>"));
+    }
+    return files;
+  }
+
+  private static String read(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      Reader reader = new InputStreamReader(in, "UTF-8");
+      StringBuilder b = new StringBuilder();
+      char[] buffer = new char[8192];
+      for (int n = reader.read(buffer); n >= 0; n = reader.read(buffer)) {
+        b.append(buffer, 0, n);
+      }
+      return b.toString();
+    }
+    finally {
+      in.close();
+    }
+  }
+}
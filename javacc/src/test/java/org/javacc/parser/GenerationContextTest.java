@@ -0,0 +1,80 @@
+package org.javacc.parser;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+public class GenerationContextTest {
+  private static final GenerationContext.Local<StringBuilder> local =
+      new GenerationContext.Local<StringBuilder>() {
+        @Override protected StringBuilder initialValue() {
+          return new StringBuilder();
+        }
+      };
+
+  @Test
+  public void contextsAreIndependent() throws Exception {
+    final GenerationContext first = new GenerationContext();
+    final GenerationContext second = new GenerationContext();
+    first.call(new Callable<Void>() {
+      @Override public Void call() throws Exception {
+        Options.init();
+        Options.setCmdLineOption("-IGNORE_CASE=true");
+        JavaCCErrors.reInit();
+        JavaCCErrors.warning("first");
+        local.get().append("first");
+
+        second.call(new Callable<Void>() {
+          @Override public Void call() {
+            Options.init();
+            assertFalse(Options.getIgnoreCase());
+            assertEquals(0, JavaCCErrors.getWarningCount());
+            assertEquals("", local.get().toString());
+            return null;
+          }
+        });
+
+        assertTrue(Options.getIgnoreCase());
+        assertEquals(1, JavaCCErrors.getWarningCount());
+        assertEquals("first", local.get().toString());
+        return null;
+      }
+    });
+  }
+
+  @Test
+  public void contextsOnThreads() throws Exception {
+    Thread[] threads = new Thread[4];
+    final Throwable[] failures = new Throwable[threads.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override public void run() {
+          try {
+            new GenerationContext().call(new Callable<Void>() {
+              @Override public Void call() throws Exception {
+                Options.init();
+                Options.setCmdLineOption("-LOOKAHEAD=" + (index + 1));
+                for (int n = 0; n < 1000; n++) {
+                  assertEquals(index + 1, Options.getLookahead());
+                  Thread.yield();
+                }
+                return null;
+              }
+            });
+          }
+          catch (Throwable ex) {
+            failures[index] = ex;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+      assertNull(failures[i]);
+    }
+  }
+}
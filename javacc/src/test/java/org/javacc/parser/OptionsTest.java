@@ -18,7 +18,7 @@ public final class OptionsTest extends TestCase {
     Options.init();
     JavaCCErrors.reInit();
 
-    assertEquals(28, Options.optionValues.size());
+    assertEquals(37, Options.getOptions().size());
 
     assertEquals(true, Options.getBuildParser());
     assertEquals(true, Options.getBuildScanner());
@@ -33,6 +33,14 @@ public final class OptionsTest extends TestCase {
     assertEquals(false, Options.getJavaUnicodeEscape());
     assertEquals(true, Options.getKeepLineColumn());
     assertEquals(true, Options.getKeepImage());
+    assertEquals(false, Options.getLineTable());
+    assertEquals(false, Options.getTokenPool());
+    assertEquals(false, Options.getMemoizeLookahead());
+    assertEquals(false, Options.getReturnCodeLookahead());
+    assertEquals(false, Options.getLookaheadTables());
+    assertEquals(false, Options.getLazyErrorReporting());
+    assertEquals(false, Options.getIncrementalParsing());
+    assertEquals(false, Options.getReportMethodSizes());
     assertEquals(true, Options.getSanityCheck());
     assertEquals(false, Options.getUnicodeInput());
     assertEquals(false, Options.getUserCharStream());
@@ -48,6 +56,7 @@ public final class OptionsTest extends TestCase {
     assertEquals("", Options.getTokenExtends());
     assertEquals("", Options.getTokenFactory());
     assertEquals(System.getProperties().get("file.encoding"), Options.getGrammarEncoding());
+    assertEquals("NFA", Options.getScannerBackend());
 
     assertEquals(0, JavaCCErrors.getWarningCount());
     assertEquals(0, JavaCCErrors.getErrorCount());
@@ -164,4 +173,36 @@ public final class OptionsTest extends TestCase {
     assertEquals(0, JavaCCErrors.getParseErrorCount());
     assertEquals(0, JavaCCErrors.getSemanticErrorCount());
   }
+
+  @Test
+  public void testNormalizeTokenPoolWithTokenFactory() {
+    Options.init();
+    JavaCCErrors.reInit();
+
+    Options.setCmdLineOption("-TOKEN_POOL=true");
+    Options.setCmdLineOption("-TOKEN_FACTORY=MyToken");
+    Options.normalize();
+
+    assertEquals(false, Options.getTokenPool());
+    assertEquals(1, JavaCCErrors.getWarningCount());
+
+    Options.init();
+    JavaCCErrors.reInit();
+
+    Options.setCmdLineOption("-TOKEN_POOL=true");
+    Options.setCmdLineOption("-TOKEN_EXTENDS=java.lang.Object");
+    Options.normalize();
+
+    assertEquals(false, Options.getTokenPool());
+    assertEquals(1, JavaCCErrors.getWarningCount());
+
+    Options.init();
+    JavaCCErrors.reInit();
+
+    Options.setCmdLineOption("-TOKEN_POOL=true");
+    Options.normalize();
+
+    assertEquals(true, Options.getTokenPool());
+    assertEquals(0, JavaCCErrors.getWarningCount());
+  }
 }
@@ -44,11 +44,67 @@ public abstract class CharStreamBaseTestCase {
     assertRead(s, 11, 5, 0, -1);
   }
 
+  @Test
+  public void readBulk() throws IOException {
+    String content = "1\r\n2\r\n3\n\n4\n";
+    CharStream s = newCharStream(content);
+    char[] buffer = new char[5];
+    StringBuilder b = new StringBuilder();
+    assertEquals(0, s.read(buffer, 0, 0));
+    while (true) {
+      int position = s.position();
+      int n = s.read(buffer, 1, 3);
+      if (n == -1) {
+        break;
+      }
+      assertTrue(n > 0 && n <= 3);
+      assertEquals(position + n, s.position());
+      b.append(buffer, 1, n);
+    }
+    assertEquals(content, b.toString());
+    assertEquals(-1, s.read(buffer, 0, 3));
+    assertEquals(-1, s.read());
+  }
+
+  @Test
+  public void lineTable() throws IOException {
+    CharStream s = newCharStream("1\r\n2\r\n3\n\n4\n");
+    CharStream.LineTable t = lineTable(s);
+    while (s.read() != -1) {}
+    int[] lines = {0, 0, 0, 1, 1, 1, 2, 2, 3, 4, 4, 5};
+    int[] columns = {0, 1, 1, 0, 1, 1, 0, 1, 0, 0, 1, 0};
+    for (int i = lines.length - 1; i >= 0; i--) {
+      assertEquals(lines[i], t.line(i));
+      assertEquals(columns[i], t.column(i));
+    }
+    assertEquals(4, t.line(9));
+    assertEquals(0, t.line(0));
+    assertEquals(2, t.line(7));
+    assertEquals(3, t.line(8));
+  }
+
+  @Test
+  public void lineTableCreatedAfterReading() throws IOException {
+    CharStream s = newCharStream("1\n2\n34\n5\n");
+    for (int i = 0; i < 5; i++) {
+      s.read();
+    }
+    CharStream.LineTable t = lineTable(s);
+    while (s.read() != -1) {}
+    assertEquals(2, t.line(5));
+    assertEquals(1, t.column(5));
+    assertEquals(2, t.line(4));
+    assertEquals(0, t.column(4));
+    assertEquals(3, t.line(7));
+  }
+
   private static void assertRead(CharStream s, int position, int line, int column, int c)
       throws IOException {
     assertEquals(position, s.position());
     assertEquals(line, line(s));
     assertEquals(column, column(s));
+    assertEquals(line, lineTable(s).line(position));
+    assertEquals(column, lineTable(s).column(position));
     assertEquals(c, s.read());
   }
 
@@ -59,4 +115,8 @@ public abstract class CharStreamBaseTestCase {
   private static int column(CharStream s) {
     return ((CharStream.LineColumnInfo) s).column();
   }
+
+  private static CharStream.LineTable lineTable(CharStream s) {
+    return ((CharStream.LineTableInfo) s).lineTable();
+  }
 }
@@ -113,4 +113,47 @@ public class EscapingCharStreamTest extends CharStreamBaseTestCase {
     }
     return s.toString();
   }
+
+  @Test
+  public void readsBulkUpToEscapes() throws IOException {
+    CharStream s = newCharStream("ab\\u0041c\\d");
+    char[] buffer = new char[8];
+    assertEquals(2, s.read(buffer, 0, 8));
+    assertEquals("ab", new String(buffer, 0, 2));
+    assertEquals(2, s.position());
+    assertEquals(1, s.read(buffer, 0, 8));
+    assertEquals('A', buffer[0]);
+    assertEquals(8, s.position());
+    assertEquals(1, s.read(buffer, 0, 8));
+    assertEquals('c', buffer[0]);
+    assertEquals(1, s.read(buffer, 0, 8));
+    assertEquals('\\', buffer[0]);
+    assertEquals(1, s.read(buffer, 0, 8));
+    assertEquals('d', buffer[0]);
+    assertEquals(-1, s.read(buffer, 0, 8));
+  }
+
+  @Test
+  public void readsBulkLikeRead() throws IOException {
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      b.append(i % 3 == 0 ? "x\\u0041\n" : i % 5 == 0 ? "\\\\uuu00e9\\q\r\n" : "abc ");
+    }
+    String input = b.toString();
+    for (int len : new int[]{1, 3, 100, 5000}) {
+      CharStream.Escaping one = newCharStream(input);
+      CharStream.Escaping bulk = newCharStream(input);
+      char[] buffer = new char[len];
+      int n;
+      while ((n = bulk.read(buffer, 0, len)) != -1) {
+        for (int i = 0; i < n; i++) {
+          assertEquals(one.read(), buffer[i]);
+        }
+        assertEquals(one.position(), bulk.position());
+        assertEquals(one.line(), bulk.line());
+        assertEquals(one.column(), bulk.column());
+      }
+      assertEquals(-1, one.read());
+    }
+  }
 }
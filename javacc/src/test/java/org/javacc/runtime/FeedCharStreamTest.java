@@ -0,0 +1,92 @@
+package org.javacc.runtime;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+import static org.junit.Assert.*;
+
+public class FeedCharStreamTest extends CharStreamBaseTestCase {
+  @Override CharStream newCharStream(CharSequence content) {
+    CharStream.ForFeed s = new CharStream.ForFeed(2);
+    for (int i = 0; i < content.length(); i += 3) {
+      s.feed(CharBuffer.wrap(content, i, Math.min(i + 3, content.length())));
+    }
+    s.endOfInput();
+    return s;
+  }
+
+  @Test
+  public void readsWhileFed() throws Exception {
+    final StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      content.append(i).append('\n');
+    }
+    final CharStream.ForFeed s = new CharStream.ForFeed();
+    Thread feeder = new Thread() {
+      @Override public void run() {
+        for (int i = 0; i < content.length(); i += 7) {
+          s.feed(CharBuffer.wrap(content, i, Math.min(i + 7, content.length())));
+          if (i % 700 == 0) {
+            Thread.yield();
+          }
+        }
+        s.endOfInput();
+      }
+    };
+    feeder.start();
+    StringBuilder b = new StringBuilder();
+    char[] buffer = new char[5];
+    while (true) {
+      int c = s.read();
+      if (c == -1) {
+        break;
+      }
+      b.append((char) c);
+      int n = s.read(buffer, 0, buffer.length);
+      if (n == -1) {
+        break;
+      }
+      b.append(buffer, 0, n);
+    }
+    feeder.join();
+    assertEquals(content.toString(), b.toString());
+    assertEquals(content.length(), s.position());
+    assertEquals(10000, s.line());
+  }
+
+  @Test
+  public void closeWakesReader() throws Exception {
+    final CharStream.ForFeed s = new CharStream.ForFeed();
+    s.feed(CharBuffer.wrap("a"));
+    Thread closer = new Thread() {
+      @Override public void run() {
+        try {
+          Thread.sleep(50);
+        }
+        catch (InterruptedException ex) {
+          return;
+        }
+        s.close();
+      }
+    };
+    closer.start();
+    assertEquals('a', s.read());
+    try {
+      s.read();
+      fail();
+    }
+    catch (IOException ex) {
+      assertEquals("Stream closed", ex.getMessage());
+    }
+    closer.join();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void feedAfterEndOfInput() {
+    CharStream.ForFeed s = new CharStream.ForFeed();
+    s.endOfInput();
+    s.feed(CharBuffer.wrap("a"));
+  }
+}
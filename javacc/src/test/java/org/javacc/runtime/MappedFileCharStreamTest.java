@@ -0,0 +1,128 @@
+package org.javacc.runtime;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+public class MappedFileCharStreamTest extends CharStreamBaseTestCase {
+  @Override CharStream newCharStream(CharSequence content) {
+    try {
+      return newCharStream(content, "UTF-8");
+    }
+    catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static CharStream newCharStream(CharSequence content, String encoding)
+      throws IOException {
+    return newCharStream(String.valueOf(content).getBytes(encoding), encoding);
+  }
+
+  private static CharStream newCharStream(byte[] content, String encoding)
+      throws IOException {
+    File file = File.createTempFile("chars", ".txt");
+    file.deleteOnExit();
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content);
+    }
+    finally {
+      out.close();
+    }
+    return new CharStream.ForMappedFile(file, encoding);
+  }
+
+  @Test
+  public void decodes() throws IOException {
+    String s = "a\u00e9\u0416\u20ac\ud834\udd1e\n\u00ff";
+    for (String encoding : new String[]{"UTF-8", "UTF-16", "UTF-16LE"}) {
+      assertRead(s, newCharStream(s, encoding));
+    }
+    assertRead("a\u00e9\u00ff", newCharStream("a\u00e9\u00ff", "ISO-8859-1"));
+    assertRead("a\n", newCharStream("a\n", "US-ASCII"));
+  }
+
+  @Test
+  public void replacesMalformedInput() throws IOException {
+    assertRead("a\ufffdb", newCharStream(new byte[]{'a', (byte) 0xc3, 'b'}, "UTF-8"));
+    assertRead("a\ufffd", newCharStream(new byte[]{'a', (byte) 0xe2, (byte) 0x82}, "UTF-8"));
+    assertRead("\ufffd", newCharStream(new byte[]{(byte) 0xc0, (byte) 0x80}, "UTF-8"));
+    assertRead("a\ufffd", newCharStream(new byte[]{'a', (byte) 0x80}, "US-ASCII"));
+  }
+
+  @Test
+  public void readsBulk() throws IOException {
+    String s = "ab\u00e9\ud834\udd1ec\n";
+    for (String encoding : new String[]{"UTF-8", "UTF-16"}) {
+      for (int len = 1; len <= 4; len++) {
+        CharStream stream = newCharStream(s, encoding);
+        char[] buffer = new char[len];
+        StringBuilder b = new StringBuilder();
+        int n;
+        while ((n = stream.read(buffer, 0, len)) != -1) {
+          assertTrue(n > 0 && n <= len);
+          b.append(buffer, 0, n);
+          assertEquals(b.length(), stream.position());
+        }
+        assertEquals(s, b.toString());
+        stream.close();
+      }
+    }
+  }
+
+  @Test
+  public void seeks() throws IOException {
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; b.length() < 20000; i++) {
+      b.append(i % 7 == 0 ? "\u20ac\n" : i % 5 == 0 ? "\ud834\udd1e " : "a\u00e9 ");
+    }
+    String s = b.toString();
+    int[] positions = {19000, 0, 12345, 4096, 4097, 8191, 19999, 100, 12345};
+    for (String encoding : new String[]{"UTF-8", "UTF-16", "UTF-16LE", "ISO-8859-1"}) {
+      String expected = encoding.equals("ISO-8859-1")
+          ? new String(s.getBytes(encoding), encoding) : s;
+      CharStream stream = newCharStream(s, encoding);
+      while (stream.read() != -1) {}
+      for (int position : positions) {
+        if (position >= expected.length()) {
+          continue;
+        }
+        int line = 0;
+        int column = 0;
+        for (int i = 0; i < position; i++) {
+          if (expected.charAt(i) == '\n') {
+            line++;
+            column = 0;
+          }
+          else {
+            column++;
+          }
+        }
+        ((CharStream.Seekable) stream).seek(position, line, column);
+        assertEquals(position, stream.position());
+        assertEquals(line, ((CharStream.LineColumnInfo) stream).line());
+        assertEquals(column, ((CharStream.LineColumnInfo) stream).column());
+        char[] buffer = new char[16];
+        int n = stream.read(buffer, 0, buffer.length);
+        assertEquals(expected.substring(position, position + n), new String(buffer, 0, n));
+      }
+      stream.close();
+    }
+  }
+
+  private static void assertRead(String expected, CharStream s) throws IOException {
+    for (int i = 0; i < expected.length(); i++) {
+      assertEquals(i, s.position());
+      assertEquals(expected.charAt(i), s.read());
+    }
+    assertEquals(-1, s.read());
+    assertEquals(expected.length(), s.position());
+    s.close();
+  }
+}